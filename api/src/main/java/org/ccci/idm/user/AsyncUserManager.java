@@ -0,0 +1,76 @@
+package org.ccci.idm.user;
+
+import com.google.common.annotations.Beta;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking view of a {@link UserManager}. Every operation returns immediately, any
+ * {@link org.ccci.idm.user.exception.UserException} or {@link org.ccci.idm.user.dao.exception.DaoException} is
+ * reported by completing the returned future exceptionally.
+ */
+@Beta
+public interface AsyncUserManager {
+    @Nonnull
+    CompletableFuture<Boolean> doesEmailExist(String email);
+
+    @Nonnull
+    CompletableFuture<Void> createUser(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<Void> updateUser(@Nonnull User user, User.Attr... attrs);
+
+    @Nonnull
+    CompletableFuture<Void> deactivateUser(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<Void> reactivateUser(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<User> getFreshUser(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<User> findUserByEmail(String email, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByRelayGuid(String guid, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByTheKeyGuid(String guid, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByFacebookId(String id, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByDesignation(@Nullable String designation, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findUserByEmployeeId(String employeeId, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByEmails(@Nonnull Collection<String> emails, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByRelayGuids(@Nonnull Collection<String> guids, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByTheKeyGuids(@Nonnull Collection<String> guids,
+                                                       boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByEmployeeIds(@Nonnull Collection<String> employeeIds,
+                                                       boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<Void> addToGroup(@Nonnull User user, @Nonnull Group group, boolean addSecurity);
+
+    @Nonnull
+    CompletableFuture<Void> removeFromGroup(@Nonnull User user, @Nonnull Group group);
+
+    @Nonnull
+    CompletableFuture<Group> getGroup(@Nullable String id);
+}
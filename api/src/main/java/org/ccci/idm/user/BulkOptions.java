@@ -0,0 +1,56 @@
+package org.ccci.idm.user;
+
+import com.google.common.annotations.Beta;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * Options for the bulk operations of a {@link UserManager}.
+ */
+@Beta
+public final class BulkOptions {
+    private int concurrency = 8;
+    private int batchSize = 100;
+    @Nullable
+    private Executor executor;
+
+    /**
+     * @param concurrency the maximum number of records being written concurrently. The source of records isn't read
+     *                    any further while this many records are still being written.
+     */
+    public BulkOptions concurrency(final int concurrency) {
+        this.concurrency = Math.max(concurrency, 1);
+        return this;
+    }
+
+    /**
+     * @param size the number of records validated and checked against the user store together
+     */
+    public BulkOptions batchSize(final int size) {
+        this.batchSize = Math.max(size, 1);
+        return this;
+    }
+
+    /**
+     * @param executor the {@link Executor} records are processed on. When this isn't set a bounded pool of threads is
+     *                 created for the duration of the bulk operation.
+     */
+    public BulkOptions executor(@Nullable final Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+}
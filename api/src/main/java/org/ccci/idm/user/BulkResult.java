@@ -0,0 +1,58 @@
+package org.ccci.idm.user;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The outcome of a single record of a bulk operation of a {@link UserManager}.
+ */
+@Beta
+@Immutable
+public final class BulkResult {
+    @Nonnull
+    private final User user;
+    @Nullable
+    private final Exception error;
+
+    private BulkResult(@Nonnull final User user, @Nullable final Exception error) {
+        this.user = user;
+        this.error = error;
+    }
+
+    @Nonnull
+    public static BulkResult success(@Nonnull final User user) {
+        return new BulkResult(user, null);
+    }
+
+    @Nonnull
+    public static BulkResult failure(@Nonnull final User user, @Nonnull final Exception error) {
+        return new BulkResult(user, error);
+    }
+
+    @Nonnull
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * @return the {@link org.ccci.idm.user.exception.UserException} or
+     * {@link org.ccci.idm.user.dao.exception.DaoException} that caused this record to fail, null if it succeeded
+     */
+    @Nullable
+    public Exception getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("user", user.getEmail()).add("error", error).toString();
+    }
+}
@@ -0,0 +1,50 @@
+package org.ccci.idm.user;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+
+/**
+ * A single update of a bulk update, the user to update along with the attributes being updated.
+ */
+@Beta
+@Immutable
+public final class BulkUpdate {
+    @Nonnull
+    private final User user;
+    @Nonnull
+    private final User.Attr[] attrs;
+
+    private BulkUpdate(@Nonnull final User user, @Nonnull final User.Attr[] attrs) {
+        this.user = user;
+        this.attrs = attrs;
+    }
+
+    /**
+     * @param user  the {@link User} to update
+     * @param attrs the User attributes to be updated. An empty list means to update default attributes.
+     */
+    @Nonnull
+    public static BulkUpdate of(@Nonnull final User user, final User.Attr... attrs) {
+        return new BulkUpdate(user, attrs.clone());
+    }
+
+    @Nonnull
+    public User getUser() {
+        return user;
+    }
+
+    @Nonnull
+    public User.Attr[] getAttrs() {
+        return attrs.clone();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("user", user.getEmail()).add("attrs", Arrays.toString(attrs))
+                .toString();
+    }
+}
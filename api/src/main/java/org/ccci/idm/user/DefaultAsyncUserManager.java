@@ -0,0 +1,191 @@
+package org.ccci.idm.user;
+
+import static org.ccci.idm.user.util.AsyncUtil.runAsync;
+import static org.ccci.idm.user.util.AsyncUtil.supplyAsync;
+
+import com.google.common.annotations.Beta;
+import org.ccci.idm.user.util.AsyncUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncUserManager} that runs the operations of a blocking {@link UserManager} on a bounded {@link Executor}.
+ * When no executor is configured a bounded pool of daemon threads is created on first use.
+ */
+@Beta
+public class DefaultAsyncUserManager implements AsyncUserManager {
+    @Inject
+    @NotNull
+    protected UserManager userManager;
+
+    @Nullable
+    private volatile Executor executor;
+
+    private int maxThreads = 20;
+    private int maxQueueSize = 1000;
+
+    public void setUserManager(@Nonnull final UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    public void setExecutor(@Nullable final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param threads the maximum number of threads of the executor created when no executor is configured
+     */
+    public void setMaxThreads(final int threads) {
+        maxThreads = threads;
+    }
+
+    /**
+     * @param size the maximum number of queued operations of the executor created when no executor is configured,
+     *             further operations fail with a {@link java.util.concurrent.RejectedExecutionException}
+     */
+    public void setMaxQueueSize(final int size) {
+        maxQueueSize = size;
+    }
+
+    @Nonnull
+    private Executor getExecutor() {
+        Executor executor = this.executor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.executor;
+                if (executor == null) {
+                    executor = AsyncUtil.newBoundedExecutor("AsyncUserManager", maxThreads, maxQueueSize);
+                    this.executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Boolean> doesEmailExist(final String email) {
+        return supplyAsync(() -> userManager.doesEmailExist(email), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> createUser(@Nonnull final User user) {
+        return runAsync(() -> userManager.createUser(user), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> updateUser(@Nonnull final User user, final User.Attr... attrs) {
+        return runAsync(() -> userManager.updateUser(user, attrs), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> deactivateUser(@Nonnull final User user) {
+        return runAsync(() -> userManager.deactivateUser(user), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> reactivateUser(@Nonnull final User user) {
+        return runAsync(() -> userManager.reactivateUser(user), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> getFreshUser(@Nonnull final User user) {
+        return supplyAsync(() -> userManager.getFreshUser(user), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByEmail(final String email, final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findUserByEmail(email, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByRelayGuid(final String guid, final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findUserByRelayGuid(guid, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByTheKeyGuid(final String guid, final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findUserByTheKeyGuid(guid, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByFacebookId(final String id, final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findUserByFacebookId(id, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByDesignation(@Nullable final String designation,
+                                                         final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findUserByDesignation(designation, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findUserByEmployeeId(final String employeeId, final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findUserByEmployeeId(employeeId, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByEmails(@Nonnull final Collection<String> emails,
+                                                         final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findAllByEmails(emails, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByRelayGuids(@Nonnull final Collection<String> guids,
+                                                             final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findAllByRelayGuids(guids, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                                              final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findAllByTheKeyGuids(guids, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByEmployeeIds(@Nonnull final Collection<String> employeeIds,
+                                                              final boolean includeDeactivated) {
+        return supplyAsync(() -> userManager.findAllByEmployeeIds(employeeIds, includeDeactivated), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> addToGroup(@Nonnull final User user, @Nonnull final Group group,
+                                              final boolean addSecurity) {
+        return runAsync(() -> userManager.addToGroup(user, group, addSecurity), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> removeFromGroup(@Nonnull final User user, @Nonnull final Group group) {
+        return runAsync(() -> userManager.removeFromGroup(user, group), getExecutor());
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Group> getGroup(@Nullable final String id) {
+        return supplyAsync(() -> userManager.getGroup(id), getExecutor());
+    }
+}
@@ -17,12 +17,16 @@
 import static org.ccci.idm.user.Constants.AUDIT_RESOURCE_RESOLVER_REACTIVATE_USER;
 import static org.ccci.idm.user.Constants.AUDIT_RESOURCE_RESOLVER_REMOVE_FROM_GROUP;
 import static org.ccci.idm.user.Constants.AUDIT_RESOURCE_RESOLVER_UPDATE_USER;
+import static org.ccci.idm.user.util.AsyncUtil.supplyAsync;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.apereo.inspektr.audit.annotation.Audit;
 import org.ccci.idm.user.dao.UserDao;
@@ -37,7 +41,10 @@
 import org.ccci.idm.user.exception.UserException;
 import org.ccci.idm.user.exception.UserNotFoundException;
 import org.ccci.idm.user.query.Expression;
+import org.ccci.idm.user.util.AsyncUtil;
 import org.ccci.idm.user.util.DefaultRandomPasswordGenerator;
+import org.ccci.idm.user.util.GuidAllocator;
+import org.ccci.idm.user.util.RandomGuidAllocator;
 import org.ccci.idm.user.util.RandomPasswordGenerator;
 import org.ccci.idm.user.util.UserUtil;
 import org.joda.time.Duration;
@@ -54,16 +61,34 @@
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class DefaultUserManager implements UserManager {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultUserManager.class);
 
     private static final EmailValidator VALIDATOR_EMAIL = EmailValidator.getInstance();
+    private static final Set<UserDao.Identifier> GUID_IDENTIFIERS = Sets.immutableEnumSet(UserDao.Identifier.GUID,
+            UserDao.Identifier.RELAY_GUID, UserDao.Identifier.THE_KEY_GUID);
 
     private int mfaIntruderAttempts = 10;
     @Nonnull
@@ -71,13 +96,22 @@ public class DefaultUserManager implements UserManager {
     @Nonnull
     private ReadableDuration mfaIntruderLockDuration = Duration.standardMinutes(15);
 
+    private boolean optimisticConcurrency = false;
+
     @NotNull
     @Autowired(required = false)
     private List<? extends UserManagerListener> listeners = ImmutableList.of();
 
+    @Nullable
+    @Autowired(required = false)
+    private BulkAuditor bulkAuditor;
+
     @NotNull
     protected RandomPasswordGenerator randomPasswordGenerator = new DefaultRandomPasswordGenerator();
 
+    @NotNull
+    protected GuidAllocator guidAllocator = new RandomGuidAllocator();
+
     @Inject
     @NotNull
     protected UserDao userDao;
@@ -102,14 +136,39 @@ public void setMfaIntruderLockDuration(@Nonnull final ReadableDuration duration)
         mfaIntruderLockDuration = duration;
     }
 
+    /**
+     * @param optimisticConcurrency whether updateUser can skip loading a fresh copy of the user when the UserDao can
+     *                              detect concurrent updates and no listener needs the original user. Concurrent
+     *                              updates then fail with a
+     *                              {@link org.ccci.idm.user.dao.exception.ConcurrentUpdateException}. This is only as
+     *                              reliable as the version the UserDao asserts, e.g. an LDAP modifyTimestamp only has
+     *                              a resolution of seconds and can't detect updates within the same second. The
+     *                              LdaptiveUserDao therefore only reports concurrent updates as detectable when a
+     *                              change sequence attribute is configured.
+     */
+    public void setOptimisticConcurrency(final boolean optimisticConcurrency) {
+        this.optimisticConcurrency = optimisticConcurrency;
+    }
+
     public void setListeners(@Nonnull final List<? extends UserManagerListener> listeners) {
         this.listeners = listeners;
     }
 
+    /**
+     * @param auditor the {@link BulkAuditor} that records an audit entry for every record of a bulk operation
+     */
+    public void setBulkAuditor(@Nullable final BulkAuditor auditor) {
+        this.bulkAuditor = auditor;
+    }
+
     public void setRandomPasswordGenerator(final RandomPasswordGenerator randomPasswordGenerator) {
         this.randomPasswordGenerator = randomPasswordGenerator;
     }
 
+    public void setGuidAllocator(final GuidAllocator guidAllocator) {
+        this.guidAllocator = guidAllocator;
+    }
+
     public void setUserDao(final UserDao dao) {
         this.userDao = dao;
     }
@@ -124,14 +183,27 @@ protected boolean doesGuidExist(final String guid) {
         return guid != null && this.userDao.findByGuid(guid, true) != null;
     }
 
+    /**
+     * @deprecated creating users no longer checks identifiers one at a time, override
+     * {@link #findConflicts(User)} instead.
+     */
+    @Deprecated
     protected boolean doesRelayGuidExist(final String guid) {
         return guid != null && this.userDao.findByRelayGuid(guid, true) != null;
     }
 
+    /**
+     * @deprecated creating users no longer checks identifiers one at a time, override
+     * {@link #findConflicts(User)} instead.
+     */
+    @Deprecated
     protected boolean doesTheKeyGuidExist(final String guid) {
         return guid != null && this.userDao.findByTheKeyGuid(guid, true) != null;
     }
 
+    /**
+     * Creating users doesn't use this check, it looks up all identifiers at once with {@link #findConflicts(User)}.
+     */
     @Override
     public boolean doesEmailExist(final String email) {
         return email != null && this.userDao.findByEmail(email, false) != null;
@@ -141,14 +213,18 @@ public boolean doesEmailExist(final String email) {
     @Audit(action = AUDIT_ACTION_CREATE_USER, actionResolverName = AUDIT_ACTION_RESOLVER_USER_MANAGER,
             resourceResolverName = AUDIT_RESOURCE_RESOLVER_CREATE_USER)
     public void createUser(final User user) throws DaoException, UserException {
-        // validate user being created
-        this.validateNewUser(user);
+        try (UserDao.Session ignored = userDao.session()) {
+            // validate user being created, looking up all conflicting identifiers at once
+            this.validateNewUserAttributes(user);
+            final Set<UserDao.Identifier> conflicts = this.findConflicts(user);
+            this.validateNewUser(user, conflicts);
 
-        // initialize some default attributes
-        this.setNewUserDefaults(user);
+            // initialize some default attributes
+            this.setNewUserDefaults(user, conflicts);
 
-        // Save the user
-        this.userDao.save(user);
+            // Save the user
+            this.userDao.save(user);
+        }
 
         // trigger any post create listeners
         for (final UserManagerListener listener : listeners) {
@@ -156,39 +232,266 @@ public void createUser(final User user) throws DaoException, UserException {
         }
     }
 
+    @Beta
+    @Nonnull
+    @Override
+    public List<BulkResult> createUsers(@Nonnull final Stream<User> users, @Nonnull final BulkOptions options) {
+        final ExecutorService bulkExecutor = options.getExecutor() == null ? AsyncUtil.newBoundedExecutor(
+                "BulkCreateUsers", options.getConcurrency(), options.getConcurrency() + options.getBatchSize()) : null;
+        final Executor executor = bulkExecutor != null ? bulkExecutor : options.getExecutor();
+        final Semaphore writers = new Semaphore(options.getConcurrency());
+        // identifiers claimed by earlier users of this bulk create, released again when creating that user fails
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        final List<CompletableFuture<BulkResult>> results = new ArrayList<>();
+        try {
+            final Iterator<List<User>> batches = Iterators.partition(users.iterator(), options.getBatchSize());
+            while (batches.hasNext()) {
+                final List<User> batch = batches.next();
+
+                // validate all users of the batch in parallel
+                final List<CompletableFuture<Exception>> validations = batch.stream()
+                        .map(user -> supplyAsync(() -> tryValidateNewUserAttributes(user), executor))
+                        .collect(Collectors.toList());
+                final Exception[] errors = new Exception[batch.size()];
+                for (int i = 0; i < errors.length; i++) {
+                    errors[i] = validations.get(i).handle((error, t) -> t != null ? unwrap(t) : error).join();
+                }
+
+                // check the entire batch for conflicts with existing users and earlier users of this bulk create
+                findBulkConflicts(batch, errors, seen);
+
+                // create the valid users, blocking while the maximum number of users are already being written
+                for (int i = 0; i < errors.length; i++) {
+                    final User user = batch.get(i);
+                    if (errors[i] != null) {
+                        results.add(CompletableFuture.completedFuture(BulkResult.failure(user, errors[i])));
+                        continue;
+                    }
+
+                    final List<String> keys = bulkKeys(user);
+                    writers.acquireUninterruptibly();
+                    final CompletableFuture<BulkResult> result = supplyAsync(() -> createValidatedUser(user), executor)
+                            .handle((r, t) -> t != null ? BulkResult.failure(user, unwrap(t)) : r);
+                    result.whenComplete((r, t) -> {
+                        if (r == null || !r.isSuccess()) {
+                            seen.removeAll(keys);
+                        }
+                        writers.release();
+                    });
+                    results.add(result);
+                }
+            }
+
+            final List<BulkResult> completed =
+                    results.stream().map(CompletableFuture::join).collect(Collectors.toList());
+
+            // audit every record on the calling thread, which holds the context of whoever requested the bulk create
+            if (bulkAuditor != null) {
+                completed.forEach(bulkAuditor::auditCreateUser);
+            }
+            return completed;
+        } finally {
+            if (bulkExecutor != null) {
+                bulkExecutor.shutdown();
+            }
+        }
+    }
+
+    @Nullable
+    private Exception tryValidateNewUserAttributes(@Nonnull final User user) {
+        try {
+            validateNewUserAttributes(user);
+            return null;
+        } catch (final UserException | RuntimeException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Check a batch of new users for email addresses, Relay guids and The Key guids that already exist, using a single
+     * lookup per identifier for the entire batch.
+     */
+    private void findBulkConflicts(@Nonnull final List<User> batch, @Nonnull final Exception[] errors,
+                                   @Nonnull final Set<String> seen) {
+        final Set<String> emails = new HashSet<>();
+        final Set<String> relayGuids = new HashSet<>();
+        final Set<String> theKeyGuids = new HashSet<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null) {
+                final User user = batch.get(i);
+                if (user.getEmail() != null) {
+                    emails.add(user.getEmail());
+                }
+                if (user.getRawRelayGuid() != null) {
+                    relayGuids.add(user.getRawRelayGuid());
+                }
+                if (user.getRawTheKeyGuid() != null) {
+                    theKeyGuids.add(user.getRawTheKeyGuid());
+                }
+            }
+        }
+
+        final Set<String> existing = new HashSet<>();
+        try {
+            if (!emails.isEmpty()) {
+                userDao.findAllByEmails(emails, false).forEach(user -> existing.add(bulkKey("email", user.getEmail())));
+            }
+            if (!relayGuids.isEmpty()) {
+                userDao.findAllByRelayGuids(relayGuids, true)
+                        .forEach(user -> existing.add(bulkKey("relay", user.getRelayGuid())));
+            }
+            if (!theKeyGuids.isEmpty()) {
+                userDao.findAllByTheKeyGuids(theKeyGuids, true)
+                        .forEach(user -> existing.add(bulkKey("thekey", user.getTheKeyGuid())));
+            }
+        } catch (final DaoException e) {
+            // fail the entire batch
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] == null) {
+                    errors[i] = e;
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+
+            final User user = batch.get(i);
+            final String email = bulkKey("email", user.getEmail());
+            final String relayGuid = bulkKey("relay", user.getRawRelayGuid());
+            final String theKeyGuid = bulkKey("thekey", user.getRawTheKeyGuid());
+            if (email != null && (existing.contains(email) || seen.contains(email))) {
+                LOG.debug("The specified email '{}' already exists.", user.getEmail());
+                errors[i] = new EmailAlreadyExistsException();
+            } else if (relayGuid != null && (existing.contains(relayGuid) || seen.contains(relayGuid))) {
+                errors[i] = new RelayGuidAlreadyExistsException(
+                        "Relay guid '" + user.getRawRelayGuid() + "' already exists");
+            } else if (theKeyGuid != null && (existing.contains(theKeyGuid) || seen.contains(theKeyGuid))) {
+                errors[i] = new TheKeyGuidAlreadyExistsException(
+                        "The Key guid '" + user.getRawTheKeyGuid() + "' already exists");
+            } else {
+                // only claim the identifiers of users that passed every check
+                seen.addAll(bulkKeys(user));
+            }
+        }
+    }
+
+    @Nonnull
+    private static List<String> bulkKeys(@Nonnull final User user) {
+        return Stream.of(bulkKey("email", user.getEmail()), bulkKey("relay", user.getRawRelayGuid()),
+                bulkKey("thekey", user.getRawTheKeyGuid())).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Nullable
+    private static String bulkKey(@Nonnull final String type, @Nullable final String value) {
+        return value != null ? type + ":" + value.toLowerCase(Locale.US) : null;
+    }
+
+    @Nonnull
+    private BulkResult createValidatedUser(@Nonnull final User user) {
+        try {
+            try (UserDao.Session ignored = userDao.session()) {
+                this.setNewUserDefaults(user, null);
+                this.userDao.save(user);
+            }
+
+            // trigger any post create listeners
+            for (final UserManagerListener listener : listeners) {
+                listener.onPostCreateUser(user);
+            }
+            return BulkResult.success(user);
+        } catch (final UserException | RuntimeException e) {
+            return BulkResult.failure(user, e);
+        }
+    }
+
+    @Nonnull
+    private static Exception unwrap(@Nonnull final Throwable t) {
+        final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        Throwables.throwIfInstanceOf(cause, Error.class);
+        return (Exception) cause;
+    }
+
+    /**
+     * Find the unique identifiers of the specified user that are already in use, with a single lookup.
+     */
+    @Nonnull
+    protected Set<UserDao.Identifier> findConflicts(@Nonnull final User user) {
+        return this.userDao.findConflicts(user);
+    }
+
+    /**
+     * @deprecated use {@link #validateNewUser(User, Set)} with the conflicts from {@link #findConflicts(User)} instead.
+     */
+    @Deprecated
     protected void validateNewUser(final User user) throws UserException {
-        // perform user validation
-        validateUser(user);
-        validateEmail(user);
-        validateUsDesignation(user);
-        validateUsEmployeeId(user);
+        validateNewUserAttributes(user);
+        validateNewUser(user, findConflicts(user));
+    }
 
+    /**
+     * @param conflicts the identifiers of the new user that are already in use
+     */
+    protected void validateNewUser(final User user, @Nonnull final Set<UserDao.Identifier> conflicts)
+            throws UserException {
         // throw an error if a user already exists for this email
-        if (this.doesEmailExist(user.getEmail())) {
+        if (conflicts.contains(UserDao.Identifier.EMAIL)) {
             LOG.debug("The specified email '{}' already exists.", user.getEmail());
             throw new EmailAlreadyExistsException();
         }
 
         // throw an error if the raw Relay or The Key guid exists already
-        if (user.getRawRelayGuid() != null && this.doesRelayGuidExist(user.getRawRelayGuid())) {
+        if (user.getRawRelayGuid() != null && conflicts.contains(UserDao.Identifier.RELAY_GUID)) {
             throw new RelayGuidAlreadyExistsException("Relay guid '" + user.getRawRelayGuid() + "' already exists");
         }
-        if (user.getRawTheKeyGuid() != null && this.doesTheKeyGuidExist(user.getRawTheKeyGuid())) {
+        if (user.getRawTheKeyGuid() != null && conflicts.contains(UserDao.Identifier.THE_KEY_GUID)) {
             throw new TheKeyGuidAlreadyExistsException("The Key guid '" + user.getRawTheKeyGuid() + "' already exists");
         }
     }
 
+    private void validateNewUserAttributes(@Nonnull final User user) throws UserException {
+        validateUser(user);
+        validateEmail(user);
+        validateUsDesignation(user);
+        validateUsEmployeeId(user);
+    }
+
+    /**
+     * @deprecated use {@link #setNewUserDefaults(User, Set)} instead.
+     */
+    @Deprecated
     protected void setNewUserDefaults(final User user) throws UserException {
+        setNewUserDefaults(user, null);
+    }
+
+    /**
+     * @param conflicts the identifiers of the new user that are already in use, these are looked up when null
+     */
+    protected void setNewUserDefaults(final User user, @Nullable final Set<UserDao.Identifier> conflicts)
+            throws UserException {
         // generate a guid for the user if there isn't a valid one already set
         int count = 0;
-        while (!UserUtil.isValidGuid(user.getGuid()) || doesGuidExist(user.getGuid()) ||
-                !UserUtil.isValidGuid(user.getRelayGuid()) || doesRelayGuidExist(user.getRelayGuid()) ||
-                !UserUtil.isValidGuid(user.getTheKeyGuid()) || doesTheKeyGuidExist(user.getTheKeyGuid())) {
-            final String guid = UUID.randomUUID().toString().toUpperCase(Locale.US);
+        boolean verified = false;
+        Set<UserDao.Identifier> current = conflicts;
+        while (!UserUtil.isValidGuid(user.getGuid()) || !UserUtil.isValidGuid(user.getRelayGuid()) ||
+                !UserUtil.isValidGuid(user.getTheKeyGuid()) ||
+                (!verified && !Collections.disjoint(current != null ? current : findConflicts(user),
+                        GUID_IDENTIFIERS))) {
+            final String guid = this.guidAllocator.allocateGuid();
             user.setGuid(guid);
             user.setTheKeyGuid(guid);
             user.setRelayGuid(guid);
 
+            // the known conflicts don't apply to the newly allocated guid
+            current = null;
+
+            // guids from a verifying allocator don't need to be checked against the user store again
+            verified = this.guidAllocator.isVerified();
+
             // prevent an infinite loop, I doubt this exception will ever be thrown
             if (count++ > 200) {
                 throw new UserException("Unable to create a guid for the new user");
@@ -208,19 +511,150 @@ public void updateUser(final User user, final User.Attr... attrs) throws DaoExce
         // validate user object before trying to update it
         this.validateUpdateUser(user, attrs);
 
+        final User original;
+        try (UserDao.Session ignored = userDao.session()) {
+            // skip loading the original user when it isn't needed and the update will detect concurrent changes
+            final boolean optimistic = isOptimisticUpdate(user, attrs);
+            original = optimistic ? user : this.getFreshUser(user);
+            this.applyUpdate(original, user, optimistic, attrs);
+        }
+
+        // trigger any post update listeners
+        for (final UserManagerListener listener : listeners) {
+            listener.onPostUpdateUser(original, user, attrs);
+        }
+    }
+
+    /**
+     * Update the user. For optimistic updates the original is the user itself, concurrent changes are detected by the
+     * update instead of by comparing against a freshly loaded original.
+     */
+    private void applyUpdate(@Nonnull final User original, @Nonnull final User user, final boolean optimistic,
+                             final User.Attr... attrs) throws DaoException, UserException {
         // trigger any pre update listeners
-        final User original = this.getFreshUser(user);
         for (final UserManagerListener listener : listeners) {
             listener.onPreUpdateUser(original, user, attrs);
         }
 
         // update the user object
-        this.userDao.update(original, user, attrs);
+        if (optimistic) {
+            this.userDao.update(user, attrs);
+        } else {
+            this.userDao.update(original, user, attrs);
+        }
+    }
 
-        // trigger any post update listeners
-        for (final UserManagerListener listener : listeners) {
-            listener.onPostUpdateUser(original, user, attrs);
+    @Beta
+    @Nonnull
+    @Override
+    public List<BulkResult> updateUsers(@Nonnull final Stream<BulkUpdate> updates,
+                                        @Nonnull final BulkOptions options) {
+        final ExecutorService bulkExecutor = options.getExecutor() == null ?
+                AsyncUtil.newBoundedExecutor("BulkUpdateUsers", options.getConcurrency(), options.getConcurrency()) :
+                null;
+        final Executor executor = bulkExecutor != null ? bulkExecutor : options.getExecutor();
+        final Semaphore workers = new Semaphore(options.getConcurrency());
+
+        final List<BulkUpdate> submitted = new ArrayList<>();
+        final List<CompletableFuture<List<BulkResult>>> results = new ArrayList<>();
+        try {
+            final Iterator<List<BulkUpdate>> batches = Iterators.partition(updates.iterator(), options.getBatchSize());
+            while (batches.hasNext()) {
+                final List<BulkUpdate> batch = batches.next();
+                submitted.addAll(batch);
+
+                // apply each batch on a single worker, blocking while all workers are busy
+                workers.acquireUninterruptibly();
+                final CompletableFuture<List<BulkResult>> result = supplyAsync(() -> updateBatch(batch), executor);
+                result.whenComplete((r, t) -> workers.release());
+                results.add(result.handle((r, t) -> t != null ? batch.stream()
+                        .map(update -> BulkResult.failure(update.getUser(), unwrap(t)))
+                        .collect(Collectors.toList()) : r));
+            }
+
+            final List<BulkResult> completed =
+                    results.stream().flatMap(result -> result.join().stream()).collect(Collectors.toList());
+
+            // audit every record on the calling thread, which holds the context of whoever requested the bulk update
+            if (bulkAuditor != null) {
+                for (int i = 0; i < completed.size(); i++) {
+                    bulkAuditor.auditUpdateUser(completed.get(i), submitted.get(i).getAttrs());
+                }
+            }
+            return completed;
+        } finally {
+            if (bulkExecutor != null) {
+                bulkExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Apply a batch of updates using a single session of the UserDao, loading all needed original users with a single
+     * lookup.
+     */
+    @Nonnull
+    private List<BulkResult> updateBatch(@Nonnull final List<BulkUpdate> batch) {
+        final List<BulkResult> results = new ArrayList<>(batch.size());
+        try (UserDao.Session ignored = userDao.session()) {
+            // validate the updates and load the original users that are needed
+            final Exception[] errors = new Exception[batch.size()];
+            final boolean[] optimistic = new boolean[batch.size()];
+            final Set<String> guids = new HashSet<>();
+            for (int i = 0; i < errors.length; i++) {
+                final User user = batch.get(i).getUser();
+                final User.Attr[] attrs = batch.get(i).getAttrs();
+                try {
+                    validateUpdateUser(user, attrs);
+                    optimistic[i] = isOptimisticUpdate(user, attrs);
+                    if (!optimistic[i] && user.getTheKeyGuid() != null) {
+                        guids.add(user.getTheKeyGuid());
+                    }
+                } catch (final UserException | RuntimeException e) {
+                    errors[i] = e;
+                }
+            }
+            // the originals need to reflect the stored users, so bypass any caching of the UserDao
+            final Map<String, User> originals = new HashMap<>();
+            if (!guids.isEmpty()) {
+                for (final User fresh : userDao.uncached().findAllByTheKeyGuids(guids, true)) {
+                    if (fresh.getTheKeyGuid() != null) {
+                        originals.put(fresh.getTheKeyGuid().toUpperCase(Locale.US), fresh);
+                    }
+                }
+            }
+
+            // apply the updates
+            for (int i = 0; i < errors.length; i++) {
+                final User user = batch.get(i).getUser();
+                final User.Attr[] attrs = batch.get(i).getAttrs();
+                if (errors[i] != null) {
+                    results.add(BulkResult.failure(user, errors[i]));
+                    continue;
+                }
+
+                try {
+                    User original = user;
+                    if (!optimistic[i]) {
+                        original = user.getTheKeyGuid() != null ?
+                                originals.get(user.getTheKeyGuid().toUpperCase(Locale.US)) : null;
+                        if (original == null) {
+                            throw new UserNotFoundException("Cannot find a fresh instance of the specified user");
+                        }
+                    }
+                    this.applyUpdate(original, user, optimistic[i], attrs);
+
+                    // trigger any post update listeners
+                    for (final UserManagerListener listener : listeners) {
+                        listener.onPostUpdateUser(original, user, attrs);
+                    }
+                    results.add(BulkResult.success(user));
+                } catch (final UserException | RuntimeException e) {
+                    results.add(BulkResult.failure(user, e));
+                }
+            }
         }
+        return results;
     }
 
     protected void validateUpdateUser(final User user, final User.Attr... attrs) throws UserException {
@@ -256,15 +690,17 @@ public void deactivateUser(final User user) throws DaoException, UserException {
     @Audit(action = AUDIT_ACTION_REACTIVATE_USER, actionResolverName = AUDIT_ACTION_RESOLVER_USER_MANAGER,
             resourceResolverName = AUDIT_RESOURCE_RESOLVER_REACTIVATE_USER)
     public void reactivateUser(final User user) throws DaoException, UserException {
-        // Determine if the user already exists, and can't be reactivated
-        if (this.doesEmailExist(user.getEmail())) {
-            final String error = "Unable to reactivate user because an account with the email address '" + user
-                    .getEmail() + "' currently exists";
-            LOG.error(error);
-            throw new EmailAlreadyExistsException(error);
-        }
+        try (UserDao.Session ignored = userDao.session()) {
+            // Determine if the user already exists, and can't be reactivated
+            if (this.doesEmailExist(user.getEmail())) {
+                final String error = "Unable to reactivate user because an account with the email address '" + user
+                        .getEmail() + "' currently exists";
+                LOG.error(error);
+                throw new EmailAlreadyExistsException(error);
+            }
 
-        userDao.reactivate(user);
+            userDao.reactivate(user);
+        }
 
         // trigger any post reactivate listeners
         for (final UserManagerListener listener : listeners) {
@@ -328,11 +764,18 @@ private boolean clearMfaIntruderState(@Nonnull final User user) {
         return changed;
     }
 
+    private boolean isOptimisticUpdate(@Nonnull final User user, @Nonnull final User.Attr... attrs) {
+        // email changes may need to rename the user, which requires the original user
+        return optimisticConcurrency && !Arrays.asList(attrs).contains(User.Attr.EMAIL) &&
+                listeners.stream().noneMatch(UserManagerListener::requiresOriginalUser) &&
+                userDao.canDetectConcurrentUpdates(user);
+    }
+
     @Nonnull
     @Override
     public User getFreshUser(@Nonnull final User user) throws UserNotFoundException {
-        // attempt retrieving the fresh user object using the original users guid
-        final User fresh = userDao.findByTheKeyGuid(user.getTheKeyGuid(), true);
+        // attempt retrieving the fresh user object using the original users guid, bypassing any cache
+        final User fresh = userDao.uncached().findByTheKeyGuid(user.getTheKeyGuid(), true);
 
         // throw an error if the guid wasn't found
         if (fresh == null) {
@@ -411,6 +854,33 @@ public User findUserByEmployeeId(final String employeeId, final boolean includeD
         return this.userDao.findByEmployeeId(employeeId, includeDeactivated);
     }
 
+    @Nonnull
+    @Override
+    public List<User> findAllByEmails(@Nonnull final Collection<String> emails, final boolean includeDeactivated) {
+        return userDao.findAllByEmails(emails, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByRelayGuids(@Nonnull final Collection<String> guids,
+                                          final boolean includeDeactivated) {
+        return userDao.findAllByRelayGuids(guids, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                           final boolean includeDeactivated) {
+        return userDao.findAllByTheKeyGuids(guids, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByEmployeeIds(@Nonnull final Collection<String> employeeIds,
+                                           final boolean includeDeactivated) {
+        return userDao.findAllByEmployeeIds(employeeIds, includeDeactivated);
+    }
+
     @Beta
     @Nonnull
     @Override
@@ -465,12 +935,24 @@ public Stream<User> streamUsers(@Nullable final Expression expression, final boo
         return userDao.streamUsers(expression, includeDeactivated, restrictMaxAllowed);
     }
 
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    final boolean restrictMaxAllowed, final User.Attr... attrs) {
+        return userDao.streamUsers(expression, includeDeactivated, restrictMaxAllowed, attrs);
+    }
+
     @Override
     public Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable final Expression expression,
                                            final boolean includeDeactivated) {
         return userDao.streamUsersInGroup(group, expression, includeDeactivated, true);
     }
 
+    @Override
+    public Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable final Expression expression,
+                                           final boolean includeDeactivated, final User.Attr... attrs) {
+        return userDao.streamUsersInGroup(group, expression, includeDeactivated, true, attrs);
+    }
+
     @Override
     @Audit(action = AUDIT_ACTION_ADD_TO_GROUP, actionResolverName = AUDIT_ACTION_RESOLVER_USER_MANAGER,
             resourceResolverName = AUDIT_RESOURCE_RESOLVER_ADD_TO_GROUP)
@@ -541,6 +1023,16 @@ protected void validateUsDesignation(@Nonnull final User user) throws UserExcept
     }
 
     public interface UserManagerListener {
+        /**
+         * Indicates if this listener needs the original user when a user is updated. When no listener needs it, the
+         * original user may not be loaded and listeners receive the updated user as the original user instead.
+         *
+         * @return true if this listener uses the original user passed to the update callbacks
+         */
+        default boolean requiresOriginalUser() {
+            return true;
+        }
+
         void onPostCreateUser(@Nonnull User user);
 
         void onPreUpdateUser(@Nonnull User original, @Nonnull User user, @Nonnull User.Attr... attrs)
@@ -553,6 +1045,17 @@ void onPreUpdateUser(@Nonnull User original, @Nonnull User user, @Nonnull User.A
         void onPostReactivateUser(@Nonnull User user);
     }
 
+    /**
+     * Records an audit entry for every record of a bulk operation. The bulk operations don't go through the
+     * {@link Audit} annotated single user methods, so they are audited through this instead.
+     */
+    @Beta
+    public interface BulkAuditor {
+        void auditCreateUser(@Nonnull BulkResult result);
+
+        void auditUpdateUser(@Nonnull BulkResult result, @Nonnull User.Attr... attrs);
+    }
+
     public abstract static class SimpleUserManagerListener implements UserManagerListener {
         @Override
         public void onPostCreateUser(@Nonnull final User user) {}
@@ -9,6 +9,7 @@
 import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.ccci.idm.user.util.HashUtility;
@@ -59,7 +60,8 @@ public enum Attr {
 
     // Multi-value attributes
     private final Set<String> domainsVisited = new HashSet<>();
-    private final Set<Group> groups = new HashSet<>();
+    @Nonnull
+    private Set<Group> groups = ImmutableSet.of();
 
     // self-service verification keys
     private String signupKey = null;
@@ -151,7 +153,7 @@ protected User(final User source) {
         mfaIntruderResetTime = source.mfaIntruderResetTime;
 
         this.domainsVisited.addAll(source.domainsVisited);
-        this.groups.addAll(source.groups);
+        this.groups = source.groups;
 
         this.signupKey = source.signupKey;
         this.changeEmailKey = source.changeEmailKey;
@@ -597,9 +599,13 @@ public void addDomainsVisited(final String domain) {
      * @param groups the groups to set
      */
     public void setGroups(final Collection<Group> groups) {
-        this.groups.clear();
-        if (groups != null) {
-            this.groups.addAll(groups);
+        // immutable sets are shared instead of copied so users with the same groups can share a single set
+        if (groups instanceof ImmutableSet) {
+            this.groups = (ImmutableSet<Group>) groups;
+        } else if (groups != null) {
+            this.groups = groups.stream().filter(g -> g != null).collect(ImmutableSet.toImmutableSet());
+        } else {
+            this.groups = ImmutableSet.of();
         }
     }
 
@@ -607,7 +613,7 @@ public void setGroups(final Collection<Group> groups) {
      * @return the groupMembership
      */
     public Set<Group> getGroups() {
-        return Collections.unmodifiableSet(this.groups);
+        return this.groups;
     }
 
     public String getSignupKey() {
@@ -827,6 +833,11 @@ public Serializable setImplMeta(@Nonnull final String key, @Nullable final Seria
         return this.implMeta.put(key, obj);
     }
 
+    @Nonnull
+    Map<String, Serializable> implMeta() {
+        return Collections.unmodifiableMap(implMeta);
+    }
+
     @Override
     @SuppressWarnings({"CloneDoesntCallSuperClone", "CloneDoesntDeclareCloneNotSupportedException"})
     public User clone() {
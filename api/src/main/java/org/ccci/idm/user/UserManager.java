@@ -11,8 +11,11 @@
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public interface UserManager {
@@ -39,6 +42,27 @@ public interface UserManager {
      */
     void createUser(User user) throws DaoException, UserException;
 
+    /**
+     * Create all the users provided by the specified stream. A failure to create one user doesn't stop the remaining
+     * users from being created, it is reported in the {@link BulkResult} for that user instead.
+     *
+     * @param users   the {@link User}s to create
+     * @param options the {@link BulkOptions} controlling how the users are created
+     * @return a {@link BulkResult} for every user, in the same order as the users were provided
+     */
+    @Beta
+    @Nonnull
+    default List<BulkResult> createUsers(@Nonnull final Stream<User> users, @Nonnull final BulkOptions options) {
+        return users.map(user -> {
+            try {
+                createUser(user);
+                return BulkResult.success(user);
+            } catch (final UserException | RuntimeException e) {
+                return BulkResult.failure(user, e);
+            }
+        }).collect(Collectors.toList());
+    }
+
     /**
      * Update the specified {@link User}.
      *
@@ -48,6 +72,29 @@ public interface UserManager {
      */
     void updateUser(User user, User.Attr... attrs) throws DaoException, UserException;
 
+    /**
+     * Apply all the updates provided by the specified stream. A failure to update one user doesn't stop the remaining
+     * updates from being applied, it is reported in the {@link BulkResult} for that update instead. Every user should
+     * only be updated once per bulk update.
+     *
+     * @param updates the {@link BulkUpdate}s to apply
+     * @param options the {@link BulkOptions} controlling how the updates are applied
+     * @return a {@link BulkResult} for every update, in the same order as the updates were provided
+     */
+    @Beta
+    @Nonnull
+    default List<BulkResult> updateUsers(@Nonnull final Stream<BulkUpdate> updates,
+                                         @Nonnull final BulkOptions options) {
+        return updates.map(update -> {
+            try {
+                updateUser(update.getUser(), update.getAttrs());
+                return BulkResult.success(update.getUser());
+            } catch (final UserException | RuntimeException e) {
+                return BulkResult.failure(update.getUser(), e);
+            }
+        }).collect(Collectors.toList());
+    }
+
     /**
      * Deactivate the user by disabling the account and changing the e-mail address.
      *
@@ -220,6 +267,68 @@ default User findUserByGuid(String guid) {
      */
     User findUserByEmployeeId(String employeeId, boolean includeDeactivated);
 
+    /**
+     * Locate all users with any of the specified e-mail addresses.
+     *
+     * @param emails             E-mail addresses of users to find.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     */
+    @Nonnull
+    default List<User> findAllByEmails(@Nonnull final Collection<String> emails, final boolean includeDeactivated) {
+        return emails.stream().filter(Objects::nonNull).distinct()
+                .map(email -> findUserByEmail(email, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Locate all users with any of the specified Relay guids.
+     *
+     * @param guids              Relay GUIDs of users to find.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     */
+    @Nonnull
+    default List<User> findAllByRelayGuids(@Nonnull final Collection<String> guids, final boolean includeDeactivated) {
+        return guids.stream().filter(Objects::nonNull).distinct()
+                .map(guid -> findUserByRelayGuid(guid, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Locate all users with any of the specified The Key guids.
+     *
+     * @param guids              The Key GUIDs of users to find.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     */
+    @Nonnull
+    default List<User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                            final boolean includeDeactivated) {
+        return guids.stream().filter(Objects::nonNull).distinct()
+                .map(guid -> findUserByTheKeyGuid(guid, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Locate all users with any of the specified employee ids.
+     *
+     * @param employeeIds        employee ids of users to find.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     */
+    @Nonnull
+    default List<User> findAllByEmployeeIds(@Nonnull final Collection<String> employeeIds,
+                                            final boolean includeDeactivated) {
+        return employeeIds.stream().filter(Objects::nonNull).distinct()
+                .map(employeeId -> findUserByEmployeeId(employeeId, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
     /**
      * Find all users matching the search query.
      *
@@ -330,8 +439,31 @@ default Stream<User> streamUsers(boolean includeDeactivated) {
      */
     Stream<User> streamUsers(@Nullable Expression expression, boolean includeDeactivated, boolean restrictMaxAllowed);
 
+    /**
+     * Provide a Java 8 Stream over all the users that match the specified expression, only loading the requested
+     * attributes for each user. Users loaded with a projection are partial and should not be passed to
+     * {@link UserManager#updateUser}. This stream needs to be closed after use.
+     *
+     * @param expression         The search expression
+     * @param includeDeactivated Whether deactivated users should be included in the Stream
+     * @param restrictMaxAllowed Throw an exception if the stream exceeds the maximum allowed results
+     * @param attrs              The attributes to load, all attributes are loaded when none are specified
+     * @return a Stream of all users
+     * @throws ExceededMaximumAllowedResultsException If restrictMaxAllowed is true and the stream exceeds the
+     *                                                configured limit.
+     */
+    default Stream<User> streamUsers(@Nullable Expression expression, boolean includeDeactivated,
+                                     boolean restrictMaxAllowed, User.Attr... attrs) {
+        return streamUsers(expression, includeDeactivated, restrictMaxAllowed);
+    }
+
     Stream<User> streamUsersInGroup(@Nonnull Group group, @Nullable Expression expression, boolean includeDeactivated);
 
+    default Stream<User> streamUsersInGroup(@Nonnull Group group, @Nullable Expression expression,
+                                            boolean includeDeactivated, User.Attr... attrs) {
+        return streamUsersInGroup(group, expression, includeDeactivated);
+    }
+
     /**
      * Add user to group
      *
@@ -0,0 +1,612 @@
+package org.ccci.idm.user;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.joda.time.ReadWritableInstant;
+import org.joda.time.ReadableInstant;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable read-only view of a {@link User}. Snapshots are safe to share between threads and caches without
+ * cloning, and are much smaller than a {@link User}: account flags are packed into a single int and all collections
+ * are immutable (sharing a single instance when empty).
+ *
+ * Use {@link #of(User)} to create a snapshot and {@link #toUser()} to get a mutable copy of the user again.
+ */
+@Immutable
+public final class UserSnapshot implements Serializable {
+    private static final long serialVersionUID = 2953166585434683066L;
+
+    private static final int EMAIL_VERIFIED = 1;
+    private static final int ALLOW_PASSWORD_CHANGE = 1 << 1;
+    private static final int FORCE_PASSWORD_CHANGE = 1 << 2;
+    private static final int DEACTIVATED = 1 << 3;
+    private static final int LOGIN_DISABLED = 1 << 4;
+    private static final int LOCKED = 1 << 5;
+    private static final int MFA_BYPASSED = 1 << 6;
+    private static final int MFA_INTRUDER_LOCKED = 1 << 7;
+
+    @Nullable
+    private final String email;
+    @Nullable
+    private final String password;
+    @Nullable
+    private final String guid;
+    @Nullable
+    private final String theKeyGuid;
+    @Nullable
+    private final String relayGuid;
+
+    @Nullable
+    private final String firstName;
+    @Nullable
+    private final String preferredName;
+    @Nullable
+    private final String lastName;
+
+    @Nullable
+    private final ReadableInstant loginTime;
+    @Nullable
+    private final ReadableInstant pwdChangedTime;
+
+    private final int flags;
+
+    @Nonnull
+    private final Set<String> domainsVisited;
+    @Nonnull
+    private final Set<Group> groups;
+
+    @Nullable
+    private final String signupKey;
+    @Nullable
+    private final String changeEmailKey;
+    @Nullable
+    private final String resetPasswordKey;
+    @Nullable
+    private final String proposedEmail;
+
+    @Nullable
+    private final String mfaEncryptedSecret;
+    @Nullable
+    private final Integer mfaIntruderAttempts;
+    @Nullable
+    private final ReadableInstant mfaIntruderResetTime;
+
+    @Nullable
+    private final String facebookId;
+    private final double facebookIdStrength;
+
+    @Nullable
+    private final String grMasterPersonId;
+    @Nullable
+    private final String grStageMasterPersonId;
+    @Nullable
+    private final String grPersonId;
+    @Nullable
+    private final String grStagePersonId;
+    @Nullable
+    private final String grSyncChecksum;
+    @Nullable
+    private final String grStageSyncChecksum;
+
+    @Nonnull
+    private final Map<String, Serializable> implMeta;
+
+    @Nullable
+    private final String employeeId;
+    @Nullable
+    private final String departmentNumber;
+    @Nullable
+    private final String cruDesignation;
+    @Nullable
+    private final String cruEmployeeStatus;
+    @Nullable
+    private final String cruGender;
+    @Nullable
+    private final String cruHrStatusCode;
+    @Nullable
+    private final String cruJobCode;
+    @Nullable
+    private final String cruManagerID;
+    @Nullable
+    private final String cruMinistryCode;
+    @Nullable
+    private final String cruPayGroup;
+    @Nullable
+    private final String cruSubMinistryCode;
+    @Nonnull
+    private final Set<String> cruProxyAddresses;
+
+    @Nullable
+    private final String city;
+    @Nullable
+    private final String state;
+    @Nullable
+    private final String postal;
+    @Nullable
+    private final String country;
+    @Nullable
+    private final String telephoneNumber;
+
+    @Nullable
+    private final String securityQuestion;
+    @Nullable
+    private final String securityAnswer;
+
+    private UserSnapshot(@Nonnull final User user) {
+        email = user.getEmail();
+        password = user.getPassword();
+        guid = user.getGuid();
+        theKeyGuid = user.getRawTheKeyGuid();
+        relayGuid = user.getRawRelayGuid();
+        firstName = user.getFirstName();
+        preferredName = user.getRawPreferredName();
+        lastName = user.getLastName();
+        loginTime = immutable(user.getLoginTime());
+        pwdChangedTime = immutable(user.getPasswordChangedTime());
+
+        flags = (user.isEmailVerified() ? EMAIL_VERIFIED : 0) |
+                (user.isAllowPasswordChange() ? ALLOW_PASSWORD_CHANGE : 0) |
+                (user.isForcePasswordChange() ? FORCE_PASSWORD_CHANGE : 0) |
+                (user.isDeactivated() ? DEACTIVATED : 0) |
+                (user.isLoginDisabled() ? LOGIN_DISABLED : 0) |
+                (user.isLocked() ? LOCKED : 0) |
+                (user.isMfaBypassed() ? MFA_BYPASSED : 0) |
+                (user.isMfaIntruderLocked() ? MFA_INTRUDER_LOCKED : 0);
+
+        domainsVisited = ImmutableSet.copyOf(user.getDomainsVisited());
+        // User already stores groups as an immutable set, so this shares the set instead of copying it
+        groups = ImmutableSet.copyOf(user.getGroups());
+
+        signupKey = user.getSignupKey();
+        changeEmailKey = user.getChangeEmailKey();
+        resetPasswordKey = user.getResetPasswordKey();
+        proposedEmail = user.getProposedEmail();
+
+        mfaEncryptedSecret = user.getMfaEncryptedSecret();
+        mfaIntruderAttempts = user.getMfaIntruderAttempts();
+        mfaIntruderResetTime = immutable(user.getMfaIntruderResetTime());
+
+        facebookId = user.getFacebookId();
+        facebookIdStrength = user.getFacebookIdStrengthFor(facebookId);
+
+        grMasterPersonId = user.getGrMasterPersonId();
+        grStageMasterPersonId = user.getGrStageMasterPersonId();
+        grPersonId = user.getGrPersonId();
+        grStagePersonId = user.getGrStagePersonId();
+        grSyncChecksum = user.getGrSyncChecksum();
+        grStageSyncChecksum = user.getGrStageSyncChecksum();
+
+        final ImmutableMap.Builder<String, Serializable> meta = ImmutableMap.builder();
+        user.implMeta().forEach((key, value) -> {
+            if (value != null) {
+                meta.put(key, value);
+            }
+        });
+        implMeta = meta.build();
+
+        employeeId = user.getEmployeeId();
+        departmentNumber = user.getDepartmentNumber();
+        cruDesignation = user.getCruDesignation();
+        cruEmployeeStatus = user.getCruEmployeeStatus();
+        cruGender = user.getCruGender();
+        cruHrStatusCode = user.getCruHrStatusCode();
+        cruJobCode = user.getCruJobCode();
+        cruManagerID = user.getCruManagerID();
+        cruMinistryCode = user.getCruMinistryCode();
+        cruPayGroup = user.getCruPayGroup();
+        cruSubMinistryCode = user.getCruSubMinistryCode();
+        cruProxyAddresses = ImmutableSet.copyOf(user.getCruProxyAddresses());
+
+        city = user.getCity();
+        state = user.getState();
+        postal = user.getPostal();
+        country = user.getCountry();
+        telephoneNumber = user.getTelephoneNumber();
+
+        securityQuestion = user.getSecurityQuestion();
+        securityAnswer = user.getSecurityAnswer();
+    }
+
+    @Nonnull
+    public static UserSnapshot of(@Nonnull final User user) {
+        return new UserSnapshot(user);
+    }
+
+    /**
+     * @return a new mutable {@link User} with the state captured by this snapshot.
+     */
+    @Nonnull
+    public User toUser() {
+        final User user = new User();
+        user.setEmail(email, isEmailVerified());
+        user.setPassword(password, isForcePasswordChange());
+        user.setGuid(guid);
+        user.setTheKeyGuid(theKeyGuid);
+        user.setRelayGuid(relayGuid);
+        user.setFirstName(firstName);
+        user.setPreferredName(preferredName);
+        user.setLastName(lastName);
+        user.setLoginTime(loginTime);
+        user.setPasswordChangedTime(pwdChangedTime);
+
+        user.setAllowPasswordChange(isAllowPasswordChange());
+        user.setDeactivated(isDeactivated());
+        user.setLoginDisabled(isLoginDisabled());
+        user.setLocked(isLocked());
+
+        user.setDomainsVisited(domainsVisited);
+        user.setGroups(groups);
+
+        user.setSignupKey(signupKey);
+        user.setChangeEmailKey(changeEmailKey);
+        user.setResetPasswordKey(resetPasswordKey);
+        user.setProposedEmail(proposedEmail);
+
+        user.setMfaBypassed(isMfaBypassed());
+        user.setMfaEncryptedSecret(mfaEncryptedSecret);
+        user.setMfaIntruderLocked(isMfaIntruderLocked());
+        user.setMfaIntruderAttempts(mfaIntruderAttempts);
+        user.setMfaIntruderResetTime(mfaIntruderResetTime);
+
+        user.setFacebookId(facebookId, facebookIdStrength);
+
+        user.setGrMasterPersonId(grMasterPersonId);
+        user.setGrStageMasterPersonId(grStageMasterPersonId);
+        user.setGrPersonId(grPersonId);
+        user.setGrStagePersonId(grStagePersonId);
+        user.setGrSyncChecksum(grSyncChecksum);
+        user.setGrStageSyncChecksum(grStageSyncChecksum);
+
+        implMeta.forEach(user::setImplMeta);
+
+        user.setEmployeeId(employeeId);
+        user.setDepartmentNumber(departmentNumber);
+        user.setCruDesignation(cruDesignation);
+        user.setCruEmployeeStatus(cruEmployeeStatus);
+        user.setCruGender(cruGender);
+        user.setCruHrStatusCode(cruHrStatusCode);
+        user.setCruJobCode(cruJobCode);
+        user.setCruManagerID(cruManagerID);
+        user.setCruMinistryCode(cruMinistryCode);
+        user.setCruPayGroup(cruPayGroup);
+        user.setCruSubMinistryCode(cruSubMinistryCode);
+        user.getCruProxyAddresses().addAll(cruProxyAddresses);
+
+        user.setCity(city);
+        user.setState(state);
+        user.setPostal(postal);
+        user.setCountry(country);
+        user.setTelephoneNumber(telephoneNumber);
+
+        user.setSecurityQuestion(securityQuestion);
+        user.setSecurityAnswer(securityAnswer, false);
+        return user;
+    }
+
+    @Nullable
+    private static ReadableInstant immutable(@Nullable final ReadableInstant instant) {
+        if (instant instanceof ReadWritableInstant) {
+            return new DateTime(instant.getMillis(), instant.getChronology());
+        }
+        return instant;
+    }
+
+    private boolean hasFlag(final int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @Nullable
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * This method is for use by UserDao &amp; UserManager implementations only and is not meant for public use.
+     */
+    @Nullable
+    public String getPassword() {
+        return password;
+    }
+
+    @Nullable
+    @Deprecated
+    public String getGuid() {
+        return guid;
+    }
+
+    @Nullable
+    public String getTheKeyGuid() {
+        return theKeyGuid != null ? theKeyGuid : guid;
+    }
+
+    @Nullable
+    public String getRawTheKeyGuid() {
+        return theKeyGuid;
+    }
+
+    @Nullable
+    public String getRelayGuid() {
+        return relayGuid != null ? relayGuid : guid;
+    }
+
+    @Nullable
+    public String getRawRelayGuid() {
+        return relayGuid;
+    }
+
+    @Nullable
+    public String getFirstName() {
+        return firstName;
+    }
+
+    @Nullable
+    public String getRawPreferredName() {
+        return preferredName;
+    }
+
+    @Nullable
+    public String getPreferredName() {
+        return !Strings.isNullOrEmpty(preferredName) ? preferredName : firstName;
+    }
+
+    @Nullable
+    public String getLastName() {
+        return lastName;
+    }
+
+    @Nullable
+    public ReadableInstant getLoginTime() {
+        return loginTime;
+    }
+
+    @Nullable
+    public ReadableInstant getPasswordChangedTime() {
+        return pwdChangedTime;
+    }
+
+    public boolean isEmailVerified() {
+        return hasFlag(EMAIL_VERIFIED);
+    }
+
+    public boolean isAllowPasswordChange() {
+        return hasFlag(ALLOW_PASSWORD_CHANGE);
+    }
+
+    public boolean isForcePasswordChange() {
+        return hasFlag(FORCE_PASSWORD_CHANGE);
+    }
+
+    public boolean isDeactivated() {
+        return hasFlag(DEACTIVATED);
+    }
+
+    public boolean isLoginDisabled() {
+        return hasFlag(LOGIN_DISABLED);
+    }
+
+    public boolean isLocked() {
+        return hasFlag(LOCKED);
+    }
+
+    @Nonnull
+    public Set<String> getDomainsVisited() {
+        return domainsVisited;
+    }
+
+    @Nonnull
+    public Set<Group> getGroups() {
+        return groups;
+    }
+
+    @Nullable
+    public String getSignupKey() {
+        return signupKey;
+    }
+
+    @Nullable
+    public String getChangeEmailKey() {
+        return changeEmailKey;
+    }
+
+    @Nullable
+    public String getResetPasswordKey() {
+        return resetPasswordKey;
+    }
+
+    @Nullable
+    public String getProposedEmail() {
+        return proposedEmail;
+    }
+
+    public boolean isMfaEnabled() {
+        return mfaEncryptedSecret != null;
+    }
+
+    public boolean isMfaBypassed() {
+        return hasFlag(MFA_BYPASSED);
+    }
+
+    @Nullable
+    public String getMfaEncryptedSecret() {
+        return mfaEncryptedSecret;
+    }
+
+    public boolean isMfaIntruderLocked() {
+        return hasFlag(MFA_INTRUDER_LOCKED);
+    }
+
+    @Nullable
+    public Integer getMfaIntruderAttempts() {
+        return mfaIntruderAttempts;
+    }
+
+    @Nullable
+    public ReadableInstant getMfaIntruderResetTime() {
+        return mfaIntruderResetTime;
+    }
+
+    @Nullable
+    public String getFacebookId() {
+        return facebookId;
+    }
+
+    public double getFacebookIdStrengthFor(@Nullable final String id) {
+        return id != null && id.equals(facebookId) ? facebookIdStrength : Constants.STRENGTH_NONE;
+    }
+
+    @Nullable
+    public String getGrMasterPersonId() {
+        return grMasterPersonId;
+    }
+
+    @Nullable
+    public String getGrStageMasterPersonId() {
+        return grStageMasterPersonId;
+    }
+
+    @Nullable
+    public String getGrPersonId() {
+        return grPersonId;
+    }
+
+    @Nullable
+    public String getGrStagePersonId() {
+        return grStagePersonId;
+    }
+
+    @Nullable
+    public String getGrSyncChecksum() {
+        return grSyncChecksum;
+    }
+
+    @Nullable
+    public String getGrStageSyncChecksum() {
+        return grStageSyncChecksum;
+    }
+
+    /**
+     * This method is for use by UserDao &amp; UserManager implementations only and is not meant for public use.
+     */
+    @Nullable
+    public <T> T getImplMeta(@Nonnull final String key, @Nonnull final Class<T> clazz) {
+        final Serializable obj = implMeta.get(key);
+        return clazz.isInstance(obj) ? clazz.cast(obj) : null;
+    }
+
+    @Nullable
+    public String getEmployeeId() {
+        return employeeId;
+    }
+
+    @Nullable
+    public String getDepartmentNumber() {
+        return departmentNumber;
+    }
+
+    @Nullable
+    public String getCruDesignation() {
+        return cruDesignation;
+    }
+
+    @Nullable
+    public String getCruEmployeeStatus() {
+        return cruEmployeeStatus;
+    }
+
+    @Nullable
+    public String getCruGender() {
+        return cruGender;
+    }
+
+    @Nullable
+    public String getCruHrStatusCode() {
+        return cruHrStatusCode;
+    }
+
+    @Nullable
+    public String getCruJobCode() {
+        return cruJobCode;
+    }
+
+    @Nullable
+    public String getCruManagerID() {
+        return cruManagerID;
+    }
+
+    @Nullable
+    public String getCruMinistryCode() {
+        return cruMinistryCode;
+    }
+
+    @Nullable
+    public String getCruPayGroup() {
+        return cruPayGroup;
+    }
+
+    @Nullable
+    public String getCruSubMinistryCode() {
+        return cruSubMinistryCode;
+    }
+
+    @Nonnull
+    public Collection<String> getCruProxyAddresses() {
+        return cruProxyAddresses;
+    }
+
+    @Nullable
+    public String getCity() {
+        return city;
+    }
+
+    @Nullable
+    public String getState() {
+        return state;
+    }
+
+    @Nullable
+    public String getPostal() {
+        return postal;
+    }
+
+    @Nullable
+    public String getCountry() {
+        return country;
+    }
+
+    @Nullable
+    public String getTelephoneNumber() {
+        return telephoneNumber;
+    }
+
+    @Nullable
+    public String getSecurityQuestion() {
+        return securityQuestion;
+    }
+
+    public boolean hasSecurityAnswer() {
+        return !Strings.isNullOrEmpty(securityAnswer);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).omitNullValues()
+                .add("email", email)
+                .add("theKeyGuid", getTheKeyGuid())
+                .add("relayGuid", getRelayGuid())
+                .add("firstName", firstName)
+                .add("lastName", lastName)
+                .add("deactivated", isDeactivated())
+                .toString();
+    }
+}
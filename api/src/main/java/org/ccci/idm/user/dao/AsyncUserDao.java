@@ -0,0 +1,74 @@
+package org.ccci.idm.user.dao;
+
+import com.google.common.annotations.Beta;
+import org.ccci.idm.user.Group;
+import org.ccci.idm.user.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking view of a {@link UserDao}. Every operation returns immediately, any {@link
+ * org.ccci.idm.user.dao.exception.DaoException} is reported by completing the returned future exceptionally.
+ */
+@Beta
+public interface AsyncUserDao {
+    @Nonnull
+    CompletableFuture<Void> save(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<Void> update(@Nonnull User user, User.Attr... attrs);
+
+    @Nonnull
+    CompletableFuture<Void> update(@Nonnull User original, @Nonnull User user, User.Attr... attrs);
+
+    @Nonnull
+    CompletableFuture<Void> deactivate(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<Void> reactivate(@Nonnull User user);
+
+    @Nonnull
+    CompletableFuture<User> findByEmail(String email, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findByRelayGuid(String guid, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findByTheKeyGuid(String guid, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findByFacebookId(String id, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findByDesignation(@Nullable String designation, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<User> findByEmployeeId(String employeeId, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByEmails(@Nonnull Collection<String> emails, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByRelayGuids(@Nonnull Collection<String> guids, boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByTheKeyGuids(@Nonnull Collection<String> guids,
+                                                       boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<List<User>> findAllByEmployeeIds(@Nonnull Collection<String> employeeIds,
+                                                       boolean includeDeactivated);
+
+    @Nonnull
+    CompletableFuture<Void> addToGroup(@Nonnull User user, @Nonnull Group group, boolean addSecurity);
+
+    @Nonnull
+    CompletableFuture<Void> removeFromGroup(@Nonnull User user, @Nonnull Group group);
+
+    @Nonnull
+    CompletableFuture<Group> getGroup(@Nullable String id);
+}
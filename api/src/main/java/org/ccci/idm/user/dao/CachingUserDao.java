@@ -0,0 +1,848 @@
+package org.ccci.idm.user.dao;
+
+import com.google.common.annotations.Beta;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import org.ccci.idm.user.Group;
+import org.ccci.idm.user.SearchQuery;
+import org.ccci.idm.user.User;
+import org.ccci.idm.user.UserSnapshot;
+import org.ccci.idm.user.dao.exception.DaoException;
+import org.ccci.idm.user.query.Attribute;
+import org.ccci.idm.user.query.BooleanExpression;
+import org.ccci.idm.user.query.ComparisonExpression;
+import org.ccci.idm.user.query.ConstantExpression;
+import org.ccci.idm.user.query.Expression;
+import org.ccci.idm.user.query.ExpressionOptimizer;
+import org.ccci.idm.user.query.NotExpression;
+import org.joda.time.Duration;
+import org.joda.time.ReadableDuration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * {@link UserDao} decorator that caches users returned by the single-user finders of the wrapped {@link UserDao}.
+ *
+ * Users are cached by their The Key guid, with secondary indexes for Relay guid, e-mail, employee id & designation.
+ * Any write operation for a user invalidates the cached copy of that user. Changes made directly to the underlying
+ * user store are only picked up once the cached user expires.
+ *
+ * Cached users are never handed out directly, every lookup returns a fresh clone of the cached user. A user loaded
+ * while a write to that user is in flight is returned to the caller but not cached, so a slow read can't repopulate
+ * the cache with the state from before the write.
+ *
+ * Lookups that need the current state of a user, such as loading the original of an update, should go through
+ * {@link #uncached()} instead.
+ *
+ * Optionally the results of {@link #streamUsers(Expression, boolean, boolean)} searches that restrict the maximum
+ * number of results can be cached as well. Cached results are keyed by the optimized form of the search expression,
+ * and are invalidated by any write to a user in the results or to a user that matches the search. Group membership
+ * changes aren't reflected in the users passed to the group write methods, so they invalidate every cached search
+ * that references {@link Attribute#GROUP}. A search result loaded while cached results were being invalidated is
+ * returned to the caller but not cached.
+ */
+@Beta
+public class CachingUserDao implements UserDao {
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    private static final ReadableDuration DEFAULT_EXPIRE_AFTER_WRITE = Duration.standardMinutes(5);
+    private static final Set<Attribute> ALL_ATTRIBUTES = Collections.unmodifiableSet(EnumSet.allOf(Attribute.class));
+
+    private enum Index {
+        THE_KEY_GUID(User::getTheKeyGuid, true), RELAY_GUID(User::getRelayGuid, true), EMAIL(User::getEmail, false),
+        EMPLOYEE_ID(User::getEmployeeId, false), DESIGNATION(User::getCruDesignation, false);
+
+        private final Function<User, String> getter;
+        // deactivated users can share e-mail, employee id & designation with an active user, so we only index
+        // deactivated users for globally unique identifiers
+        private final boolean includeDeactivated;
+
+        Index(final Function<User, String> getter, final boolean includeDeactivated) {
+            this.getter = getter;
+            this.includeDeactivated = includeDeactivated;
+        }
+
+        @Nullable
+        String key(@Nonnull final User user) {
+            return !includeDeactivated && user.isDeactivated() ? null : normalize(getter.apply(user));
+        }
+    }
+
+    @Nonnull
+    private final UserDao dao;
+
+    @Nonnull
+    private final Cache<String, User> users;
+    private final Map<Index, ConcurrentMap<String, String>> indexes = new EnumMap<>(Index.class);
+    private final AbstractCache.StatsCounter stats = new AbstractCache.SimpleStatsCounter();
+
+    // every invalidation is stamped with a generation, a load is only cached if the loaded user wasn't invalidated
+    // after the load started
+    private final AtomicLong generation = new AtomicLong(0);
+    @Nonnull
+    private final Cache<String, Long> invalidations;
+
+    private long queryCacheMaximumSize = 0;
+    @Nonnull
+    private ReadableDuration queryCacheExpireAfterWrite = Duration.standardMinutes(1);
+    @Nullable
+    private volatile Cache<QueryKey, QueryResult> queries;
+    private final AbstractCache.StatsCounter queryStats = new AbstractCache.SimpleStatsCounter();
+    private final AtomicLong queryGeneration = new AtomicLong(0);
+
+    public CachingUserDao(@Nonnull final UserDao dao) {
+        this(dao, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRE_AFTER_WRITE);
+    }
+
+    public CachingUserDao(@Nonnull final UserDao dao, final long maximumSize,
+                          @Nonnull final ReadableDuration expireAfterWrite) {
+        this.dao = dao;
+        users = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite.getMillis(), TimeUnit.MILLISECONDS)
+                .<String, User>removalListener(this::onRemoval)
+                .build();
+        // invalidations only need to outlive any load that started before them, which is bounded by the cache expiry
+        invalidations = CacheBuilder.newBuilder()
+                .expireAfterWrite(expireAfterWrite.getMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        for (final Index index : Index.values()) {
+            indexes.put(index, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * @return a snapshot of the hit, miss & eviction counts for this cache.
+     */
+    @Nonnull
+    public CacheStats getStats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * @return a snapshot of the hit & miss counts for the search result cache.
+     */
+    @Nonnull
+    public CacheStats getQueryStats() {
+        return queryStats.snapshot();
+    }
+
+    /**
+     * @param maximumSize the maximum number of search results to cache, 0 disables caching search results.
+     */
+    public void setQueryCacheMaximumSize(final long maximumSize) {
+        queryCacheMaximumSize = maximumSize;
+        queries = null;
+    }
+
+    public void setQueryCacheExpireAfterWrite(@Nonnull final ReadableDuration expireAfterWrite) {
+        queryCacheExpireAfterWrite = expireAfterWrite;
+        queries = null;
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+        final Cache<QueryKey, QueryResult> queries = this.queries;
+        if (queries != null) {
+            queries.invalidateAll();
+        }
+    }
+
+    @Nonnull
+    @Override
+    public UserDao uncached() {
+        return dao.uncached();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return dao.isReadOnly();
+    }
+
+    @Override
+    public boolean canDetectConcurrentUpdates(@Nonnull final User user) {
+        return dao.canDetectConcurrentUpdates(user);
+    }
+
+    @Nonnull
+    @Override
+    public Set<Identifier> findConflicts(@Nonnull final User user) throws DaoException {
+        // always check the underlying dao, a stale cache could miss a recently created user
+        return dao.findConflicts(user);
+    }
+
+    @Nonnull
+    @Override
+    public Session session() throws DaoException {
+        return dao.session();
+    }
+
+    @Override
+    public void save(@Nonnull final User user) throws DaoException {
+        try {
+            dao.save(user);
+        } finally {
+            invalidate(user);
+            invalidateQueries(user, ALL_ATTRIBUTES);
+        }
+    }
+
+    @Override
+    public void update(@Nonnull final User user, final User.Attr... attrs) throws DaoException {
+        try {
+            dao.update(user, attrs);
+        } finally {
+            invalidate(user);
+            invalidateQueries(user, touchedAttributes(attrs));
+        }
+    }
+
+    @Override
+    public void update(@Nonnull final User original, @Nonnull final User user, final User.Attr... attrs)
+            throws DaoException {
+        try {
+            dao.update(original, user, attrs);
+        } finally {
+            invalidate(original);
+            invalidate(user);
+            invalidateQueries(original, touchedAttributes(attrs));
+            invalidateQueries(user, touchedAttributes(attrs));
+        }
+    }
+
+    @Override
+    public void deactivate(@Nonnull final User user) throws DaoException {
+        try {
+            dao.deactivate(user);
+        } finally {
+            invalidate(user);
+            invalidateQueries(user, ALL_ATTRIBUTES);
+        }
+    }
+
+    @Override
+    public void reactivate(@Nonnull final User user) {
+        try {
+            dao.reactivate(user);
+        } finally {
+            invalidate(user);
+            invalidateQueries(user, ALL_ATTRIBUTES);
+        }
+    }
+
+    @Override
+    public User findByEmail(final String email, final boolean includeDeactivated) {
+        return find(Index.EMAIL, email, includeDeactivated, () -> dao.findByEmail(email, includeDeactivated));
+    }
+
+    @Override
+    public User findByEmail(final String email, final boolean includeDeactivated, final User.Attr... attrs) {
+        return find(Index.EMAIL, email, includeDeactivated, attrs,
+                () -> dao.findByEmail(email, includeDeactivated, attrs));
+    }
+
+    @Override
+    @Deprecated
+    public User findByGuid(final String guid, final boolean includeDeactivated) {
+        return dao.findByGuid(guid, includeDeactivated);
+    }
+
+    @Override
+    public User findByRelayGuid(final String guid, final boolean includeDeactivated) {
+        return find(Index.RELAY_GUID, guid, includeDeactivated, () -> dao.findByRelayGuid(guid, includeDeactivated));
+    }
+
+    @Override
+    public User findByRelayGuid(final String guid, final boolean includeDeactivated, final User.Attr... attrs) {
+        return find(Index.RELAY_GUID, guid, includeDeactivated, attrs,
+                () -> dao.findByRelayGuid(guid, includeDeactivated, attrs));
+    }
+
+    @Nullable
+    @Override
+    public User findByTheKeyGuid(final String guid, final boolean includeDeactivated) {
+        return find(Index.THE_KEY_GUID, guid, includeDeactivated,
+                () -> dao.findByTheKeyGuid(guid, includeDeactivated));
+    }
+
+    @Nullable
+    @Override
+    public User findByTheKeyGuid(final String guid, final boolean includeDeactivated, final User.Attr... attrs) {
+        return find(Index.THE_KEY_GUID, guid, includeDeactivated, attrs,
+                () -> dao.findByTheKeyGuid(guid, includeDeactivated, attrs));
+    }
+
+    @Override
+    public User findByFacebookId(final String id, final boolean includeDeactivated) {
+        return dao.findByFacebookId(id, includeDeactivated);
+    }
+
+    @Nullable
+    @Override
+    public User findByDesignation(@Nullable final String designation, final boolean includeDeactivated) {
+        return find(Index.DESIGNATION, designation, includeDeactivated,
+                () -> dao.findByDesignation(designation, includeDeactivated));
+    }
+
+    @Nullable
+    @Override
+    public User findByDesignation(@Nullable final String designation, final boolean includeDeactivated,
+                                  final User.Attr... attrs) {
+        return find(Index.DESIGNATION, designation, includeDeactivated, attrs,
+                () -> dao.findByDesignation(designation, includeDeactivated, attrs));
+    }
+
+    @Override
+    public User findByEmployeeId(final String employeeId, final boolean includeDeactivated) {
+        return find(Index.EMPLOYEE_ID, employeeId, includeDeactivated,
+                () -> dao.findByEmployeeId(employeeId, includeDeactivated));
+    }
+
+    @Override
+    public User findByEmployeeId(final String employeeId, final boolean includeDeactivated,
+                                 final User.Attr... attrs) {
+        return find(Index.EMPLOYEE_ID, employeeId, includeDeactivated, attrs,
+                () -> dao.findByEmployeeId(employeeId, includeDeactivated, attrs));
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByEmails(@Nonnull final Collection<String> emails, final boolean includeDeactivated) {
+        return findAll(Index.EMAIL, emails, includeDeactivated,
+                missing -> dao.findAllByEmails(missing, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByRelayGuids(@Nonnull final Collection<String> guids, final boolean includeDeactivated) {
+        return findAll(Index.RELAY_GUID, guids, includeDeactivated,
+                missing -> dao.findAllByRelayGuids(missing, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                           final boolean includeDeactivated) {
+        return findAll(Index.THE_KEY_GUID, guids, includeDeactivated,
+                missing -> dao.findAllByTheKeyGuids(missing, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByEmployeeIds(@Nonnull final Collection<String> employeeIds,
+                                           final boolean includeDeactivated) {
+        return findAll(Index.EMPLOYEE_ID, employeeIds, includeDeactivated,
+                missing -> dao.findAllByEmployeeIds(missing, includeDeactivated));
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public List<User> findAllByQuery(@Nonnull final SearchQuery query) throws DaoException {
+        return dao.findAllByQuery(query);
+    }
+
+    @Override
+    @Deprecated
+    public List<User> findAllByFirstName(final String pattern, final boolean includeDeactivated) {
+        return dao.findAllByFirstName(pattern, includeDeactivated);
+    }
+
+    @Override
+    @Deprecated
+    public List<User> findAllByLastName(final String pattern, final boolean includeDeactivated) {
+        return dao.findAllByLastName(pattern, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public List<User> findAllByEmail(final String pattern, final boolean includeDeactivated) {
+        return dao.findAllByEmail(pattern, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    @Deprecated
+    public List<User> findAllByGroup(@Nonnull final Group group, final boolean includeDeactivated)
+            throws DaoException {
+        return dao.findAllByGroup(group, includeDeactivated);
+    }
+
+    @Override
+    @Deprecated
+    public int enqueueAll(@Nonnull final BlockingQueue<User> queue, final boolean includeDeactivated)
+            throws DaoException {
+        return dao.enqueueAll(queue, includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    final boolean restrictMaxAllowed) {
+        // only cache searches with a bounded number of results
+        if (getQueries() == null || !restrictMaxAllowed) {
+            return dao.streamUsers(expression, includeDeactivated, restrictMaxAllowed);
+        }
+        return cachedQuery(expression, includeDeactivated).users.stream().map(UserSnapshot::toUser);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<UserSnapshot> streamUserSnapshots(@Nullable final Expression expression,
+                                                    final boolean includeDeactivated,
+                                                    final boolean restrictMaxAllowed) {
+        if (getQueries() == null || !restrictMaxAllowed) {
+            return dao.streamUserSnapshots(expression, includeDeactivated, restrictMaxAllowed);
+        }
+        // snapshots are immutable, so cached snapshots are handed out directly
+        return cachedQuery(expression, includeDeactivated).users.stream();
+    }
+
+    @Nonnull
+    private QueryResult cachedQuery(@Nullable final Expression expression, final boolean includeDeactivated) {
+        final Cache<QueryKey, QueryResult> queries = getQueries();
+
+        final Expression optimized = expression != null ? ExpressionOptimizer.optimize(expression) : null;
+        final QueryKey key = new QueryKey(optimized != ConstantExpression.TRUE ? optimized : null, includeDeactivated);
+        QueryResult result = queries.getIfPresent(key);
+        if (result != null) {
+            queryStats.recordHits(1);
+        } else {
+            queryStats.recordMisses(1);
+            final long started = queryGeneration.get();
+            try (Stream<User> stream = dao.streamUsers(key.expression, includeDeactivated, true)) {
+                result = new QueryResult(stream.map(UserSnapshot::of).collect(ImmutableList.toImmutableList()));
+            }
+
+            // don't cache the result if it could have missed a concurrent write, the check is repeated after the put
+            // because an invalidation can race with caching the result
+            if (queryGeneration.get() == started) {
+                queries.put(key, result);
+                if (queryGeneration.get() != started) {
+                    queries.asMap().remove(key, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    final boolean restrictMaxAllowed, final User.Attr... attrs) {
+        return dao.streamUsers(expression, includeDeactivated, restrictMaxAllowed, attrs);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable final Expression expression,
+                                           final boolean includeDeactivated, final boolean restrictMaxAllowed) {
+        return dao.streamUsersInGroup(group, expression, includeDeactivated, restrictMaxAllowed);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable final Expression expression,
+                                           final boolean includeDeactivated, final boolean restrictMaxAllowed,
+                                           final User.Attr... attrs) {
+        return dao.streamUsersInGroup(group, expression, includeDeactivated, restrictMaxAllowed, attrs);
+    }
+
+    @Override
+    public void addToGroup(@Nonnull final User user, @Nonnull final Group group) throws DaoException {
+        try {
+            dao.addToGroup(user, group);
+        } finally {
+            invalidate(user);
+            invalidateGroupQueries(user);
+        }
+    }
+
+    @Override
+    public void addToGroup(@Nonnull final User user, @Nonnull final Group group, final boolean addSecurity)
+            throws DaoException {
+        try {
+            dao.addToGroup(user, group, addSecurity);
+        } finally {
+            invalidate(user);
+            invalidateGroupQueries(user);
+        }
+    }
+
+    @Override
+    public void removeFromGroup(@Nonnull final User user, @Nonnull final Group group) throws DaoException {
+        try {
+            dao.removeFromGroup(user, group);
+        } finally {
+            invalidate(user);
+            invalidateGroupQueries(user);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Group getGroup(@Nullable final String id) throws DaoException {
+        return dao.getGroup(id);
+    }
+
+    @Nonnull
+    @Override
+    public List<Group> getAllGroups(@Nullable final String baseSearch) throws DaoException {
+        return dao.getAllGroups(baseSearch);
+    }
+
+    @Nullable
+    private User find(@Nonnull final Index index, @Nullable final String value, final boolean includeDeactivated,
+                      @Nonnull final Supplier<User> loader) {
+        final User cached = lookup(index, value, includeDeactivated);
+        if (cached != null) {
+            stats.recordHits(1);
+            return cached.clone();
+        }
+
+        stats.recordMisses(1);
+        final long started = generation.get();
+        final User user = loader.get();
+        if (user != null) {
+            cache(user, started);
+        }
+        return user;
+    }
+
+    /**
+     * A cached user satisfies any projection, but a user loaded with a projection is partial and is never cached.
+     */
+    @Nullable
+    private User find(@Nonnull final Index index, @Nullable final String value, final boolean includeDeactivated,
+                      @Nullable final User.Attr[] attrs, @Nonnull final Supplier<User> loader) {
+        if (attrs == null || attrs.length == 0) {
+            return find(index, value, includeDeactivated, loader);
+        }
+
+        final User cached = lookup(index, value, includeDeactivated);
+        if (cached != null) {
+            stats.recordHits(1);
+            return cached.clone();
+        }
+
+        stats.recordMisses(1);
+        return loader.get();
+    }
+
+    @Nonnull
+    private List<User> findAll(@Nonnull final Index index, @Nonnull final Collection<String> values,
+                               final boolean includeDeactivated,
+                               @Nonnull final Function<Collection<String>, List<User>> loader) {
+        final List<User> found = new ArrayList<>();
+        final Set<String> guids = new HashSet<>();
+        final Set<String> missing = new LinkedHashSet<>();
+        for (final String value : values) {
+            final User cached = lookup(index, value, includeDeactivated);
+            if (cached != null) {
+                stats.recordHits(1);
+                if (guids.add(normalize(cached.getTheKeyGuid()))) {
+                    found.add(cached.clone());
+                }
+            } else if (value != null) {
+                missing.add(value);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            stats.recordMisses(missing.size());
+            final long started = generation.get();
+            for (final User user : loader.apply(missing)) {
+                cache(user, started);
+                final String guid = normalize(user.getTheKeyGuid());
+                if (guid == null || guids.add(guid)) {
+                    found.add(user);
+                }
+            }
+        }
+        return found;
+    }
+
+    @Nullable
+    private User lookup(@Nonnull final Index index, @Nullable final String value, final boolean includeDeactivated) {
+        final String key = normalize(value);
+        if (key == null) {
+            return null;
+        }
+
+        final String guid = indexes.get(index).get(key);
+        if (guid == null) {
+            return null;
+        }
+
+        final User user = users.getIfPresent(guid);
+        if (user == null || !key.equals(index.key(user))) {
+            // this index entry is stale
+            indexes.get(index).remove(key, guid);
+            return null;
+        }
+        return includeDeactivated || !user.isDeactivated() ? user : null;
+    }
+
+    /**
+     * Cache a user that was loaded from the wrapped dao.
+     *
+     * @param user    the loaded user
+     * @param started the generation when the load started
+     */
+    private void cache(@Nonnull final User user, final long started) {
+        final String guid = normalize(user.getTheKeyGuid());
+        if (guid == null || isInvalidatedSince(guid, started)) {
+            return;
+        }
+
+        final User copy = user.clone();
+        final User previous = users.asMap().put(guid, copy);
+        if (previous != null) {
+            unindex(guid, previous);
+        }
+        for (final Index index : Index.values()) {
+            final String key = index.key(copy);
+            if (key != null) {
+                indexes.get(index).put(key, guid);
+            }
+        }
+
+        // an invalidation can race with caching the user, it either happened before this check or after the put
+        if (isInvalidatedSince(guid, started)) {
+            users.asMap().remove(guid, copy);
+        }
+    }
+
+    private boolean isInvalidatedSince(@Nonnull final String guid, final long started) {
+        final Long invalidated = invalidations.getIfPresent(guid);
+        return invalidated != null && invalidated > started;
+    }
+
+    private void invalidate(@Nullable final User user) {
+        if (user != null) {
+            final String guid = normalize(user.getTheKeyGuid());
+            if (guid != null) {
+                // record the invalidation before removing the user so a concurrent load can't cache a stale copy
+                invalidations.put(guid, generation.incrementAndGet());
+                users.invalidate(guid);
+            }
+        }
+    }
+
+    private void unindex(@Nonnull final String guid, @Nonnull final User user) {
+        for (final Index index : Index.values()) {
+            final String key = index.key(user);
+            if (key != null) {
+                indexes.get(index).remove(key, guid);
+            }
+        }
+    }
+
+    private void onRemoval(@Nonnull final RemovalNotification<String, User> notification) {
+        if (notification.getCause() == RemovalCause.REPLACED) {
+            // replaced entries are re-indexed when they are cached
+            return;
+        }
+        if (notification.wasEvicted()) {
+            stats.recordEviction();
+        }
+
+        final String guid = notification.getKey();
+        final User user = notification.getValue();
+        if (guid != null && user != null) {
+            unindex(guid, user);
+        }
+    }
+
+    @Nullable
+    private Cache<QueryKey, QueryResult> getQueries() {
+        if (queryCacheMaximumSize <= 0) {
+            return null;
+        }
+
+        Cache<QueryKey, QueryResult> queries = this.queries;
+        if (queries == null) {
+            synchronized (this) {
+                queries = this.queries;
+                if (queries == null) {
+                    queries = CacheBuilder.newBuilder()
+                            .maximumSize(queryCacheMaximumSize)
+                            .expireAfterWrite(queryCacheExpireAfterWrite.getMillis(), TimeUnit.MILLISECONDS)
+                            .build();
+                    this.queries = queries;
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Invalidate cached search results that include the specified user, or that the user could now match because of a
+     * change to one of the searched attributes.
+     */
+    private void invalidateQueries(@Nullable final User user, @Nonnull final Set<Attribute> touched) {
+        final Cache<QueryKey, QueryResult> queries = this.queries;
+        if (queries == null || user == null) {
+            return;
+        }
+
+        final String guid = normalize(user.getTheKeyGuid());
+        queryGeneration.incrementAndGet();
+        queries.asMap().entrySet().removeIf(entry -> entry.getValue().guids.contains(guid) ||
+                entry.getKey().isAffectedBy(touched) && entry.getKey().matches(user));
+    }
+
+    /**
+     * Invalidate cached search results that include the specified user, or that reference group membership. The group
+     * write methods don't update the groups of the user, so we can't tell which group searches the user now matches.
+     */
+    private void invalidateGroupQueries(@Nullable final User user) {
+        final Cache<QueryKey, QueryResult> queries = this.queries;
+        if (queries == null || user == null) {
+            return;
+        }
+
+        final String guid = normalize(user.getTheKeyGuid());
+        queryGeneration.incrementAndGet();
+        queries.asMap().entrySet().removeIf(entry -> entry.getValue().guids.contains(guid) ||
+                entry.getKey().attributes.contains(Attribute.GROUP));
+    }
+
+    @Nonnull
+    private static Set<Attribute> touchedAttributes(@Nullable final User.Attr[] attrs) {
+        if (attrs == null || attrs.length == 0) {
+            return ALL_ATTRIBUTES;
+        }
+
+        final Set<Attribute> touched = EnumSet.noneOf(Attribute.class);
+        for (final User.Attr attr : attrs) {
+            switch (attr) {
+                case EMAIL:
+                    touched.add(Attribute.EMAIL);
+                    break;
+                case NAME:
+                    touched.add(Attribute.FIRST_NAME);
+                    touched.add(Attribute.LAST_NAME);
+                    break;
+                case CRU_PROXY_ADDRESSES:
+                    touched.add(Attribute.EMAIL_ALIAS);
+                    break;
+                case EMPLOYEE_NUMBER:
+                    touched.add(Attribute.US_EMPLOYEE_ID);
+                    break;
+                case CRU_DESIGNATION:
+                    touched.add(Attribute.US_DESIGNATION);
+                    break;
+                case FLAGS:
+                    // the deactivated flag affects which users are returned by any search
+                    return ALL_ATTRIBUTES;
+                default:
+                    break;
+            }
+        }
+        return touched;
+    }
+
+    private static final class QueryKey {
+        @Nullable
+        private final Expression expression;
+        private final boolean includeDeactivated;
+        @Nonnull
+        private final Set<Attribute> attributes;
+        @Nonnull
+        private final Predicate<User> predicate;
+
+        private QueryKey(@Nullable final Expression expression, final boolean includeDeactivated) {
+            this.expression = expression;
+            this.includeDeactivated = includeDeactivated;
+            attributes = EnumSet.noneOf(Attribute.class);
+            collectAttributes(expression, attributes);
+            predicate = expression != null ? expression.compile() : user -> true;
+        }
+
+        boolean isAffectedBy(@Nonnull final Set<Attribute> touched) {
+            // a search without an expression can be affected by any change that affects the deactivated flag
+            return expression == null ? touched.equals(ALL_ATTRIBUTES) : !Collections.disjoint(attributes, touched);
+        }
+
+        boolean matches(@Nonnull final User user) {
+            return (includeDeactivated || !user.isDeactivated()) && predicate.test(user);
+        }
+
+        private static void collectAttributes(@Nullable final Expression expression,
+                                              @Nonnull final Set<Attribute> attributes) {
+            if (expression instanceof ComparisonExpression) {
+                attributes.add(((ComparisonExpression) expression).getAttribute());
+            } else if (expression instanceof NotExpression) {
+                collectAttributes(((NotExpression) expression).getComponent(), attributes);
+            } else if (expression instanceof BooleanExpression) {
+                for (final Expression component : ((BooleanExpression) expression).getComponents()) {
+                    collectAttributes(component, attributes);
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            final QueryKey that = (QueryKey) o;
+            return includeDeactivated == that.includeDeactivated && Objects.equals(expression, that.expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(expression, includeDeactivated);
+        }
+    }
+
+    private static final class QueryResult {
+        @Nonnull
+        private final List<UserSnapshot> users;
+        @Nonnull
+        private final Set<String> guids;
+
+        private QueryResult(@Nonnull final List<UserSnapshot> users) {
+            this.users = users;
+            guids = users.stream().map(UserSnapshot::getTheKeyGuid).map(CachingUserDao::normalize)
+                    .filter(Objects::nonNull).collect(Collectors.toSet());
+        }
+    }
+
+    @Nullable
+    private static String normalize(@Nullable final String value) {
+        return value != null ? value.toLowerCase(Locale.US) : null;
+    }
+}
@@ -0,0 +1,147 @@
+package org.ccci.idm.user.dao;
+
+import static org.ccci.idm.user.util.AsyncUtil.runAsync;
+import static org.ccci.idm.user.util.AsyncUtil.supplyAsync;
+
+import com.google.common.annotations.Beta;
+import org.ccci.idm.user.Group;
+import org.ccci.idm.user.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncUserDao} that runs the operations of a blocking {@link UserDao} on an {@link Executor}. The size of the
+ * executor bounds the number of concurrent operations against the underlying user store.
+ */
+@Beta
+public class ExecutorAsyncUserDao implements AsyncUserDao {
+    @Nonnull
+    private final UserDao dao;
+    @Nonnull
+    private final Executor executor;
+
+    public ExecutorAsyncUserDao(@Nonnull final UserDao dao, @Nonnull final Executor executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> save(@Nonnull final User user) {
+        return runAsync(() -> dao.save(user), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> update(@Nonnull final User user, final User.Attr... attrs) {
+        return runAsync(() -> dao.update(user, attrs), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> update(@Nonnull final User original, @Nonnull final User user,
+                                          final User.Attr... attrs) {
+        return runAsync(() -> dao.update(original, user, attrs), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> deactivate(@Nonnull final User user) {
+        return runAsync(() -> dao.deactivate(user), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> reactivate(@Nonnull final User user) {
+        return runAsync(() -> dao.reactivate(user), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findByEmail(final String email, final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findByEmail(email, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findByRelayGuid(final String guid, final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findByRelayGuid(guid, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findByTheKeyGuid(final String guid, final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findByTheKeyGuid(guid, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findByFacebookId(final String id, final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findByFacebookId(id, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findByDesignation(@Nullable final String designation,
+                                                     final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findByDesignation(designation, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<User> findByEmployeeId(final String employeeId, final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findByEmployeeId(employeeId, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByEmails(@Nonnull final Collection<String> emails,
+                                                         final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findAllByEmails(emails, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByRelayGuids(@Nonnull final Collection<String> guids,
+                                                             final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findAllByRelayGuids(guids, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                                              final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findAllByTheKeyGuids(guids, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<List<User>> findAllByEmployeeIds(@Nonnull final Collection<String> employeeIds,
+                                                              final boolean includeDeactivated) {
+        return supplyAsync(() -> dao.findAllByEmployeeIds(employeeIds, includeDeactivated), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> addToGroup(@Nonnull final User user, @Nonnull final Group group,
+                                              final boolean addSecurity) {
+        return runAsync(() -> dao.addToGroup(user, group, addSecurity), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> removeFromGroup(@Nonnull final User user, @Nonnull final Group group) {
+        return runAsync(() -> dao.removeFromGroup(user, group), executor);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Group> getGroup(@Nullable final String id) {
+        return supplyAsync(() -> dao.getGroup(id), executor);
+    }
+}
@@ -4,6 +4,8 @@
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.SearchQuery;
 import org.ccci.idm.user.User;
+import org.ccci.idm.user.UserSnapshot;
+import org.ccci.idm.user.dao.exception.ConcurrentUpdateException;
 import org.ccci.idm.user.dao.exception.DaoException;
 import org.ccci.idm.user.dao.exception.ExceededMaximumAllowedResultsException;
 import org.ccci.idm.user.query.Attribute;
@@ -11,9 +13,14 @@
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -24,6 +31,42 @@ public interface UserDao {
      */
     boolean isReadOnly();
 
+    /**
+     * Start a unit of work that lets this UserDao reuse underlying resources (such as an open connection) for every
+     * operation performed by the current thread until the returned {@link Session} is closed. Sessions can be nested,
+     * resources are released when the outermost session is closed.
+     *
+     * @return the {@link Session}, this needs to be closed by the thread that started it.
+     */
+    @Nonnull
+    default Session session() throws DaoException {
+        return () -> {};
+    }
+
+    /**
+     * Provide a non-blocking view of this UserDao that runs all operations on the specified executor.
+     *
+     * @param executor the {@link Executor} to run operations on, this should be bounded to limit the number of
+     *                 concurrent operations against the user store.
+     * @return the {@link AsyncUserDao}
+     */
+    @Beta
+    @Nonnull
+    default AsyncUserDao async(@Nonnull final Executor executor) {
+        return new ExecutorAsyncUserDao(this, executor);
+    }
+
+    /**
+     * Provide a view of this UserDao that reads directly from the underlying user store, bypassing any caching
+     * decorators. Use this when the caller needs the current state of a user, e.g. to diff an update against.
+     *
+     * @return the uncached {@link UserDao}, this UserDao if it doesn't cache anything.
+     */
+    @Nonnull
+    default UserDao uncached() {
+        return this;
+    }
+
     /**
      * Save the specified user.
      *
@@ -39,7 +82,9 @@ public interface UserDao {
     void update(@Nonnull User user, User.Attr... attrs) throws DaoException;
 
     /**
-     * Update an existing user in the persistent user store.
+     * Update an existing user in the persistent user store. Changes are computed against the original, which may be
+     * out of date; implementations should detect this (e.g. by asserting the entry is unmodified) instead of re-reading
+     * the stored user.
      *
      * @param original The original version of the user being updated
      * @param user     User to be updated.
@@ -48,6 +93,18 @@ default void update(@Nonnull User original, @Nonnull User user, User.Attr... att
         update(user, attrs);
     }
 
+    /**
+     * Indicates if {@link UserDao#update(User, User.Attr...)} detects changes made to the user store after the
+     * specified user was loaded. When this is true the update fails with a {@link ConcurrentUpdateException} instead of
+     * silently overwriting the concurrent changes, so callers don't need to load a fresh copy of the user first.
+     *
+     * @param user the user that is going to be updated
+     * @return true if concurrent updates of this user are detected
+     */
+    default boolean canDetectConcurrentUpdates(@Nonnull final User user) {
+        return false;
+    }
+
     default void deactivate(@Nonnull final User user) throws DaoException {
         // Create a deep clone copy before proceeding
         final User original = user.clone();
@@ -76,6 +133,32 @@ default void reactivate(@Nonnull final User user) {
         update(original, user, User.Attr.EMAIL, User.Attr.FLAGS);
     }
 
+    /**
+     * Find which unique identifiers of the specified user are already in use by another user. E-mail addresses only
+     * conflict with active users, the guids also conflict with deactivated users. A missing relay or The Key guid
+     * is checked using the guid, the same as {@link User#getRelayGuid()} and {@link User#getTheKeyGuid()}.
+     *
+     * @param user the user being created
+     * @return the identifiers of the user that already exist in the user store
+     */
+    @Nonnull
+    default Set<Identifier> findConflicts(@Nonnull final User user) throws DaoException {
+        final Set<Identifier> conflicts = EnumSet.noneOf(Identifier.class);
+        if (user.getEmail() != null && findByEmail(user.getEmail(), false) != null) {
+            conflicts.add(Identifier.EMAIL);
+        }
+        if (user.getGuid() != null && findByGuid(user.getGuid(), true) != null) {
+            conflicts.add(Identifier.GUID);
+        }
+        if (user.getRelayGuid() != null && findByRelayGuid(user.getRelayGuid(), true) != null) {
+            conflicts.add(Identifier.RELAY_GUID);
+        }
+        if (user.getTheKeyGuid() != null && findByTheKeyGuid(user.getTheKeyGuid(), true) != null) {
+            conflicts.add(Identifier.THE_KEY_GUID);
+        }
+        return conflicts;
+    }
+
     /**
      * Find the user with the specified e-mail.
      *
@@ -85,6 +168,19 @@ default void reactivate(@Nonnull final User user) {
      */
     User findByEmail(String email, boolean includeDeactivated);
 
+    /**
+     * Find the user with the specified e-mail, only loading the requested attributes. Users loaded with a projection
+     * are partial and should not be used to update the user store.
+     *
+     * @param email              Email for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @param attrs              The attributes to load, all attributes are loaded when none are specified.
+     * @return Requested {@link User} or <tt>null</tt> if not found.
+     */
+    default User findByEmail(String email, boolean includeDeactivated, User.Attr... attrs) {
+        return findByEmail(email, includeDeactivated);
+    }
+
     /**
      * Find the user with the specified guid.
      *
@@ -104,6 +200,19 @@ default void reactivate(@Nonnull final User user) {
      */
     User findByRelayGuid(String guid, boolean includeDeactivated);
 
+    /**
+     * Find the user with the specified Relay guid, only loading the requested attributes.
+     *
+     * @param guid               guid for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @param attrs              The attributes to load, all attributes are loaded when none are specified.
+     * @return Request {@link User} or <tt>null</tt> if not found.
+     * @see UserDao#findByEmail(String, boolean, User.Attr...)
+     */
+    default User findByRelayGuid(String guid, boolean includeDeactivated, User.Attr... attrs) {
+        return findByRelayGuid(guid, includeDeactivated);
+    }
+
     /**
      * Find the user with the specified The Key guid.
      *
@@ -114,6 +223,20 @@ default void reactivate(@Nonnull final User user) {
     @Nullable
     User findByTheKeyGuid(String guid, boolean includeDeactivated);
 
+    /**
+     * Find the user with the specified The Key guid, only loading the requested attributes.
+     *
+     * @param guid               guid for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @param attrs              The attributes to load, all attributes are loaded when none are specified.
+     * @return Request {@link User} or <tt>null</tt> if not found.
+     * @see UserDao#findByEmail(String, boolean, User.Attr...)
+     */
+    @Nullable
+    default User findByTheKeyGuid(String guid, boolean includeDeactivated, User.Attr... attrs) {
+        return findByTheKeyGuid(guid, includeDeactivated);
+    }
+
     /**
      * Find the user with the specified Facebook Id
      *
@@ -207,6 +330,20 @@ default List<User> findAllByGroup(@Nonnull Group group, boolean includeDeactivat
     @Nullable
     User findByDesignation(@Nullable String designation, boolean includeDeactivated);
 
+    /**
+     * Find the user with the specified Designation, only loading the requested attributes.
+     *
+     * @param designation        designation being searched for.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @param attrs              The attributes to load, all attributes are loaded when none are specified.
+     * @return Requested {@link User} or <tt>null</tt> if not found.
+     * @see UserDao#findByEmail(String, boolean, User.Attr...)
+     */
+    @Nullable
+    default User findByDesignation(@Nullable String designation, boolean includeDeactivated, User.Attr... attrs) {
+        return findByDesignation(designation, includeDeactivated);
+    }
+
     /**
      * Find the user with the specified employee id.
      *
@@ -216,6 +353,85 @@ default List<User> findAllByGroup(@Nonnull Group group, boolean includeDeactivat
      */
     User findByEmployeeId(String employeeId, boolean includeDeactivated);
 
+    /**
+     * Find the user with the specified employee id, only loading the requested attributes.
+     *
+     * @param employeeId         Employee id for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @param attrs              The attributes to load, all attributes are loaded when none are specified.
+     * @return Requested {@link org.ccci.idm.user.User} or <tt>null</tt> if not found.
+     * @see UserDao#findByEmail(String, boolean, User.Attr...)
+     */
+    default User findByEmployeeId(String employeeId, boolean includeDeactivated, User.Attr... attrs) {
+        return findByEmployeeId(employeeId, includeDeactivated);
+    }
+
+    /**
+     * Find all users with any of the specified e-mail addresses.
+     *
+     * @param emails             Emails for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     * @throws DaoException if a lookup failed, failed lookups are never reported as missing users.
+     */
+    @Nonnull
+    default List<User> findAllByEmails(@Nonnull final Collection<String> emails, final boolean includeDeactivated) {
+        return emails.stream().filter(Objects::nonNull).distinct()
+                .map(email -> findByEmail(email, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Find all users with any of the specified Relay guids.
+     *
+     * @param guids              guids for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     * @throws DaoException if a lookup failed, failed lookups are never reported as missing users.
+     */
+    @Nonnull
+    default List<User> findAllByRelayGuids(@Nonnull final Collection<String> guids, final boolean includeDeactivated) {
+        return guids.stream().filter(Objects::nonNull).distinct()
+                .map(guid -> findByRelayGuid(guid, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Find all users with any of the specified The Key guids.
+     *
+     * @param guids              guids for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     * @throws DaoException if a lookup failed, failed lookups are never reported as missing users.
+     */
+    @Nonnull
+    default List<User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                            final boolean includeDeactivated) {
+        return guids.stream().filter(Objects::nonNull).distinct()
+                .map(guid -> findByTheKeyGuid(guid, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Find all users with any of the specified employee ids.
+     *
+     * @param employeeIds        Employee ids for lookup.
+     * @param includeDeactivated If <tt>true</tt> then deactivated accounts are included.
+     * @return {@link List} of {@link User} objects found, in no particular order.
+     * @throws DaoException if a lookup failed, failed lookups are never reported as missing users.
+     */
+    @Nonnull
+    default List<User> findAllByEmployeeIds(@Nonnull final Collection<String> employeeIds,
+                                            final boolean includeDeactivated) {
+        return employeeIds.stream().filter(Objects::nonNull).distinct()
+                .map(employeeId -> findByEmployeeId(employeeId, includeDeactivated))
+                .filter(Objects::nonNull).distinct()
+                .collect(Collectors.toList());
+    }
+
     /**
      * Add all users to the specified {@link BlockingQueue}. This method will use {@link BlockingQueue#put(Object)} to
      * enqueue users.
@@ -253,6 +469,39 @@ default Stream<User> streamUsers(@Nullable Expression expression, boolean includ
     @Nonnull
     Stream<User> streamUsers(@Nullable Expression expression, boolean includeDeactivated, boolean restrictMaxAllowed);
 
+    /**
+     * Provide a Java 8 Stream over all the users that match the specified expression, only loading the requested
+     * attributes for each user. Users loaded with a projection are partial and should not be used to update the user
+     * store. This stream needs to be closed after use.
+     *
+     * @param expression         The search expression
+     * @param includeDeactivated Whether deactivated users should be included in the Stream
+     * @param restrictMaxAllowed A boolean indicating that the stream should be restricted to an upper search limit
+     * @param attrs              The attributes to load, all attributes are loaded when none are specified.
+     * @return a Stream of all users
+     */
+    @Nonnull
+    default Stream<User> streamUsers(@Nullable Expression expression, boolean includeDeactivated,
+                                     boolean restrictMaxAllowed, User.Attr... attrs) {
+        return streamUsers(expression, includeDeactivated, restrictMaxAllowed);
+    }
+
+    /**
+     * Provide a Java 8 Stream of immutable snapshots of all the users that match the specified expression. Snapshots
+     * are more compact than {@link User} objects and can be shared without cloning, so this should be preferred for
+     * read-only bulk processing. This stream needs to be closed after use.
+     *
+     * @param expression         The search expression
+     * @param includeDeactivated Whether deactivated users should be included in the Stream
+     * @param restrictMaxAllowed A boolean indicating that the stream should be restricted to an upper search limit
+     * @return a Stream of user snapshots
+     */
+    @Nonnull
+    default Stream<UserSnapshot> streamUserSnapshots(@Nullable Expression expression, boolean includeDeactivated,
+                                                     boolean restrictMaxAllowed) {
+        return streamUsers(expression, includeDeactivated, restrictMaxAllowed).map(UserSnapshot::of);
+    }
+
     @Nonnull
     default Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable Expression expression,
                                             boolean includeDeactivated, final boolean restrictMaxAllowed) {
@@ -261,6 +510,13 @@ default Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable Ex
                 includeDeactivated, restrictMaxAllowed);
     }
 
+    @Nonnull
+    default Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable Expression expression,
+                                            boolean includeDeactivated, final boolean restrictMaxAllowed,
+                                            User.Attr... attrs) {
+        return streamUsersInGroup(group, expression, includeDeactivated, restrictMaxAllowed);
+    }
+
     /**
      * Add user to group
      *
@@ -306,4 +562,19 @@ default void addToGroup(@Nonnull User user, @Nonnull Group group, boolean addSec
     default List<Group> getAllGroups(@Nullable String baseSearch) throws DaoException {
         return Collections.emptyList();
     }
+
+    /**
+     * A unit of work started by {@link UserDao#session()}.
+     */
+    interface Session extends AutoCloseable {
+        @Override
+        void close() throws DaoException;
+    }
+
+    /**
+     * The unique identifiers of a user, reported by {@link UserDao#findConflicts(User)}.
+     */
+    enum Identifier {
+        EMAIL, GUID, RELAY_GUID, THE_KEY_GUID
+    }
 }
@@ -0,0 +1,20 @@
+package org.ccci.idm.user.dao.exception;
+
+/**
+ * Thrown when an update is rejected because the user was modified after it was loaded.
+ */
+public class ConcurrentUpdateException extends DaoException {
+    private static final long serialVersionUID = -3268591836077345917L;
+
+    public ConcurrentUpdateException() {
+        super();
+    }
+
+    public ConcurrentUpdateException(final String message) {
+        super(message);
+    }
+
+    public ConcurrentUpdateException(final Throwable cause) {
+        super(cause);
+    }
+}
@@ -2,6 +2,7 @@
 
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CHANGEEMAILKEY;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CITY;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CN;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_COUNTRY;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CRU_DESIGNATION;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_CRU_EMPLOYEE_STATUS;
@@ -25,23 +26,28 @@
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GRSTAGEPERSONID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GR_SYNC_CHECKSUM;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GR_SYNC_CHECKSUM_STAGE;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GUID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_LASTNAME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_LOGINTIME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MFA_INTRUDER_ATTEMPTS;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MFA_INTRUDER_LOCKED;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MFA_INTRUDER_RESET_TIME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MFA_SECRET;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MODIFY_TIMESTAMP;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_OBJECTCLASS;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PASSWORD;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PASSWORDCHANGEDTIME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_POSTAL_CODE;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PREFERRED_NAME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PROPOSEDEMAIL;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_RELAY_GUID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_RESETPASSWORDKEY;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_SECURITY_ANSWER;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_SECURITY_QUESTION;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_SIGNUPKEY;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_STATE;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_TELEPHONE;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_THEKEY_GUID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_USERID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_FLAG_ALLOWPASSWORDCHANGE;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_FLAG_EMAILVERIFIED;
@@ -112,12 +118,40 @@ public abstract class AbstractLdapUserDao extends AbstractUserDao {
     private Set<String> MASK_DEFAULT = ImmutableSet.<String>builder().addAll(MASK.get(Attr.EMAIL)).addAll(MASK.get
             (Attr.NAME)).addAll(MASK.get(Attr.FLAGS)).build();
 
+    // attributes that are always loaded to identify a user, even when only a projection of the user is requested
+    private static final Set<String> RETURN_ATTRIBUTES_IDENTITY = ImmutableSet.of(LDAP_ATTR_CN, LDAP_ATTR_USERID,
+            LDAP_ATTR_OBJECTCLASS, LDAP_ATTR_GUID, LDAP_ATTR_THEKEY_GUID, LDAP_ATTR_RELAY_GUID,
+            LDAP_ATTR_MODIFY_TIMESTAMP);
+    private static final String[] RETURN_ATTRIBUTES_ALL =
+            {"*", LDAP_ATTR_PASSWORDCHANGEDTIME, LDAP_ATTR_MODIFY_TIMESTAMP};
+
     protected int maxSearchResults = SEARCH_NO_LIMIT;
 
     public void setMaxSearchResults(final int limit) {
         this.maxSearchResults = limit;
     }
 
+    /**
+     * Determine the LDAP attributes to return when loading a projection of users.
+     *
+     * @param attrs the requested attributes, when none are specified all attributes are returned.
+     * @return the names of the LDAP attributes to return
+     */
+    protected String[] getReturnAttributes(final Attr... attrs) {
+        if (attrs == null || attrs.length == 0) {
+            return RETURN_ATTRIBUTES_ALL.clone();
+        }
+
+        final ImmutableSet.Builder<String> names = ImmutableSet.<String>builder().addAll(RETURN_ATTRIBUTES_IDENTITY);
+        for (final Attr attr : attrs) {
+            names.addAll(MASK.get(attr));
+            if (attr == Attr.PASSWORD) {
+                names.add(LDAP_ATTR_PASSWORDCHANGEDTIME);
+            }
+        }
+        return names.build().toArray(new String[0]);
+    }
+
     protected Set<String> getAttributeMask(final Attr... attrs) {
         // return the default attribute mask
         if (attrs == null || attrs.length == 0) {
@@ -21,6 +21,7 @@ public class Constants {
     public static final String LDAP_ATTR_LASTNAME = "sn";
     public static final String LDAP_ATTR_LOGINTIME = "loginTime";
     public static final String LDAP_ATTR_PASSWORDCHANGEDTIME = "pwdChangedTime";
+    public static final String LDAP_ATTR_MODIFY_TIMESTAMP = "modifyTimestamp";
     public static final String LDAP_ATTR_FACEBOOKID = "thekeyFacebookId";
     public static final String LDAP_ATTR_FACEBOOKIDSTRENGTH = "thekeyFacebookIdStrength";
     public static final String LDAP_ATTR_DOMAINSVISITED = "thekeyDomainVisited";
@@ -6,6 +6,8 @@
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
 
 @Immutable
 public final class BooleanExpression implements Expression {
@@ -18,6 +20,8 @@ public enum Type {AND, OR}
     @Nonnull
     private final List<Expression> components;
 
+    private transient volatile Predicate<User> compiled;
+
     BooleanExpression(@Nonnull final Type type, @Nonnull final Expression expression,
                       @Nonnull final Expression... expressions) {
         this.type = type;
@@ -27,6 +31,11 @@ public enum Type {AND, OR}
                 .build();
     }
 
+    BooleanExpression(@Nonnull final Type type, @Nonnull final List<Expression> components) {
+        this.type = type;
+        this.components = ImmutableList.copyOf(components);
+    }
+
     private BooleanExpression(@Nonnull final BooleanExpression previous, @Nonnull final Expression... expressions) {
         type = previous.type;
         components = ImmutableList.<Expression>builder()
@@ -47,13 +56,42 @@ public List<Expression> getComponents() {
 
     @Override
     public boolean matches(@Nonnull final User user) {
+        return compile().test(user);
+    }
+
+    @Nonnull
+    @Override
+    public Predicate<User> compile() {
+        if (compiled == null) {
+            compiled = compile(type, components.stream().map(Expression::compile).toArray(Predicate[]::new));
+        }
+        return compiled;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private static Predicate<User> compile(@Nonnull final Type type, @Nonnull final Predicate[] predicates) {
         switch (type) {
             case AND:
-                return components.stream().allMatch(expr -> expr.matches(user));
+                return user -> {
+                    for (final Predicate<User> predicate : predicates) {
+                        if (!predicate.test(user)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
             case OR:
-                return components.stream().anyMatch(expr -> expr.matches(user));
+                return user -> {
+                    for (final Predicate<User> predicate : predicates) {
+                        if (predicate.test(user)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
             default:
-                return false;
+                return user -> false;
         }
     }
 
@@ -74,4 +112,26 @@ public Expression or(@Nonnull final Expression... expressions) {
 
         return new BooleanExpression(this, expressions);
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BooleanExpression)) {
+            return false;
+        }
+        final BooleanExpression that = (BooleanExpression) o;
+        return type == that.type && components.equals(that.components);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, components);
+    }
+
+    @Override
+    public String toString() {
+        return type + components.toString();
+    }
 }
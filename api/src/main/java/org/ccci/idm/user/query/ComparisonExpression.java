@@ -1,12 +1,13 @@
 package org.ccci.idm.user.query;
 
 import com.google.common.base.Strings;
-import kotlin.text.StringsKt;
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.User;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.function.Predicate;
 
 public class ComparisonExpression implements Expression {
     private static final long serialVersionUID = 6470937370962349745L;
@@ -22,6 +23,8 @@ public enum Type {EQ, LIKE, SW}
     @Nullable
     private final Group group;
 
+    private transient volatile Predicate<User> compiled;
+
     ComparisonExpression(@Nonnull final Type type, @Nonnull final Attribute attribute, @Nonnull final String value) {
         this.type = type;
         this.attribute = attribute;
@@ -58,38 +61,154 @@ public Group getGroup() {
 
     @Override
     public boolean matches(@Nonnull final User user) {
+        return compile().test(user);
+    }
+
+    @Nonnull
+    @Override
+    public Predicate<User> compile() {
+        if (compiled == null) {
+            compiled = compileAttributeMatcher(compileValueMatcher());
+        }
+        return compiled;
+    }
+
+    @Nonnull
+    private Predicate<User> compileAttributeMatcher(@Nonnull final Predicate<String> matcher) {
         switch (attribute) {
             case GUID:
-                return matches(user.getTheKeyGuid());
+                return user -> matcher.test(user.getTheKeyGuid());
             case EMAIL:
-                return matches(user.getEmail());
+                return user -> matcher.test(user.getEmail());
             case EMAIL_ALIAS:
-                return user.getCruProxyAddresses().stream().anyMatch(this::matches);
+                return user -> {
+                    for (final String alias : user.getCruProxyAddresses()) {
+                        if (matcher.test(alias)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
             case FIRST_NAME:
-                return matches(user.getFirstName());
+                return user -> matcher.test(user.getFirstName());
             case LAST_NAME:
-                return matches(user.getLastName());
+                return user -> matcher.test(user.getLastName());
             case US_EMPLOYEE_ID:
-                return matches(user.getEmployeeId());
+                return user -> matcher.test(user.getEmployeeId());
             case US_DESIGNATION:
-                return matches(user.getCruDesignation());
+                return user -> matcher.test(user.getCruDesignation());
             case GROUP:
-                return user.getGroups().stream().anyMatch(g -> g.equals(group));
+                final Group group = this.group;
+                return user -> {
+                    for (final Group g : user.getGroups()) {
+                        if (g.equals(group)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
             default:
-                return false;
+                return user -> false;
         }
     }
 
-    private boolean matches(@Nullable final String value) {
+    @Nonnull
+    private Predicate<String> compileValueMatcher() {
+        final String expected = Strings.nullToEmpty(value);
         switch (type) {
             case EQ:
-                return StringsKt.equals(value, this.value, true);
+                return v -> v != null ? v.equalsIgnoreCase(expected) : value == null;
             case SW:
-                return StringsKt.startsWith(Strings.nullToEmpty(value), Strings.nullToEmpty(this.value), true);
+                return v -> Strings.nullToEmpty(v).regionMatches(true, 0, expected, 0, expected.length());
             case LIKE:
-                throw new UnsupportedOperationException("LIKE comparisons are not currently supported");
+                return new LikeMatcher(expected);
+            default:
+                return v -> false;
         }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ComparisonExpression)) {
+            return false;
+        }
+        final ComparisonExpression that = (ComparisonExpression) o;
+        return type == that.type && attribute == that.attribute && Objects.equals(value, that.value) &&
+                Objects.equals(group, that.group);
+    }
 
-        return false;
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, attribute, value, group);
+    }
+
+    @Override
+    public String toString() {
+        return attribute + " " + type + " " + (group != null ? group : value);
+    }
+
+    /**
+     * Case-insensitive matcher for LIKE patterns, where <tt>*</tt> matches any sequence of characters.
+     */
+    private static final class LikeMatcher implements Predicate<String> {
+        @Nonnull
+        private final String[] segments;
+        private final boolean anchorStart;
+        private final boolean anchorEnd;
+
+        LikeMatcher(@Nonnull final String pattern) {
+            segments = pattern.split("\\*", -1);
+            anchorStart = !pattern.startsWith("*");
+            anchorEnd = !pattern.endsWith("*");
+        }
+
+        @Override
+        public boolean test(@Nullable final String value) {
+            if (value == null) {
+                return false;
+            }
+
+            // no wildcards, so the whole value has to match
+            if (segments.length == 1) {
+                return value.equalsIgnoreCase(segments[0]);
+            }
+
+            final String first = segments[0];
+            final String last = segments[segments.length - 1];
+            if (anchorStart && !value.regionMatches(true, 0, first, 0, first.length())) {
+                return false;
+            }
+            int start = first.length();
+            int end = value.length();
+            if (anchorEnd) {
+                end -= last.length();
+                if (end < start || !value.regionMatches(true, end, last, 0, last.length())) {
+                    return false;
+                }
+            }
+
+            // find each middle segment in order after the previous one
+            for (int i = 1; i < segments.length - 1; i++) {
+                start = indexOfIgnoreCase(value, segments[i], start, end);
+                if (start < 0) {
+                    return false;
+                }
+                start += segments[i].length();
+            }
+            return true;
+        }
+
+        private static int indexOfIgnoreCase(@Nonnull final String value, @Nonnull final String segment,
+                                             final int start, final int end) {
+            for (int i = start; i + segment.length() <= end; i++) {
+                if (value.regionMatches(true, i, segment, 0, segment.length())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 }
@@ -0,0 +1,23 @@
+package org.ccci.idm.user.query;
+
+import org.ccci.idm.user.User;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An expression that matches either every user or no users. These are produced by {@link ExpressionOptimizer} when an
+ * expression is always or never satisfied.
+ */
+public enum ConstantExpression implements Expression {
+    TRUE, FALSE;
+
+    @Override
+    public boolean matches(@Nonnull final User user) {
+        return this == TRUE;
+    }
+
+    @Override
+    public Expression not() {
+        return this == TRUE ? FALSE : TRUE;
+    }
+}
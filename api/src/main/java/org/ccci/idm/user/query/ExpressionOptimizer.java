@@ -0,0 +1,221 @@
+package org.ccci.idm.user.query;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Rewrites expressions into a smaller equivalent form before they are translated into a backend specific query.
+ *
+ * <ul>
+ * <li>nested AND/OR expressions of the same type are flattened and duplicate terms are removed</li>
+ * <li>NOT is pushed down to the individual comparisons using De Morgan's laws</li>
+ * <li>EQ comparisons on the same attribute within an OR are grouped together, and terms implied by another term are
+ * removed</li>
+ * <li>expressions that can never (or will always) match are replaced with a {@link ConstantExpression}</li>
+ * </ul>
+ */
+public final class ExpressionOptimizer {
+    // attributes that only have a single value for a user, so they can't be equal to 2 different values at once
+    private static final Set<Attribute> SINGLE_VALUED = ImmutableSet.copyOf(
+            EnumSet.complementOf(EnumSet.of(Attribute.EMAIL_ALIAS, Attribute.GROUP)));
+
+    private ExpressionOptimizer() {
+    }
+
+    @Nonnull
+    public static Expression optimize(@Nonnull final Expression expression) {
+        if (expression instanceof BooleanExpression) {
+            return optimizeBoolean((BooleanExpression) expression);
+        } else if (expression instanceof NotExpression) {
+            final Expression component = ((NotExpression) expression).getComponent();
+            if (component instanceof ComparisonExpression) {
+                return expression;
+            }
+            return optimize(negate(component));
+        }
+        return expression;
+    }
+
+    @Nonnull
+    private static Expression negate(@Nonnull final Expression expression) {
+        if (expression instanceof BooleanExpression) {
+            final BooleanExpression bool = (BooleanExpression) expression;
+            final List<Expression> components = new ArrayList<>(bool.getComponents().size());
+            for (final Expression component : bool.getComponents()) {
+                components.add(negate(component));
+            }
+            return new BooleanExpression(bool.getType() == BooleanExpression.Type.AND ? BooleanExpression.Type.OR :
+                    BooleanExpression.Type.AND, components);
+        }
+        return expression.not();
+    }
+
+    @Nonnull
+    private static Expression optimizeBoolean(@Nonnull final BooleanExpression expression) {
+        final boolean and = expression.getType() == BooleanExpression.Type.AND;
+        final ConstantExpression identity = and ? ConstantExpression.TRUE : ConstantExpression.FALSE;
+        final ConstantExpression absorbing = and ? ConstantExpression.FALSE : ConstantExpression.TRUE;
+
+        // optimize & flatten all components, removing duplicates
+        final Set<Expression> components = new LinkedHashSet<>();
+        for (final Expression component : expression.getComponents()) {
+            final Expression optimized = optimize(component);
+            if (optimized == absorbing) {
+                return absorbing;
+            } else if (optimized == identity) {
+                continue;
+            } else if (optimized instanceof BooleanExpression &&
+                    ((BooleanExpression) optimized).getType() == expression.getType()) {
+                components.addAll(((BooleanExpression) optimized).getComponents());
+            } else {
+                components.add(optimized);
+            }
+        }
+
+        // x && !x is never true, x || !x is always true
+        for (final Expression component : components) {
+            if (component instanceof NotExpression &&
+                    components.contains(((NotExpression) component).getComponent())) {
+                return absorbing;
+            }
+        }
+
+        final List<Expression> list = new ArrayList<>(components);
+        final List<Expression> optimized = and ? simplifyAnd(list) : simplifyOr(list);
+        if (optimized == null) {
+            return absorbing;
+        } else if (optimized.isEmpty()) {
+            return identity;
+        } else if (optimized.size() == 1) {
+            return optimized.get(0);
+        }
+        return new BooleanExpression(expression.getType(), optimized);
+    }
+
+    /**
+     * @return the simplified components, or null if the components can never all match
+     */
+    @Nullable
+    private static List<Expression> simplifyAnd(@Nonnull final List<Expression> components) {
+        for (int i = 0; i < components.size(); i++) {
+            final ComparisonExpression a = valueComparison(components.get(i));
+            if (a == null || !SINGLE_VALUED.contains(a.getAttribute())) {
+                continue;
+            }
+            for (int j = i + 1; j < components.size(); j++) {
+                final ComparisonExpression b = valueComparison(components.get(j));
+                if (b != null && b.getAttribute() == a.getAttribute() && !compatible(a, b)) {
+                    return null;
+                }
+            }
+        }
+        return removeImplied(components, true);
+    }
+
+    @Nonnull
+    private static List<Expression> simplifyOr(@Nonnull final List<Expression> components) {
+        // group EQ comparisons for the same attribute together, in the position of the first one
+        final Map<Object, List<Expression>> groups = new LinkedHashMap<>();
+        for (final Expression component : removeImplied(components, false)) {
+            final ComparisonExpression comparison = valueComparison(component);
+            final Object key = comparison != null && comparison.getType() == ComparisonExpression.Type.EQ ?
+                    comparison.getAttribute() : new Object();
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(component);
+        }
+
+        final List<Expression> grouped = new ArrayList<>(components.size());
+        groups.values().forEach(grouped::addAll);
+        return grouped;
+    }
+
+    /**
+     * Remove comparisons that are redundant because of another comparison. For AND this is any term implied by another
+     * term, for OR this is any term that implies another term. Of equivalent terms only the first is kept.
+     */
+    @Nonnull
+    private static List<Expression> removeImplied(@Nonnull final List<Expression> components, final boolean and) {
+        final List<Expression> result = new ArrayList<>(components.size());
+        outer:
+        for (int i = 0; i < components.size(); i++) {
+            final ComparisonExpression a = valueComparison(components.get(i));
+            if (a != null) {
+                for (int j = 0; j < components.size(); j++) {
+                    final ComparisonExpression b = valueComparison(components.get(j));
+                    if (b == null || i == j) {
+                        continue;
+                    }
+
+                    final boolean redundant = and ? implies(b, a) : implies(a, b);
+                    final boolean equivalent = redundant && (and ? implies(a, b) : implies(b, a));
+                    if (redundant && (!equivalent || j < i)) {
+                        continue outer;
+                    }
+                }
+            }
+            result.add(components.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if every user matching comparison a also matches comparison b
+     */
+    private static boolean implies(@Nonnull final ComparisonExpression a, @Nonnull final ComparisonExpression b) {
+        if (a.getAttribute() != b.getAttribute() || a.getType() == ComparisonExpression.Type.LIKE) {
+            return false;
+        }
+
+        switch (b.getType()) {
+            case EQ:
+                return a.getType() == ComparisonExpression.Type.EQ && normalize(a).equals(normalize(b));
+            case SW:
+                return normalize(a).startsWith(normalize(b));
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if a single value could satisfy both comparisons
+     */
+    private static boolean compatible(@Nonnull final ComparisonExpression a, @Nonnull final ComparisonExpression b) {
+        if (a.getType() == ComparisonExpression.Type.LIKE || b.getType() == ComparisonExpression.Type.LIKE) {
+            return true;
+        }
+
+        final String valueA = normalize(a);
+        final String valueB = normalize(b);
+        if (a.getType() == ComparisonExpression.Type.EQ && b.getType() == ComparisonExpression.Type.EQ) {
+            return valueA.equals(valueB);
+        } else if (a.getType() == ComparisonExpression.Type.EQ) {
+            return valueA.startsWith(valueB);
+        } else if (b.getType() == ComparisonExpression.Type.EQ) {
+            return valueB.startsWith(valueA);
+        }
+        return valueA.startsWith(valueB) || valueB.startsWith(valueA);
+    }
+
+    @Nullable
+    private static ComparisonExpression valueComparison(@Nonnull final Expression expression) {
+        if (expression instanceof ComparisonExpression && ((ComparisonExpression) expression).getValue() != null) {
+            return (ComparisonExpression) expression;
+        }
+        return null;
+    }
+
+    @Nonnull
+    private static String normalize(@Nonnull final ComparisonExpression comparison) {
+        return Objects.requireNonNull(comparison.getValue()).toLowerCase(Locale.ROOT);
+    }
+}
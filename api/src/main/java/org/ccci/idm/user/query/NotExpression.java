@@ -3,6 +3,7 @@
 import org.ccci.idm.user.User;
 
 import javax.annotation.Nonnull;
+import java.util.function.Predicate;
 
 public class NotExpression implements Expression {
     private static final long serialVersionUID = -7321113440722414788L;
@@ -10,6 +11,8 @@ public class NotExpression implements Expression {
     @Nonnull
     private final Expression component;
 
+    private transient volatile Predicate<User> compiled;
+
     NotExpression(@Nonnull final Expression expression) {
         component = expression;
     }
@@ -21,11 +24,35 @@ public Expression getComponent() {
 
     @Override
     public boolean matches(@Nonnull final User user) {
-        return !component.matches(user);
+        return compile().test(user);
+    }
+
+    @Nonnull
+    @Override
+    public Predicate<User> compile() {
+        if (compiled == null) {
+            compiled = component.compile().negate();
+        }
+        return compiled;
     }
 
     @Override
     public Expression not() {
         return component;
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        return this == o || o instanceof NotExpression && component.equals(((NotExpression) o).component);
+    }
+
+    @Override
+    public int hashCode() {
+        return ~component.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "NOT(" + component + ")";
+    }
 }
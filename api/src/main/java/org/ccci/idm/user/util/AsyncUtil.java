@@ -0,0 +1,62 @@
+package org.ccci.idm.user.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class AsyncUtil {
+    /**
+     * Create an executor with a bounded number of daemon threads and a bounded work queue. Work submitted when the
+     * queue is full is rejected instead of queueing without limit.
+     *
+     * @param name      the name prefix for the threads of this executor
+     * @param threads   the maximum number of threads
+     * @param queueSize the maximum number of tasks waiting for a thread
+     * @return the new executor
+     */
+    @Nonnull
+    public static ExecutorService newBoundedExecutor(@Nonnull final String name, final int threads,
+                                                     final int queueSize) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Run the supplier on the specified executor. A rejected task completes the returned future exceptionally instead
+     * of throwing in the calling thread.
+     */
+    @Nonnull
+    public static <T> CompletableFuture<T> supplyAsync(@Nonnull final Supplier<T> supplier,
+                                                       @Nonnull final Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (final RejectedExecutionException e) {
+            final CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Run the task on the specified executor. A rejected task completes the returned future exceptionally instead of
+     * throwing in the calling thread.
+     */
+    @Nonnull
+    public static CompletableFuture<Void> runAsync(@Nonnull final Runnable task, @Nonnull final Executor executor) {
+        return supplyAsync(() -> {
+            task.run();
+            return null;
+        }, executor);
+    }
+}
@@ -0,0 +1,26 @@
+package org.ccci.idm.user.util;
+
+import org.ccci.idm.user.dao.exception.DaoException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Allocates the guids assigned to new users.
+ */
+public interface GuidAllocator {
+    /**
+     * @return a new guid
+     */
+    @Nonnull
+    String allocateGuid() throws DaoException;
+
+    /**
+     * Indicates if the guids returned by {@link GuidAllocator#allocateGuid()} have already been verified to not be in
+     * use by any existing user, allowing callers to skip checking the user store themselves.
+     *
+     * @return true if allocated guids are already verified as unique
+     */
+    default boolean isVerified() {
+        return false;
+    }
+}
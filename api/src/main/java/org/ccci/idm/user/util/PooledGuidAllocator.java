@@ -0,0 +1,164 @@
+package org.ccci.idm.user.util;
+
+import org.ccci.idm.user.dao.UserDao;
+import org.ccci.idm.user.dao.exception.DaoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Hands out guids from a pool of guids that have been verified against the user store in bulk, so allocating a guid
+ * doesn't require any round trips to the user store. The pool is refilled on the refill executor when it runs low,
+ * or on the calling thread when it is empty.
+ */
+public class PooledGuidAllocator implements GuidAllocator {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledGuidAllocator.class);
+
+    @Inject
+    @NotNull
+    private UserDao userDao;
+
+    @NotNull
+    private GuidAllocator generator = new RandomGuidAllocator();
+
+    @Nullable
+    private Executor refillExecutor;
+
+    private int poolSize = 100;
+    private int refillThreshold = 25;
+
+    private final Queue<String> pool = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() is O(n), so track the number of pooled guids separately
+    private final AtomicInteger available = new AtomicInteger(0);
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+    public void setUserDao(final UserDao dao) {
+        this.userDao = dao;
+    }
+
+    /**
+     * @param generator the {@link GuidAllocator} used to generate the candidate guids for the pool
+     */
+    public void setGenerator(@Nonnull final GuidAllocator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * @param executor the {@link Executor} the pool is refilled on in the background. When this isn't set the pool is
+     *                 only refilled on the calling thread once it is empty.
+     */
+    public void setRefillExecutor(@Nullable final Executor executor) {
+        this.refillExecutor = executor;
+    }
+
+    /**
+     * @param size the number of guids to verify and pool at a time
+     */
+    public void setPoolSize(final int size) {
+        this.poolSize = Math.max(size, 1);
+    }
+
+    /**
+     * @param threshold a background refill is started once the number of pooled guids drops to this threshold
+     */
+    public void setRefillThreshold(final int threshold) {
+        this.refillThreshold = threshold;
+    }
+
+    @Override
+    public boolean isVerified() {
+        return true;
+    }
+
+    @Nonnull
+    @Override
+    public String allocateGuid() throws DaoException {
+        final String guid = pool.poll();
+        if (guid != null) {
+            if (available.decrementAndGet() <= refillThreshold) {
+                scheduleRefill();
+            }
+            return guid;
+        }
+
+        // the pool is empty, so verify a new batch on the calling thread
+        final List<String> guids = generateVerifiedGuids(poolSize);
+        if (guids.isEmpty()) {
+            throw new DaoException("Unable to allocate a unique guid");
+        }
+        addToPool(guids.subList(1, guids.size()));
+        return guids.get(0);
+    }
+
+    private void scheduleRefill() {
+        final Executor executor = refillExecutor;
+        if (executor == null || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    addToPool(generateVerifiedGuids(poolSize - available.get()));
+                } catch (final RuntimeException e) {
+                    LOG.error("Error refilling the guid pool", e);
+                } finally {
+                    refilling.set(false);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            LOG.debug("Unable to schedule a refill of the guid pool", e);
+            refilling.set(false);
+        }
+    }
+
+    private void addToPool(@Nonnull final List<String> guids) {
+        pool.addAll(guids);
+        available.addAndGet(guids.size());
+    }
+
+    /**
+     * Generate the requested number of guids, excluding any guids that are already in use.
+     */
+    @Nonnull
+    private List<String> generateVerifiedGuids(final int count) throws DaoException {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+
+        final Set<String> candidates = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            candidates.add(generator.allocateGuid().toUpperCase(Locale.US));
+        }
+
+        // check all candidates with a couple of bulk searches
+        final Set<String> existing = new HashSet<>();
+        Stream.concat(userDao.findAllByRelayGuids(candidates, true).stream(),
+                userDao.findAllByTheKeyGuids(candidates, true).stream())
+                .flatMap(user -> Stream.of(user.getGuid(), user.getRelayGuid(), user.getTheKeyGuid()))
+                .filter(Objects::nonNull)
+                .map(guid -> guid.toUpperCase(Locale.US))
+                .forEach(existing::add);
+        candidates.removeAll(existing);
+        return new ArrayList<>(candidates);
+    }
+}
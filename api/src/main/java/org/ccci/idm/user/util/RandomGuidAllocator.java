@@ -0,0 +1,44 @@
+package org.ccci.idm.user.util;
+
+import javax.annotation.Nonnull;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Generates random guids without checking the user store. Each thread uses its own {@link SecureRandom} to avoid
+ * contending on the single shared instance used by {@link UUID#randomUUID()}.
+ */
+public class RandomGuidAllocator implements GuidAllocator {
+    private static final ThreadLocal<SecureRandom> RAND = ThreadLocal.withInitial(SecureRandom::new);
+
+    private boolean timeOrdered = false;
+
+    /**
+     * Generate time-ordered guids. These start with the current time in milliseconds (the same layout as a version 7
+     * UUID), so guids created around the same time are stored close together in the user store indexes.
+     *
+     * @param timeOrdered whether generated guids should be time-ordered
+     */
+    public void setTimeOrdered(final boolean timeOrdered) {
+        this.timeOrdered = timeOrdered;
+    }
+
+    @Nonnull
+    @Override
+    public String allocateGuid() {
+        final SecureRandom rand = RAND.get();
+        long msb = rand.nextLong();
+        long lsb = rand.nextLong();
+
+        // set the version and variant bits
+        if (timeOrdered) {
+            msb = (System.currentTimeMillis() << 16) | 0x7000L | (msb & 0x0FFFL);
+        } else {
+            msb = (msb & ~0xF000L) | 0x4000L;
+        }
+        lsb = (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+
+        return new UUID(msb, lsb).toString().toUpperCase(Locale.US);
+    }
+}
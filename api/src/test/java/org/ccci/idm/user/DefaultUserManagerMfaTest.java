@@ -37,6 +37,7 @@ public class DefaultUserManagerMfaTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
+        when(userDao.uncached()).thenReturn(userDao);
 
         userManager = new DefaultUserManager();
         userManager.setUserDao(userDao);
@@ -1,12 +1,39 @@
 package org.ccci.idm.user;
 
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
+import org.ccci.idm.user.DefaultUserManager.BulkAuditor;
+import org.ccci.idm.user.DefaultUserManager.UserManagerListener;
+import org.ccci.idm.user.dao.UserDao;
+import org.ccci.idm.user.exception.EmailAlreadyExistsException;
 import org.ccci.idm.user.exception.InvalidEmailUserException;
+import org.ccci.idm.user.exception.RelayGuidAlreadyExistsException;
+import org.ccci.idm.user.exception.UserNotFoundException;
+import org.ccci.idm.user.util.GuidAllocator;
+import org.ccci.idm.user.util.UserUtil;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import javax.annotation.Nonnull;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @RunWith(JUnitParamsRunner.class)
 public class DefaultUserManagerTest {
@@ -35,4 +62,258 @@ private static User newUser(@Nonnull final String email) {
         user.setEmail(email);
         return user;
     }
+
+    @Test
+    public void verifyUpdateUserLoadsOriginal() throws Exception {
+        final User user = TestUtil.newUser();
+        final User fresh = user.clone();
+        fresh.setFirstName("Fresh");
+        final UserDao dao = mockUserDao(user, true);
+        when(dao.findByTheKeyGuid(user.getTheKeyGuid(), true)).thenReturn(fresh);
+
+        // optimistic concurrency is disabled by default
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        manager.updateUser(user, User.Attr.NAME);
+        verify(dao).update(fresh, user, User.Attr.NAME);
+
+        // a listener requires the original user
+        final UserManagerListener listener = mock(UserManagerListener.class);
+        when(listener.requiresOriginalUser()).thenReturn(true);
+        manager.setOptimisticConcurrency(true);
+        manager.setListeners(ImmutableList.of(listener));
+        manager.updateUser(user, User.Attr.FLAGS);
+        verify(dao).update(fresh, user, User.Attr.FLAGS);
+        verify(listener).onPreUpdateUser(fresh, user, User.Attr.FLAGS);
+
+        // the dao can't detect concurrent updates
+        final UserDao dao2 = mockUserDao(user, false);
+        when(dao2.findByTheKeyGuid(user.getTheKeyGuid(), true)).thenReturn(fresh);
+        manager.setUserDao(dao2);
+        manager.setListeners(ImmutableList.of());
+        manager.updateUser(user, User.Attr.NAME);
+        verify(dao2).update(fresh, user, User.Attr.NAME);
+    }
+
+    @Test
+    public void verifyOptimisticUpdateUser() throws Exception {
+        final User user = TestUtil.newUser();
+        final UserDao dao = mockUserDao(user, true);
+        final UserManagerListener listener = mock(UserManagerListener.class);
+        when(listener.requiresOriginalUser()).thenReturn(false);
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        manager.setOptimisticConcurrency(true);
+        manager.setListeners(ImmutableList.of(listener));
+        manager.updateUser(user, User.Attr.NAME);
+
+        verify(dao, never()).findByTheKeyGuid(any(), anyBoolean());
+        verify(dao).update(user, User.Attr.NAME);
+        verify(listener).onPreUpdateUser(user, user, User.Attr.NAME);
+        verify(listener).onPostUpdateUser(user, user, User.Attr.NAME);
+    }
+
+    @Test
+    public void verifyCreateUserChecksConflicts() throws Exception {
+        final User user = TestUtil.newUser();
+        final String guid = user.getGuid();
+        final UserDao dao = mockUserDao(user, false);
+        when(dao.findConflicts(user)).thenReturn(EnumSet.of(UserDao.Identifier.GUID),
+                EnumSet.noneOf(UserDao.Identifier.class));
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        manager.createUser(user);
+
+        // a conflicting guid is regenerated instead of failing the create, initial conflicts are only looked up once
+        verify(dao, times(2)).findConflicts(user);
+        verify(dao, never()).findByEmail(any(), anyBoolean());
+        verify(dao, never()).findByRelayGuid(any(), anyBoolean());
+        verify(dao).save(user);
+        assertNotEquals(guid, user.getGuid());
+        assertEquals(user.getGuid(), user.getRelayGuid());
+    }
+
+    @Test
+    public void verifyCreateUserWithVerifiedGuidAllocator() throws Exception {
+        final User user = newUser(TestUtil.randomEmail());
+        final UserDao dao = mockUserDao(user, false);
+        final GuidAllocator allocator = mock(GuidAllocator.class);
+        when(allocator.allocateGuid()).thenReturn(TestUtil.guid());
+        when(allocator.isVerified()).thenReturn(true);
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        manager.setGuidAllocator(allocator);
+        manager.createUser(user);
+
+        // the allocated guid isn't checked again before saving the user
+        verify(dao, times(1)).findConflicts(user);
+        verify(allocator).allocateGuid();
+        verify(dao).save(user);
+        assertTrue(UserUtil.isValidGuid(user.getTheKeyGuid()));
+    }
+
+    @Test(expected = RelayGuidAlreadyExistsException.class)
+    public void verifyCreateUserUsesFindConflictsOverride() throws Exception {
+        final User user = TestUtil.newUser();
+        final UserDao dao = mockUserDao(user, false);
+        when(dao.findConflicts(user)).thenReturn(EnumSet.noneOf(UserDao.Identifier.class));
+
+        final DefaultUserManager manager = new DefaultUserManager() {
+            @Nonnull
+            @Override
+            protected Set<UserDao.Identifier> findConflicts(@Nonnull final User candidate) {
+                return EnumSet.of(UserDao.Identifier.RELAY_GUID);
+            }
+        };
+        manager.setUserDao(dao);
+        manager.createUser(user);
+    }
+
+    @Test(expected = EmailAlreadyExistsException.class)
+    public void verifyCreateUserEmailConflict() throws Exception {
+        final User user = TestUtil.newUser();
+        final UserDao dao = mockUserDao(user, false);
+        when(dao.findConflicts(user)).thenReturn(EnumSet.of(UserDao.Identifier.EMAIL));
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        manager.createUser(user);
+    }
+
+    @Test(expected = RelayGuidAlreadyExistsException.class)
+    public void verifyCreateUserRelayGuidConflict() throws Exception {
+        final User user = TestUtil.newUser();
+        final UserDao dao = mockUserDao(user, false);
+        when(dao.findConflicts(user)).thenReturn(EnumSet.of(UserDao.Identifier.RELAY_GUID));
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        manager.createUser(user);
+    }
+
+    @Test
+    public void verifyCreateUsers() throws Exception {
+        final User existing = TestUtil.newUser();
+        existing.setEmail("Existing@Example.com");
+        final User user1 = TestUtil.newUser();
+        final User user2 = TestUtil.newUser();
+        user2.setEmail("existing@example.com");
+        final User user3 = TestUtil.newUser();
+        user3.setEmail("invalid");
+        final User user4 = TestUtil.newUser();
+        user4.setEmail(user1.getEmail());
+        final User user5 = TestUtil.newUser();
+
+        final UserDao dao = mockUserDao(user1, false);
+        when(dao.findAllByEmails(any(), anyBoolean())).thenReturn(ImmutableList.of(existing));
+        final UserManagerListener listener = mock(UserManagerListener.class);
+        final BulkAuditor auditor = mock(BulkAuditor.class);
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        manager.setListeners(ImmutableList.of(listener));
+        manager.setBulkAuditor(auditor);
+        final List<BulkResult> results = manager.createUsers(Stream.of(user1, user2, user3, user4, user5),
+                new BulkOptions().batchSize(2).concurrency(2));
+
+        assertEquals(5, results.size());
+        assertSame(user1, results.get(0).getUser());
+        assertTrue(results.get(0).isSuccess());
+        assertThat(results.get(1).getError(), instanceOf(EmailAlreadyExistsException.class));
+        assertThat(results.get(2).getError(), instanceOf(InvalidEmailUserException.class));
+        assertThat(results.get(3).getError(), instanceOf(EmailAlreadyExistsException.class));
+        assertSame(user5, results.get(4).getUser());
+        assertTrue(results.get(4).isSuccess());
+
+        // only the successful users were saved, with the existence checks done per batch
+        verify(dao, times(3)).findAllByEmails(any(), anyBoolean());
+        verify(dao).save(user1);
+        verify(dao).save(user5);
+        verify(dao, times(2)).save(any());
+        verify(listener).onPostCreateUser(user1);
+        verify(listener).onPostCreateUser(user5);
+
+        // every record is audited, including the failures
+        for (final BulkResult result : results) {
+            verify(auditor).auditCreateUser(result);
+        }
+    }
+
+    @Test
+    public void verifyCreateUsersOnlyClaimsIdentifiersOfValidUsers() throws Exception {
+        final User existing = TestUtil.newUser();
+        final User user1 = TestUtil.newUser();
+        user1.setEmail(existing.getEmail());
+        final User user2 = TestUtil.newUser();
+        user2.setRelayGuid(user1.getRawRelayGuid());
+
+        final UserDao dao = mockUserDao(user1, false);
+        when(dao.findAllByEmails(any(), anyBoolean())).thenReturn(ImmutableList.of(existing));
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(dao);
+        final List<BulkResult> results = manager.createUsers(Stream.of(user1, user2), new BulkOptions());
+
+        // user1 is rejected for its email, so its relay guid is still available for user2
+        assertThat(results.get(0).getError(), instanceOf(EmailAlreadyExistsException.class));
+        assertTrue(results.get(1).isSuccess());
+        verify(dao).save(user2);
+    }
+
+    @Test
+    public void verifyUpdateUsers() throws Exception {
+        final User user1 = TestUtil.newUser();
+        final User user2 = TestUtil.newUser();
+        final User user3 = TestUtil.newUser();
+        final User user4 = TestUtil.newUser();
+        user4.setEmail("invalid");
+        final User fresh1 = user1.clone();
+        final User fresh2 = user2.clone();
+
+        final UserDao dao = mockUserDao(user1, false);
+        when(dao.findAllByTheKeyGuids(any(), anyBoolean())).thenReturn(ImmutableList.of(fresh2, fresh1));
+        final UserDao cachingDao = mock(UserDao.class);
+        when(cachingDao.session()).thenReturn(() -> {});
+        when(cachingDao.uncached()).thenReturn(dao);
+        final BulkAuditor auditor = mock(BulkAuditor.class);
+
+        final DefaultUserManager manager = new DefaultUserManager();
+        manager.setUserDao(cachingDao);
+        manager.setBulkAuditor(auditor);
+        final List<BulkResult> results = manager.updateUsers(Stream.of(
+                BulkUpdate.of(user1, User.Attr.HUMAN_RESOURCE, User.Attr.CRU_DESIGNATION),
+                BulkUpdate.of(user2, User.Attr.HUMAN_RESOURCE),
+                BulkUpdate.of(user3, User.Attr.HUMAN_RESOURCE),
+                BulkUpdate.of(user4, User.Attr.EMAIL)), new BulkOptions());
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertThat(results.get(2).getError(), instanceOf(UserNotFoundException.class));
+        assertThat(results.get(3).getError(), instanceOf(InvalidEmailUserException.class));
+
+        // the original users are loaded with a single uncached lookup
+        verify(dao, times(1)).findAllByTheKeyGuids(any(), anyBoolean());
+        verify(cachingDao, never()).findAllByTheKeyGuids(any(), anyBoolean());
+        verify(dao, never()).findByTheKeyGuid(any(), anyBoolean());
+        verify(cachingDao).update(fresh1, user1, User.Attr.HUMAN_RESOURCE, User.Attr.CRU_DESIGNATION);
+        verify(cachingDao).update(fresh2, user2, User.Attr.HUMAN_RESOURCE);
+
+        // every record is audited, including the failures
+        verify(auditor).auditUpdateUser(results.get(0), User.Attr.HUMAN_RESOURCE, User.Attr.CRU_DESIGNATION);
+        verify(auditor).auditUpdateUser(results.get(3), User.Attr.EMAIL);
+        verify(auditor, times(4)).auditUpdateUser(any(), any());
+    }
+
+    @Nonnull
+    private static UserDao mockUserDao(@Nonnull final User user, final boolean canDetectConcurrentUpdates) {
+        final UserDao dao = mock(UserDao.class);
+        when(dao.session()).thenReturn(() -> {});
+        when(dao.uncached()).thenReturn(dao);
+        when(dao.canDetectConcurrentUpdates(user)).thenReturn(canDetectConcurrentUpdates);
+        return dao;
+    }
 }
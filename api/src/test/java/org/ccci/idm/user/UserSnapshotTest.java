@@ -0,0 +1,89 @@
+package org.ccci.idm.user;
+
+import static org.ccci.idm.user.TestUtil.guid;
+import static org.ccci.idm.user.TestUtil.newUser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.joda.time.DateTime;
+import org.joda.time.MutableDateTime;
+import org.junit.Test;
+
+public class UserSnapshotTest {
+    @Test
+    public void verifyRoundTrip() {
+        final User user = newUser();
+        user.setPreferredName("Nick");
+        user.setEmailVerified(true);
+        user.setAllowPasswordChange(false);
+        user.setDeactivated(true);
+        user.setLoginDisabled(true);
+        user.setMfaBypassed(true);
+        user.setMfaIntruderLocked(true);
+        user.setMfaIntruderAttempts(3);
+        user.setMfaEncryptedSecret(guid());
+        user.setFacebookId("12345", 0.5);
+        user.setDomainsVisited(ImmutableList.of("example.com"));
+        user.setGroups(ImmutableList.of(mock(Group.class)));
+        user.setCruProxyAddresses(ImmutableList.of("alias@example.com"));
+        user.setGrMasterPersonId(guid());
+        user.setEmployeeId("000123456");
+        user.setSecurityAnswer("answer");
+        user.setImplMeta("key", "value");
+
+        final UserSnapshot snapshot = UserSnapshot.of(user);
+        assertTrue(snapshot.isDeactivated());
+        assertFalse(snapshot.isAllowPasswordChange());
+        assertEquals("Nick", snapshot.getPreferredName());
+        assertEquals("value", snapshot.getImplMeta("key", String.class));
+
+        final User copy = snapshot.toUser();
+        assertNotSame(user, copy);
+        assertEquals(user, copy);
+        assertTrue(copy.isMfaBypassed());
+        assertEquals(0.5, copy.getFacebookIdStrengthFor("12345"), 0);
+        assertTrue(copy.checkSecurityAnswer("answer"));
+        assertEquals("value", copy.getImplMeta("key", String.class));
+    }
+
+    @Test
+    public void verifySnapshotIsIsolatedFromUser() {
+        final User user = newUser();
+        final MutableDateTime loginTime = new MutableDateTime(1000);
+        user.setLoginTime(loginTime);
+        user.addDomainsVisited("example.com");
+
+        final UserSnapshot snapshot = UserSnapshot.of(user);
+        user.addDomainsVisited("example.org");
+        user.setLastName("Changed");
+        loginTime.setMillis(2000);
+
+        assertEquals(ImmutableSet.of("example.com"), snapshot.getDomainsVisited());
+        assertEquals(1000, snapshot.getLoginTime().getMillis());
+        assertFalse("Changed".equals(snapshot.getLastName()));
+
+        // changes to a user created from the snapshot don't affect the snapshot either
+        snapshot.toUser().addDomainsVisited("example.net");
+        assertEquals(ImmutableSet.of("example.com"), snapshot.getDomainsVisited());
+    }
+
+    @Test
+    public void verifySharedCollections() {
+        final User user = newUser();
+        user.setPasswordChangedTime(DateTime.now());
+        final ImmutableSet<Group> groups = ImmutableSet.of(mock(Group.class));
+        user.setGroups(groups);
+
+        final UserSnapshot snapshot = UserSnapshot.of(user);
+        assertSame(groups, snapshot.getGroups());
+        assertSame(user.getPasswordChangedTime(), snapshot.getPasswordChangedTime());
+        assertSame(ImmutableSet.of(), snapshot.getDomainsVisited());
+        assertSame(ImmutableSet.of(), snapshot.getCruProxyAddresses());
+    }
+}
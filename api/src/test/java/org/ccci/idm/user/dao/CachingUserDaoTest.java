@@ -0,0 +1,261 @@
+package org.ccci.idm.user.dao;
+
+import static java.util.stream.Collectors.toList;
+import static org.ccci.idm.user.TestUtil.newUser;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.ccci.idm.user.Group;
+import org.ccci.idm.user.User;
+import org.ccci.idm.user.query.Attribute;
+import org.ccci.idm.user.query.Expression;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+public class CachingUserDaoTest {
+    private UserDao dao;
+    private CachingUserDao cachingDao;
+    private User user;
+
+    @Before
+    public void setup() {
+        user = newUser();
+        user.setEmployeeId("000123456");
+        dao = mock(UserDao.class);
+        when(dao.findByTheKeyGuid(anyString(), anyBoolean())).thenReturn(user);
+        when(dao.findByEmail(anyString(), anyBoolean())).thenReturn(user);
+        cachingDao = new CachingUserDao(dao, 10, Duration.standardMinutes(1));
+    }
+
+    @Test
+    public void verifyFindByTheKeyGuidCachesUser() {
+        final User first = cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        final User second = cachingDao.findByTheKeyGuid(user.getTheKeyGuid().toLowerCase(Locale.US), false);
+
+        assertEquals(user, first);
+        assertEquals(user, second);
+        verify(dao, times(1)).findByTheKeyGuid(anyString(), anyBoolean());
+        assertEquals(1, cachingDao.getStats().hitCount());
+        assertEquals(1, cachingDao.getStats().missCount());
+    }
+
+    @Test
+    public void verifySecondaryIndexes() {
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+
+        assertEquals(user, cachingDao.findByEmail(user.getEmail(), false));
+        assertEquals(user, cachingDao.findByRelayGuid(user.getRelayGuid(), false));
+        assertEquals(user, cachingDao.findByEmployeeId(user.getEmployeeId(), false));
+        verify(dao, times(0)).findByEmail(anyString(), anyBoolean());
+        verify(dao, times(0)).findByRelayGuid(anyString(), anyBoolean());
+        verify(dao, times(0)).findByEmployeeId(anyString(), anyBoolean());
+        assertEquals(3, cachingDao.getStats().hitCount());
+    }
+
+    @Test
+    public void verifyCachedUsersAreNotShared() {
+        final User first = cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        assertNotNull(first);
+        assertNotSame(user, first);
+        first.setFirstName("Modified");
+
+        final User second = cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        assertNotNull(second);
+        assertNotSame(first, second);
+        assertEquals(user.getFirstName(), second.getFirstName());
+    }
+
+    @Test
+    public void verifyDeactivatedUsersAreNotReturnedForActiveLookups() {
+        user.setDeactivated(true);
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), true);
+
+        when(dao.findByTheKeyGuid(anyString(), anyBoolean())).thenReturn(null);
+        assertNull(cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false));
+        // deactivated users are not indexed by email
+        cachingDao.findByEmail(user.getEmail(), true);
+        verify(dao, times(1)).findByEmail(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void verifyUpdateInvalidatesUser() {
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        cachingDao.update(user, User.Attr.NAME);
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        cachingDao.findByEmail(user.getEmail(), false);
+
+        verify(dao, times(2)).findByTheKeyGuid(anyString(), anyBoolean());
+        verify(dao, times(0)).findByEmail(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void verifyLoadRacingAnUpdateIsNotCached() {
+        // the update completes while the stale copy of the user is being loaded
+        when(dao.findByTheKeyGuid(anyString(), anyBoolean())).thenAnswer(invocation -> {
+            final User stale = user.clone();
+            cachingDao.update(user, User.Attr.NAME);
+            return stale;
+        }).thenReturn(user);
+
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+
+        verify(dao, times(2)).findByTheKeyGuid(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void verifyUncachedBypassesCache() {
+        when(dao.uncached()).thenReturn(dao);
+
+        assertSame(dao, cachingDao.uncached());
+    }
+
+    @Test
+    public void verifyChangedEmailIsNotServedFromStaleIndex() {
+        final String oldEmail = user.getEmail();
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+
+        final User original = user.clone();
+        user.setEmail("changed." + oldEmail);
+        cachingDao.update(original, user, User.Attr.EMAIL);
+
+        when(dao.findByEmail(anyString(), anyBoolean())).thenReturn(null);
+        assertNull(cachingDao.findByEmail(oldEmail, false));
+    }
+
+    @Test
+    public void verifyEvictionsAreCounted() {
+        for (int i = 0; i < 20; i++) {
+            final User other = newUser();
+            when(dao.findByTheKeyGuid(other.getTheKeyGuid(), false)).thenReturn(other);
+            cachingDao.findByTheKeyGuid(other.getTheKeyGuid(), false);
+        }
+
+        assertEquals(20, cachingDao.getStats().missCount());
+        assertTrue(cachingDao.getStats().evictionCount() >= 10);
+    }
+
+    @Test
+    public void verifyFindAllByTheKeyGuidsOnlyLoadsMissingUsers() {
+        final User other = newUser();
+        when(dao.findAllByTheKeyGuids(anyCollection(), anyBoolean())).thenReturn(ImmutableList.of(other));
+        cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+
+        final List<User> users =
+                cachingDao.findAllByTheKeyGuids(ImmutableList.of(user.getTheKeyGuid(), other.getTheKeyGuid()), false);
+        assertThat(users, containsInAnyOrder(user, other));
+        verify(dao).findAllByTheKeyGuids(ImmutableSet.of(other.getTheKeyGuid()), false);
+
+        // the loaded user is now cached as well
+        assertEquals(other, cachingDao.findByEmail(other.getEmail(), false));
+        verify(dao, times(0)).findByEmail(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void verifyProjectedFindersAreNotCached() {
+        final User partial = new User();
+        partial.setTheKeyGuid(user.getTheKeyGuid());
+        partial.setEmail(user.getEmail());
+        when(dao.findByEmail(anyString(), anyBoolean(), any())).thenReturn(partial);
+
+        assertEquals(partial, cachingDao.findByEmail(user.getEmail(), false, User.Attr.EMAIL));
+        assertEquals(user, cachingDao.findByTheKeyGuid(user.getTheKeyGuid(), false));
+        verify(dao, times(1)).findByTheKeyGuid(anyString(), anyBoolean());
+
+        // a cached user satisfies a projection
+        assertEquals(user, cachingDao.findByEmail(user.getEmail(), false, User.Attr.EMAIL));
+        verify(dao, times(1)).findByEmail(anyString(), anyBoolean(), any());
+    }
+
+    @Test
+    public void verifyStreamUsersCachesResults() {
+        when(dao.streamUsers(any(), anyBoolean(), anyBoolean())).thenAnswer(i -> Stream.of(user));
+        cachingDao.setQueryCacheMaximumSize(10);
+
+        final Expression expression = Attribute.LAST_NAME.eq(user.getLastName());
+        assertEquals(ImmutableList.of(user), cachingDao.streamUsers(expression, false, true).collect(toList()));
+        // equivalent expressions share cached results
+        final Expression equivalent = expression.and(Attribute.LAST_NAME.eq(user.getLastName().toUpperCase()));
+        final List<User> cached = cachingDao.streamUsers(equivalent, false, true).collect(toList());
+        assertEquals(ImmutableList.of(user), cached);
+        assertNotSame(user, cached.get(0));
+        verify(dao, times(1)).streamUsers(any(), anyBoolean(), anyBoolean());
+
+        // unrestricted searches are never cached
+        cachingDao.streamUsers(expression, false, false).close();
+        cachingDao.streamUsers(expression, false, false).close();
+        verify(dao, times(3)).streamUsers(any(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void verifyWritesInvalidateAffectedResults() {
+        when(dao.streamUsers(any(), anyBoolean(), anyBoolean())).thenAnswer(i -> Stream.empty());
+        cachingDao.setQueryCacheMaximumSize(10);
+        final Expression expression = Attribute.FIRST_NAME.eq("Unique");
+        cachingDao.streamUsers(expression, false, true).close();
+
+        // changes to attributes that aren't searched, or that don't match the search, don't invalidate the results
+        final User other = newUser();
+        cachingDao.update(other, User.Attr.CRU_DESIGNATION);
+        cachingDao.update(other, User.Attr.NAME);
+        cachingDao.streamUsers(expression, false, true).close();
+        verify(dao, times(1)).streamUsers(any(), anyBoolean(), anyBoolean());
+
+        other.setFirstName("unique");
+        cachingDao.update(other, User.Attr.NAME);
+        cachingDao.streamUsers(expression, false, true).close();
+        verify(dao, times(2)).streamUsers(any(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    public void verifyGroupWritesInvalidateGroupResults() {
+        when(dao.streamUsers(any(), anyBoolean(), anyBoolean())).thenAnswer(i -> Stream.empty());
+        cachingDao.setQueryCacheMaximumSize(10);
+        final Group group = mock(Group.class);
+        final Expression expression = Attribute.GROUP.eq(group);
+        cachingDao.streamUsers(expression, false, true).close();
+
+        // the user isn't updated with the new group, but the cached results are still invalidated
+        cachingDao.addToGroup(newUser(), group);
+        cachingDao.streamUsers(expression, false, true).close();
+        verify(dao, times(2)).streamUsers(any(), anyBoolean(), anyBoolean());
+        assertEquals(0, cachingDao.getQueryStats().hitCount());
+        assertEquals(2, cachingDao.getQueryStats().missCount());
+        assertEquals(0, cachingDao.getStats().missCount());
+    }
+
+    @Test
+    public void verifyResultsRacingAWriteAreNotCached() {
+        final Expression expression = Attribute.FIRST_NAME.eq(user.getFirstName());
+        when(dao.streamUsers(any(), anyBoolean(), anyBoolean())).thenAnswer(i -> {
+            cachingDao.update(user, User.Attr.NAME);
+            return Stream.of(user);
+        });
+        cachingDao.setQueryCacheMaximumSize(10);
+
+        cachingDao.streamUsers(expression, false, true).close();
+        cachingDao.streamUsers(expression, false, true).close();
+        verify(dao, times(2)).streamUsers(any(), anyBoolean(), anyBoolean());
+    }
+}
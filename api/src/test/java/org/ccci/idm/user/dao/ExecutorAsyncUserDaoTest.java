@@ -0,0 +1,70 @@
+package org.ccci.idm.user.dao;
+
+import static org.ccci.idm.user.TestUtil.newUser;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.ccci.idm.user.User;
+import org.ccci.idm.user.dao.exception.DaoException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ExecutorAsyncUserDaoTest {
+    private UserDao dao;
+    private User user;
+
+    @Before
+    public void setup() {
+        user = newUser();
+        dao = mock(UserDao.class);
+        when(dao.findByTheKeyGuid(user.getTheKeyGuid(), false)).thenReturn(user);
+    }
+
+    @Test
+    public void verifyFindCompletesWithUser() throws Exception {
+        final AsyncUserDao asyncDao = new ExecutorAsyncUserDao(dao, MoreExecutors.directExecutor());
+        assertEquals(user, asyncDao.findByTheKeyGuid(user.getTheKeyGuid(), false).get());
+    }
+
+    @Test
+    public void verifyDaoExceptionCompletesExceptionally() throws Exception {
+        doThrow(new DaoException("failure")).when(dao).save(any(User.class));
+        final AsyncUserDao asyncDao = new ExecutorAsyncUserDao(dao, MoreExecutors.directExecutor());
+
+        final CompletableFuture<Void> future = asyncDao.save(user);
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("save should have failed");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(DaoException.class));
+        }
+    }
+
+    @Test
+    public void verifyRejectedExecutionCompletesExceptionally() throws Exception {
+        final AsyncUserDao asyncDao = new ExecutorAsyncUserDao(dao, command -> {
+            throw new RejectedExecutionException();
+        });
+
+        final CompletableFuture<User> future = asyncDao.findByTheKeyGuid(user.getTheKeyGuid(), false);
+        try {
+            future.get();
+            fail("the executor rejected the lookup");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.ccci.idm.user.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import org.ccci.idm.user.Group;
+import org.ccci.idm.user.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.Predicate;
+
+public class ExpressionCompileTest {
+    private User user;
+
+    @Before
+    public void setup() {
+        user = new User();
+        user.setEmail("John.Doe@Example.com");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setCruProxyAddresses(ImmutableList.of("jdoe@example.com", "john@example.org"));
+    }
+
+    @Test
+    public void testEq() {
+        assertMatches(true, Attribute.EMAIL.eq("john.doe@example.com"));
+        assertMatches(false, Attribute.EMAIL.eq("john.doe@example"));
+        assertMatches(false, Attribute.US_EMPLOYEE_ID.eq("123456789"));
+        assertMatches(true, Attribute.EMAIL_ALIAS.eq("JOHN@example.org"));
+    }
+
+    @Test
+    public void testSw() {
+        assertMatches(true, Attribute.EMAIL.sw("john.d"));
+        assertMatches(true, Attribute.EMAIL.sw(""));
+        assertMatches(false, Attribute.EMAIL.sw("doe"));
+        assertMatches(false, Attribute.US_DESIGNATION.sw("1"));
+        assertMatches(true, Attribute.EMAIL_ALIAS.sw("JD"));
+    }
+
+    @Test
+    public void testLike() {
+        assertMatches(true, Attribute.EMAIL.like("john.doe@example.com"));
+        assertMatches(true, Attribute.EMAIL.like("JOHN*"));
+        assertMatches(true, Attribute.EMAIL.like("*.COM"));
+        assertMatches(true, Attribute.EMAIL.like("*doe*"));
+        assertMatches(true, Attribute.EMAIL.like("j*d*@*.com"));
+        assertMatches(true, Attribute.EMAIL.like("*"));
+        assertMatches(false, Attribute.EMAIL.like("john"));
+        assertMatches(false, Attribute.EMAIL.like("*doe"));
+        assertMatches(false, Attribute.EMAIL.like("j*m*x*"));
+        assertMatches(false, Attribute.FIRST_NAME.like("john*n"));
+        assertMatches(false, Attribute.US_EMPLOYEE_ID.like("*"));
+        assertMatches(true, Attribute.EMAIL_ALIAS.like("*@example.org"));
+    }
+
+    @Test
+    public void testGroup() {
+        final Group group = mock(Group.class);
+        assertMatches(false, Attribute.GROUP.eq(group));
+        user.setGroups(ImmutableList.of(group));
+        assertMatches(true, Attribute.GROUP.eq(group));
+    }
+
+    @Test
+    public void testBooleanAndNot() {
+        final Expression first = Attribute.FIRST_NAME.eq("john");
+        final Expression last = Attribute.LAST_NAME.eq("smith");
+
+        assertMatches(false, first.and(last));
+        assertMatches(true, first.or(last));
+        assertMatches(true, first.and(last.not()));
+        assertMatches(false, first.not().or(last));
+        assertMatches(true, first.and(last.or(Attribute.EMAIL.sw("john"))));
+    }
+
+    @Test
+    public void testCompiledPredicateIsReused() {
+        final Expression expression = Attribute.FIRST_NAME.eq("john").and(Attribute.LAST_NAME.eq("doe"));
+        assertSame(expression.compile(), expression.compile());
+    }
+
+    private void assertMatches(final boolean expected, final Expression expression) {
+        final Predicate<User> predicate = expression.compile();
+        assertEquals(expected, predicate.test(user));
+        assertEquals(expected, expression.matches(user));
+    }
+}
@@ -0,0 +1,78 @@
+package org.ccci.idm.user.query;
+
+import static org.ccci.idm.user.query.Attribute.EMAIL;
+import static org.ccci.idm.user.query.Attribute.EMAIL_ALIAS;
+import static org.ccci.idm.user.query.Attribute.FIRST_NAME;
+import static org.ccci.idm.user.query.Attribute.LAST_NAME;
+import static org.ccci.idm.user.query.ExpressionOptimizer.optimize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ExpressionOptimizerTest {
+    private static final Expression FIRST = FIRST_NAME.eq("John");
+    private static final Expression LAST = LAST_NAME.eq("Doe");
+    private static final Expression EMAIL1 = EMAIL.eq("john@example.com");
+
+    @Test
+    public void testComparisonIsUnchanged() {
+        assertSame(FIRST, optimize(FIRST));
+        assertSame(ConstantExpression.TRUE, optimize(ConstantExpression.TRUE));
+    }
+
+    @Test
+    public void testFlattenAndDeduplicate() {
+        assertEquals(FIRST.and(LAST, EMAIL1), optimize(FIRST.and(LAST.and(EMAIL1))));
+        assertEquals(FIRST.or(LAST, EMAIL1), optimize(FIRST.or(LAST.or(EMAIL1, FIRST))));
+        assertEquals(FIRST.and(LAST), optimize(FIRST.and(LAST, FIRST, LAST)));
+        assertEquals(FIRST, optimize(FIRST.or(FIRST)));
+    }
+
+    @Test
+    public void testPushDownNot() {
+        assertEquals(FIRST.not().or(LAST.not()), optimize(FIRST.and(LAST).not()));
+        assertEquals(FIRST.not().and(LAST), optimize(FIRST.or(LAST.not()).not()));
+        assertEquals(FIRST.and(LAST), optimize(FIRST.and(LAST).not().not()));
+    }
+
+    @Test
+    public void testGroupOrOfEquals() {
+        final Expression first2 = FIRST_NAME.eq("Jane");
+        assertEquals(FIRST.or(first2, LAST), optimize(FIRST.or(LAST, first2)));
+        assertEquals(FIRST.or(LAST), optimize(FIRST.or(LAST, FIRST_NAME.eq("JOHN"))));
+    }
+
+    @Test
+    public void testRemoveImpliedTerms() {
+        final Expression sw = FIRST_NAME.sw("jo");
+        assertEquals(sw, optimize(FIRST.or(sw)));
+        assertEquals(sw.or(LAST), optimize(FIRST_NAME.sw("john").or(sw, LAST)));
+        assertEquals(FIRST, optimize(sw.and(FIRST)));
+        assertEquals(FIRST_NAME.sw("john").and(LAST), optimize(sw.and(FIRST_NAME.sw("john"), LAST)));
+    }
+
+    @Test
+    public void testContradictions() {
+        assertSame(ConstantExpression.FALSE, optimize(FIRST.and(FIRST_NAME.eq("Jane"))));
+        assertSame(ConstantExpression.FALSE, optimize(FIRST.and(FIRST_NAME.sw("ja"))));
+        assertSame(ConstantExpression.FALSE, optimize(FIRST_NAME.sw("jo").and(FIRST_NAME.sw("ja"))));
+        assertSame(ConstantExpression.FALSE, optimize(FIRST.and(LAST, FIRST.not())));
+        assertSame(ConstantExpression.FALSE, optimize(LAST.and(FIRST.or(LAST).not())));
+        assertSame(ConstantExpression.TRUE, optimize(FIRST.or(LAST, FIRST.not())));
+
+        // multi-valued attributes can match multiple values at once
+        final Expression aliases = EMAIL_ALIAS.eq("a@example.com").and(EMAIL_ALIAS.eq("b@example.com"));
+        assertEquals(aliases, optimize(aliases));
+    }
+
+    @Test
+    public void testConstantsAreSimplified() {
+        assertEquals(FIRST, optimize(FIRST.and(ConstantExpression.TRUE)));
+        assertSame(ConstantExpression.FALSE, optimize(FIRST.and(ConstantExpression.FALSE)));
+        assertEquals(FIRST, optimize(FIRST.or(ConstantExpression.FALSE)));
+        assertSame(ConstantExpression.TRUE, optimize(FIRST.or(ConstantExpression.TRUE)));
+        assertSame(ConstantExpression.TRUE, optimize(ConstantExpression.FALSE.not()));
+        assertSame(ConstantExpression.FALSE, optimize(FIRST.and(FIRST_NAME.eq("Jane")).or(LAST.and(LAST.not()))));
+    }
+}
@@ -0,0 +1,98 @@
+package org.ccci.idm.user.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import org.ccci.idm.user.User;
+import org.ccci.idm.user.dao.UserDao;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PooledGuidAllocatorTest {
+    private UserDao dao;
+    private PooledGuidAllocator allocator;
+
+    @Before
+    public void setup() {
+        dao = mock(UserDao.class);
+        allocator = new PooledGuidAllocator();
+        allocator.setUserDao(dao);
+        allocator.setPoolSize(10);
+        allocator.setRefillThreshold(2);
+    }
+
+    @Test
+    public void verifyAllocateFromPool() {
+        final Set<String> guids = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            final String guid = allocator.allocateGuid();
+            assertTrue(UserUtil.isValidGuid(guid));
+            guids.add(guid);
+        }
+        assertEquals(10, guids.size());
+
+        // a single pool of guids was verified in bulk
+        verify(dao, times(1)).findAllByRelayGuids(anyCollection(), anyBoolean());
+        verify(dao, times(1)).findAllByTheKeyGuids(anyCollection(), anyBoolean());
+
+        // the pool is refilled once it's empty
+        allocator.allocateGuid();
+        verify(dao, times(2)).findAllByRelayGuids(anyCollection(), anyBoolean());
+    }
+
+    @Test
+    public void verifyExistingGuidsAreSkipped() {
+        final List<String> candidates = new ArrayList<>();
+        final RandomGuidAllocator generator = new RandomGuidAllocator();
+        for (int i = 0; i < 10; i++) {
+            candidates.add(generator.allocateGuid());
+        }
+        allocator.setGenerator(() -> candidates.remove(0));
+
+        final User existing = new User();
+        existing.setRelayGuid(candidates.get(0).toLowerCase());
+        when(dao.findAllByRelayGuids(anyCollection(), anyBoolean())).thenReturn(ImmutableList.of(existing));
+
+        final String first = candidates.get(0);
+        final String second = candidates.get(1);
+        final String guid = allocator.allocateGuid();
+        assertNotEquals(first, guid);
+        assertEquals(second, guid);
+    }
+
+    @Test
+    public void verifyBackgroundRefill() {
+        final List<Runnable> tasks = new ArrayList<>();
+        allocator.setRefillExecutor(tasks::add);
+
+        // drain the pool down to the refill threshold
+        for (int i = 0; i < 8; i++) {
+            allocator.allocateGuid();
+        }
+        assertEquals(1, tasks.size());
+
+        // only a single refill is scheduled at a time
+        allocator.allocateGuid();
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        verify(dao, times(2)).findAllByRelayGuids(anyCollection(), anyBoolean());
+        for (int i = 0; i < 9; i++) {
+            allocator.allocateGuid();
+        }
+        verify(dao, times(2)).findAllByRelayGuids(anyCollection(), anyBoolean());
+    }
+}
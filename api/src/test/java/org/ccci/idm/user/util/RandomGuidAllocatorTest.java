@@ -0,0 +1,50 @@
+package org.ccci.idm.user.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.UUID;
+
+public class RandomGuidAllocatorTest {
+    @Test
+    public void verifyRandomGuids() {
+        final RandomGuidAllocator allocator = new RandomGuidAllocator();
+        for (int i = 0; i < 100; i++) {
+            final String guid = allocator.allocateGuid();
+            assertTrue(UserUtil.isValidGuid(guid));
+            assertEquals(guid.toUpperCase(Locale.US), guid);
+
+            final UUID uuid = UUID.fromString(guid);
+            assertEquals(4, uuid.version());
+            assertEquals(2, uuid.variant());
+        }
+    }
+
+    @Test
+    public void verifyTimeOrderedGuids() {
+        final RandomGuidAllocator allocator = new RandomGuidAllocator();
+        allocator.setTimeOrdered(true);
+
+        final long start = System.currentTimeMillis();
+        String previous = null;
+        for (int i = 0; i < 100; i++) {
+            final String guid = allocator.allocateGuid();
+            assertTrue(UserUtil.isValidGuid(guid));
+
+            final UUID uuid = UUID.fromString(guid);
+            assertEquals(7, uuid.version());
+            assertEquals(2, uuid.variant());
+            final long timestamp = uuid.getMostSignificantBits() >>> 16;
+            assertTrue(timestamp >= start && timestamp <= System.currentTimeMillis());
+
+            // guids from different milliseconds sort by creation time
+            if (previous != null && timestamp > UUID.fromString(previous).getMostSignificantBits() >>> 16) {
+                assertTrue(guid.compareTo(previous) > 0);
+            }
+            previous = guid;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.ccci.idm.user.inspektr.spi;
+
+import static org.ccci.idm.user.Constants.AUDIT_ACTION_CREATE_USER;
+import static org.ccci.idm.user.Constants.AUDIT_ACTION_UPDATE_USER;
+
+import org.apereo.inspektr.audit.AuditActionContext;
+import org.apereo.inspektr.audit.AuditTrailManager;
+import org.apereo.inspektr.common.spi.PrincipalResolver;
+import org.apereo.inspektr.common.web.ClientInfo;
+import org.apereo.inspektr.common.web.ClientInfoHolder;
+import org.ccci.idm.user.BulkResult;
+import org.ccci.idm.user.DefaultUserManager.BulkAuditor;
+import org.ccci.idm.user.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.validation.constraints.NotNull;
+import java.util.Date;
+
+/**
+ * {@link BulkAuditor} that records an inspektr audit entry for every record of a bulk operation, using the same actions
+ * and resource formats as the audited single user methods of the {@link org.ccci.idm.user.DefaultUserManager}.
+ */
+public class InspektrBulkAuditor implements BulkAuditor {
+    @Inject
+    @NotNull
+    private AuditTrailManager auditTrailManager;
+
+    @Inject
+    @NotNull
+    private PrincipalResolver principalResolver;
+
+    @NotNull
+    private String applicationCode;
+
+    @NotNull
+    private String successSuffix = "_SUCCESS";
+    @NotNull
+    private String failureSuffix = "_FAILED";
+
+    private final UserAuditResourceResolver createUserResourceResolver = new UserAuditResourceResolver();
+    private final UpdateUserAuditResourceResolver updateUserResourceResolver = new UpdateUserAuditResourceResolver();
+
+    public void setAuditTrailManager(@Nonnull final AuditTrailManager manager) {
+        this.auditTrailManager = manager;
+    }
+
+    public void setPrincipalResolver(@Nonnull final PrincipalResolver resolver) {
+        this.principalResolver = resolver;
+    }
+
+    /**
+     * @param code the application code recorded with every audit entry, this should match the code used by the audit
+     *             aspect.
+     */
+    public void setApplicationCode(@Nonnull final String code) {
+        this.applicationCode = code;
+    }
+
+    /**
+     * @param suffix the suffix appended to the action of successful records, this should match the suffix used by the
+     *               action resolver of the audit aspect.
+     */
+    public void setSuccessSuffix(@Nonnull final String suffix) {
+        this.successSuffix = suffix;
+    }
+
+    /**
+     * @param suffix the suffix appended to the action of failed records, this should match the suffix used by the
+     *               action resolver of the audit aspect.
+     */
+    public void setFailureSuffix(@Nonnull final String suffix) {
+        this.failureSuffix = suffix;
+    }
+
+    @Override
+    public void auditCreateUser(@Nonnull final BulkResult result) {
+        record(AUDIT_ACTION_CREATE_USER, result, createUserResourceResolver.createResource(new Object[]{
+                result.getUser()}));
+    }
+
+    @Override
+    public void auditUpdateUser(@Nonnull final BulkResult result, @Nonnull final User.Attr... attrs) {
+        record(AUDIT_ACTION_UPDATE_USER, result, updateUserResourceResolver.createResource(new Object[]{
+                result.getUser(), attrs}));
+    }
+
+    private void record(@Nonnull final String action, @Nonnull final BulkResult result,
+                        @Nullable final String[] resources) {
+        if (resources == null) {
+            return;
+        }
+
+        final String principal = principalResolver.resolve();
+        final String actionPerformed = action + (result.isSuccess() ? successSuffix : failureSuffix);
+        final ClientInfo clientInfo = ClientInfoHolder.getClientInfo();
+        final Date now = new Date();
+        for (final String resource : resources) {
+            auditTrailManager.record(new AuditActionContext(principal, resource, actionPerformed, applicationCode, now,
+                    clientInfo != null ? clientInfo.getClientIpAddress() : null,
+                    clientInfo != null ? clientInfo.getServerIpAddress() : null));
+        }
+    }
+}
@@ -7,7 +7,6 @@
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -19,13 +18,15 @@ public final class Dn implements Comparable<Dn>, Serializable {
 
     @Nonnull
     private final List<Component> components;
+    private final transient int hash;
 
     public Dn(@Nonnull final Component... components) {
-        this.components = ImmutableList.copyOf(components);
+        this(ImmutableList.copyOf(components));
     }
 
     public Dn(@Nonnull final List<Component> components) {
         this.components = ImmutableList.copyOf(components);
+        hash = this.components.hashCode();
     }
 
     @Nonnull
@@ -47,8 +48,16 @@ public final boolean isDescendantOf(@Nonnull final Dn ancestor) {
      * @return true if the DN represented by this object is a descendant of or equal to the specified DN.
      */
     public final boolean isDescendantOfOrEqualTo(@Nonnull final Dn ancestor) {
-        return ancestor.components.size() <= components.size() &&
-                ancestor.components.equals(components.subList(0, ancestor.components.size()));
+        return ancestor.components.size() <= components.size() && hasPrefix(ancestor.components);
+    }
+
+    private boolean hasPrefix(@Nonnull final List<Component> prefix) {
+        for (int i = prefix.size() - 1; i >= 0; i--) {
+            if (!components.get(i).equals(prefix.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public final boolean isAncestorOf(@Nonnull final Dn descendant) {
@@ -102,12 +111,19 @@ public int compareTo(@Nonnull final Dn o) {
     @Override
     public boolean equals(final Object o) {
         if (this == o) { return true; }
-        return o != null && getClass().equals(o.getClass()) && components.equals(((Dn) o).components);
+        if (o == null || !getClass().equals(o.getClass())) { return false; }
+        final Dn dn = (Dn) o;
+        return hash == dn.hash && components.size() == dn.components.size() && hasPrefix(dn.components);
     }
 
     @Override
     public int hashCode() {
-        return components.hashCode();
+        return hash;
+    }
+
+    private Object readResolve() {
+        // recompute the transient hash
+        return new Dn(components);
     }
 
     @Override
@@ -124,16 +140,26 @@ public static final class Component implements Comparable<Component>, Serializab
         @Nonnull
         public final String value;
 
+        // lower-cased forms used for case-insensitive comparisons
+        @Nonnull
+        private final transient String normalizedType;
+        @Nonnull
+        private final transient String normalizedValue;
+        private final transient int hash;
+
         public Component(@Nonnull final String type, @Nonnull final String value) {
             this.type = type;
             this.value = value;
+            normalizedType = type.toLowerCase(Locale.US);
+            normalizedValue = value.toLowerCase(Locale.US);
+            hash = 31 * (31 + normalizedType.hashCode()) + normalizedValue.hashCode();
         }
 
         @Override
         public int compareTo(@Nonnull final Component o) {
-            int resp = value.compareToIgnoreCase(o.value);
+            int resp = normalizedValue.compareTo(o.normalizedValue);
             if (resp == 0) {
-                resp = type.compareToIgnoreCase(o.type);
+                resp = normalizedType.compareTo(o.normalizedType);
             }
             return resp;
         }
@@ -143,12 +169,18 @@ public boolean equals(final Object o) {
             if (this == o) { return true; }
             if (!(o instanceof Component)) { return false; }
             final Component component = (Component) o;
-            return type.equalsIgnoreCase(component.type) && value.equalsIgnoreCase(component.value);
+            return hash == component.hash && normalizedType.equals(component.normalizedType) &&
+                    normalizedValue.equals(component.normalizedValue);
         }
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(new String[]{type.toLowerCase(Locale.US), value.toLowerCase(Locale.US)});
+            return hash;
+        }
+
+        private Object readResolve() {
+            // recompute the transient normalized forms
+            return new Component(type, value);
         }
 
         @Override
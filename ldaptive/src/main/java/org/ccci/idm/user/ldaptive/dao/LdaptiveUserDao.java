@@ -10,8 +10,8 @@
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_GUID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_LASTNAME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MEMBER;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MODIFY_TIMESTAMP;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_OBJECTCLASS;
-import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PASSWORDCHANGEDTIME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_RELAY_GUID;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_SECURITY_EQUALS;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_THEKEY_GUID;
@@ -19,22 +19,29 @@
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_DEACTIVATED_PREFIX;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_OBJECTCLASS_GROUP_OF_NAMES;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_OBJECTCLASS_PERSON;
+import static org.ccci.idm.user.ldaptive.dao.mapper.AbstractUserLdapEntryMapper.META_MODIFY_TIMESTAMP;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.SearchQuery;
 import org.ccci.idm.user.User;
+import org.ccci.idm.user.UserSnapshot;
+import org.ccci.idm.user.dao.exception.ConcurrentUpdateException;
 import org.ccci.idm.user.dao.exception.DaoException;
 import org.ccci.idm.user.dao.exception.ExceededMaximumAllowedResultsException;
 import org.ccci.idm.user.dao.exception.InterruptedDaoException;
 import org.ccci.idm.user.dao.ldap.AbstractLdapUserDao;
 import org.ccci.idm.user.ldaptive.Dn;
 import org.ccci.idm.user.ldaptive.LdapGroup;
+import org.ccci.idm.user.ldaptive.dao.control.AssertionControl;
 import org.ccci.idm.user.ldaptive.dao.exception.LdaptiveDaoException;
 import org.ccci.idm.user.ldaptive.dao.filter.AndFilter;
 import org.ccci.idm.user.ldaptive.dao.filter.BaseFilter;
@@ -45,9 +52,12 @@
 import org.ccci.idm.user.ldaptive.dao.filter.PresentFilter;
 import org.ccci.idm.user.ldaptive.dao.util.DnUtils;
 import org.ccci.idm.user.ldaptive.dao.util.LdapUtils;
+import org.ccci.idm.user.query.Attribute;
 import org.ccci.idm.user.query.BooleanExpression;
 import org.ccci.idm.user.query.ComparisonExpression;
+import org.ccci.idm.user.query.ConstantExpression;
 import org.ccci.idm.user.query.Expression;
+import org.ccci.idm.user.query.ExpressionOptimizer;
 import org.ccci.idm.user.query.NotExpression;
 import org.jetbrains.annotations.Contract;
 import org.ldaptive.AddOperation;
@@ -70,6 +80,7 @@
 import org.ldaptive.SearchResult;
 import org.ldaptive.beans.LdapEntryMapper;
 import org.ldaptive.control.PagedResultsControl;
+import org.ldaptive.control.RequestControl;
 import org.ldaptive.control.ResponseControl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,13 +93,19 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -97,12 +114,19 @@ public class LdaptiveUserDao extends AbstractLdapUserDao {
     private static final Logger LOG = LoggerFactory.getLogger(LdaptiveUserDao.class);
 
     // common LDAP search filters
+    private static final BaseFilter FILTER_ANY = new PresentFilter(LDAP_ATTR_OBJECTCLASS);
+
+    // the change sequence of the entry a user was loaded from, used to detect concurrent updates
+    private static final String META_CHANGE_SEQUENCE = "LDAPTIVE_CHANGE_SEQUENCE";
     private static final BaseFilter FILTER_PERSON = new EqualsFilter(LDAP_ATTR_OBJECTCLASS, LDAP_OBJECTCLASS_PERSON);
     private static final BaseFilter FILTER_GROUP =
             new EqualsFilter(LDAP_ATTR_OBJECTCLASS, LDAP_OBJECTCLASS_GROUP_OF_NAMES);
     private static final BaseFilter FILTER_DEACTIVATED = new LikeFilter(LDAP_ATTR_CN, LDAP_DEACTIVATED_PREFIX + "*");
     private static final BaseFilter FILTER_NOT_DEACTIVATED = FILTER_DEACTIVATED.not();
 
+    // each identifier should match at most a single existing user, anything more indicates duplicates in the directory
+    private static final int CONFLICTS_SEARCH_LIMIT = 10;
+
     @NotNull
     protected ConnectionFactory connectionFactory;
 
@@ -116,6 +140,30 @@ public class LdaptiveUserDao extends AbstractLdapUserDao {
 
     private int maxPageSize = 1000;
 
+    private int maxBatchSize = 100;
+
+    @Nonnull
+    private List<String> parallelScanBaseDns = ImmutableList.of();
+    @Nonnull
+    private List<String> parallelScanCnPrefixes = ImmutableList.of();
+
+    private int prefetchPages = 0;
+    private int prefetchMaxEntries = 10000;
+    @Nullable
+    private volatile ExecutorService prefetchExecutor = null;
+
+    @Nullable
+    private ExecutorService decodeExecutor = null;
+    private boolean decodeOrdered = true;
+    private int decodeBatchSize = 100;
+    private int decodeMaxInFlight = 16;
+
+    private boolean assertUnmodified = false;
+    @Nullable
+    private String changeSequenceAttribute = null;
+
+    private final ThreadLocal<PinnedConnection> session = new ThreadLocal<>();
+
     public void setConnectionFactory(final ConnectionFactory factory) {
         this.connectionFactory = factory;
     }
@@ -140,6 +188,129 @@ public void setMaxPageSize(final int size) {
         this.maxPageSize = size;
     }
 
+    /**
+     * @param size the maximum number of values to combine into a single search filter for the bulk finders
+     */
+    public void setMaxBatchSize(final int size) {
+        maxBatchSize = size;
+    }
+
+    /**
+     * Configure disjoint sub-trees of the baseSearchDn that are scanned as separate partitions for full scans, i.e.
+     * streamUsers searches that don't restrict the maximum number of results. Every user needs to be located in exactly
+     * one of these sub-trees.
+     *
+     * @param dns the base DNs of the partitions, an empty list disables partitioning by DN
+     */
+    public void setParallelScanBaseDns(@Nullable final Collection<String> dns) {
+        parallelScanBaseDns = dns != null ? ImmutableList.copyOf(dns) : ImmutableList.of();
+    }
+
+    /**
+     * Configure cn prefixes that are scanned as separate partitions for full scans, i.e. streamUsers searches that
+     * don't restrict the maximum number of results. Entries that don't match any prefix are scanned as an additional
+     * partition. Prefixes shouldn't overlap (e.g. "a" and "ab"), otherwise
+     * users will be returned multiple times.
+     *
+     * @param prefixes the cn prefixes of the partitions, an empty list disables partitioning by cn
+     */
+    public void setParallelScanCnPrefixes(@Nullable final Collection<String> prefixes) {
+        parallelScanCnPrefixes = prefixes != null ? ImmutableList.copyOf(prefixes) : ImmutableList.of();
+    }
+
+    /**
+     * @param pages the number of pages to load ahead of the page being consumed for unlimited searches, 0 disables
+     *              prefetching
+     */
+    public void setPrefetchPages(final int pages) {
+        prefetchPages = pages;
+    }
+
+    /**
+     * @param entries the maximum number of entries a single search buffers when prefetching pages, this caps the
+     *                number of prefetched pages when pages are large. At least 1 page is always prefetched.
+     */
+    public void setPrefetchMaxEntries(final int entries) {
+        prefetchMaxEntries = entries;
+    }
+
+    /**
+     * @param executor the executor used to prefetch pages, one thread is used per search being streamed. Defaults to
+     *                 a cached pool of daemon threads.
+     */
+    public void setPrefetchExecutor(@Nullable final ExecutorService executor) {
+        prefetchExecutor = executor;
+    }
+
+    /**
+     * @param executor the executor used to map LdapEntries to Users in parallel when streaming unlimited searches,
+     *                 null (the default) maps entries on the thread consuming the Stream
+     */
+    public void setDecodeExecutor(@Nullable final ExecutorService executor) {
+        decodeExecutor = executor;
+    }
+
+    /**
+     * @param ordered whether users decoded in parallel are returned in the order the directory returned them
+     */
+    public void setDecodeOrdered(final boolean ordered) {
+        decodeOrdered = ordered;
+    }
+
+    /**
+     * @param size the number of entries mapped by a single decode task
+     */
+    public void setDecodeBatchSize(final int size) {
+        decodeBatchSize = size;
+    }
+
+    /**
+     * @param batches the maximum number of batches being decoded at once for a single Stream
+     */
+    public void setDecodeMaxInFlight(final int batches) {
+        decodeMaxInFlight = batches;
+    }
+
+    /**
+     * @param assertUnmodified whether updates should only be applied when the entry still has the modifyTimestamp it
+     *                         had when the user was loaded (using an RFC 4528 assertion control). Updates of users
+     *                         modified in the meantime fail with a {@link ConcurrentUpdateException}. Note that
+     *                         modifyTimestamp only has a resolution of seconds, so this is best effort unless a
+     *                         change sequence attribute is configured as well.
+     */
+    public void setAssertUnmodified(final boolean assertUnmodified) {
+        this.assertUnmodified = assertUnmodified;
+    }
+
+    /**
+     * @param attribute an operational attribute whose value changes on every modification of an entry (e.g. entryCSN),
+     *                  this is asserted instead of modifyTimestamp. Concurrent updates are only reported as detectable
+     *                  by {@link #canDetectConcurrentUpdates(User)} when this is configured.
+     */
+    public void setChangeSequenceAttribute(@Nullable final String attribute) {
+        this.changeSequenceAttribute = Strings.emptyToNull(attribute);
+    }
+
+    /**
+     * Pin a single open LDAP connection to the current thread that is used for all operations until the session is
+     * closed. Streams opened within the session fail once the session is closed, and the pinned connection is replaced
+     * by a new connection after a connection level failure.
+     */
+    @Nonnull
+    @Override
+    public Session session() throws DaoException {
+        PinnedConnection pinned = session.get();
+        if (pinned == null) {
+            try {
+                pinned = new PinnedConnection(openConnection());
+            } catch (final LdapException e) {
+                throw convertLdapException(e);
+            }
+            session.set(pinned);
+        }
+        return pinned.acquire();
+    }
+
     private void assertValidBaseGroupDn() {
         if (baseGroupDn == null) {
             throw new UnsupportedOperationException(
@@ -176,15 +347,16 @@ private LdapGroup checkValidGroup(@Nonnull final Group group) {
      * @param limit                     the maximum number of results to return, a limit of 0 indicates that all results
      *                                  should be returned
      * @param restrictMaxAllowedResults a flag indicating if maxSearchResults should be observed
+     * @param attrs                     the attributes to load, all attributes are loaded when none are specified
      * @return
      * @throws ExceededMaximumAllowedResultsException exception thrown when there are more results than the maximum
      */
     @Nonnull
     private List<User> findAllByFilter(@Nullable BaseFilter filter, final boolean includeDeactivated, final int limit,
-                                       final boolean restrictMaxAllowedResults)
+                                       final boolean restrictMaxAllowedResults, final User.Attr... attrs)
             throws ExceededMaximumAllowedResultsException {
-        try (Stream<User> users = streamUsersByFilter(filter, includeDeactivated, limit, restrictMaxAllowedResults)) {
-            return users.collect(Collectors.toList());
+        try {
+            return searchAllByFilter(filter, includeDeactivated, limit, restrictMaxAllowedResults, attrs);
         } catch (final ExceededMaximumAllowedResultsException e) {
             // propagate ExceededMaximumAllowedResultsException exceptions
             throw e;
@@ -194,25 +366,67 @@ private List<User> findAllByFilter(@Nullable BaseFilter filter, final boolean in
         }
     }
 
+    /**
+     * Same as {@link #findAllByFilter(BaseFilter, boolean, int, boolean, User.Attr...)}, but propagates any
+     * {@link DaoException}. This is used by lookups where a failed search must not look like no matching users, e.g.
+     * uniqueness checks.
+     */
+    @Nonnull
+    private List<User> searchAllByFilter(@Nullable final BaseFilter filter, final boolean includeDeactivated,
+                                         final int limit, final boolean restrictMaxAllowedResults,
+                                         final User.Attr... attrs) throws DaoException {
+        try (Stream<User> users =
+                     streamUsersByFilter(filter, includeDeactivated, limit, restrictMaxAllowedResults, false, attrs)) {
+            return users.collect(Collectors.toList());
+        }
+    }
+
     /**
      * @param filter                    the LDAP search filter to use when searching
      * @param includeDeactivated        whether deactivated users should be included with the results
      * @param limit                     the maximum number of results to return, a limit of 0 indicates that all results
      *                                  should be returned
      * @param restrictMaxAllowedResults a flag indicating if maxSearchResults should be observed
+     * @param fullScan                  a flag indicating this is a full scan that should be split into the configured
+     *                                  parallel scan partitions, this is ignored for limited searches
+     * @param attrs                     the attributes to load, all attributes are loaded when none are specified
      * @return a stream with User's matching the specified filters
      */
     @Nonnull
     private Stream<User> streamUsersByFilter(@Nullable final BaseFilter filter, final boolean includeDeactivated,
-                                             final int limit, final boolean restrictMaxAllowedResults) {
-        final BaseFilter preparedFilter = prepareUserFilter(filter, includeDeactivated);
+                                             final int limit, final boolean restrictMaxAllowedResults,
+                                             final boolean fullScan, final User.Attr... attrs) {
+        return streamByFilter(filter, includeDeactivated, limit, restrictMaxAllowedResults, fullScan, this::mapUser,
+                attrs);
+    }
 
-        // build search request
-        final SearchRequest request = new SearchRequest(baseSearchDn, preparedFilter);
-        request.setReturnAttributes("*", LDAP_ATTR_PASSWORDCHANGEDTIME);
+    /**
+     * Stream the user entries matching the specified filter, mapping every entry with the specified mapper. Entries
+     * are mapped on the decode executor when it is used, see
+     * {@link #streamUsersByFilter(BaseFilter, boolean, int, boolean, boolean, User.Attr...)} for the other parameters.
+     *
+     * @param mapper the function mapping a user entry to the returned type
+     */
+    @Nonnull
+    private <T> Stream<T> streamByFilter(@Nullable final BaseFilter filter, final boolean includeDeactivated,
+                                         final int limit, final boolean restrictMaxAllowedResults,
+                                         final boolean fullScan, @Nonnull final Function<LdapEntry, T> mapper,
+                                         final User.Attr... attrs) {
+        final BaseFilter preparedFilter = prepareUserFilter(filter, includeDeactivated);
 
-        // Stream search request
-        Stream<LdapEntry> stream = streamSearchRequest(request, calculatePageSize(limit, restrictMaxAllowedResults));
+        // Stream search request, only returning the attributes needed for the requested projection
+        final String[] returnAttributes = getReturnAttributes(attrs);
+        final int pageSize = calculatePageSize(limit, restrictMaxAllowedResults);
+        final boolean partitioned = fullScan && limit == SEARCH_NO_LIMIT &&
+                (!parallelScanBaseDns.isEmpty() || !parallelScanCnPrefixes.isEmpty());
+        Stream<LdapEntry> stream;
+        if (partitioned) {
+            stream = streamPartitionedSearch(buildPartitions(preparedFilter, returnAttributes), pageSize);
+        } else {
+            final SearchRequest request = new SearchRequest(baseSearchDn, preparedFilter);
+            request.setReturnAttributes(returnAttributes);
+            stream = streamSearchRequest(request, pageSize, limit == SEARCH_NO_LIMIT);
+        }
         if (restrictMaxAllowedResults && maxSearchResults != SEARCH_NO_LIMIT) {
             final AtomicInteger count = new AtomicInteger(0);
             stream = stream.peek(entry -> {
@@ -226,11 +440,66 @@ private Stream<User> streamUsersByFilter(@Nullable final BaseFilter filter, fina
         if (limit != SEARCH_NO_LIMIT) {
             stream = stream.limit(limit);
         }
-        return stream.map(e -> {
-            final User user = new User();
-            userMapper.map(e, user);
-            return user;
-        });
+
+        // decode entries on the decode executor for unlimited searches that aren't already scanned in parallel
+        final ExecutorService executor = decodeExecutor;
+        if (executor != null && limit == SEARCH_NO_LIMIT && !partitioned) {
+            final Stream<LdapEntry> entries = stream;
+            final ParallelMappingIterator<LdapEntry, T> mapped = new ParallelMappingIterator<>(entries.iterator(),
+                    mapper, executor, decodeBatchSize, decodeMaxInFlight, decodeOrdered);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(mapped, Spliterator.NONNULL), false)
+                    .onClose(mapped::close)
+                    .onClose(entries::close);
+        }
+        return stream.map(mapper);
+    }
+
+    @Nonnull
+    private User mapUser(@Nonnull final LdapEntry entry) {
+        final User user = new User();
+        userMapper.map(entry, user);
+
+        // capture the change sequence used to detect concurrent updates
+        final LdapAttribute changeSequence =
+                changeSequenceAttribute != null ? entry.getAttribute(changeSequenceAttribute) : null;
+        if (changeSequence != null && changeSequence.getStringValue() != null) {
+            user.setImplMeta(META_CHANGE_SEQUENCE, changeSequence.getStringValue());
+        }
+        return user;
+    }
+
+    /**
+     * Split a search into disjoint partitions based on the configured parallel scan base DNs and cn prefixes.
+     */
+    @Nonnull
+    private List<SearchRequest> buildPartitions(@Nonnull final BaseFilter filter,
+                                                @Nonnull final String[] returnAttributes) {
+        final List<BaseFilter> filters = new ArrayList<>();
+        if (parallelScanCnPrefixes.isEmpty()) {
+            filters.add(filter);
+        } else {
+            final List<BaseFilter> prefixes = parallelScanCnPrefixes.stream()
+                    .map(prefix -> new LikeFilter(LDAP_ATTR_CN, prefix + "*"))
+                    .collect(Collectors.toList());
+            prefixes.forEach(prefix -> filters.add(filter.and(prefix)));
+
+            // catch-all partition for any entries that don't match a prefix
+            final BaseFilter anyPrefix = prefixes.size() == 1 ? prefixes.get(0) :
+                    new OrFilter(prefixes.toArray(new BaseFilter[prefixes.size()]));
+            filters.add(filter.and(anyPrefix.not()));
+        }
+
+        final List<String> baseDns = parallelScanBaseDns.isEmpty() ? ImmutableList.of(baseSearchDn) :
+                parallelScanBaseDns;
+        final List<SearchRequest> partitions = new ArrayList<>();
+        for (final String baseDn : baseDns) {
+            for (final BaseFilter partitionFilter : filters) {
+                final SearchRequest request = new SearchRequest(baseDn, partitionFilter);
+                request.setReturnAttributes(returnAttributes);
+                partitions.add(request);
+            }
+        }
+        return partitions;
     }
 
     private BaseFilter prepareUserFilter(@Nullable BaseFilter filter, final boolean includeDeactivated) {
@@ -241,8 +510,8 @@ private BaseFilter prepareUserFilter(@Nullable BaseFilter filter, final boolean
         return filter;
     }
 
-    private User findByFilter(final BaseFilter filter, final boolean includeDeactivated) {
-        final List<User> results = findAllByFilter(filter, includeDeactivated, 1, false);
+    private User findByFilter(final BaseFilter filter, final boolean includeDeactivated, final User.Attr... attrs) {
+        final List<User> results = findAllByFilter(filter, includeDeactivated, 1, false, attrs);
         return results.size() > 0 ? results.get(0) : null;
     }
 
@@ -280,7 +549,7 @@ public List<User> findAllByQuery(@Nonnull final SearchQuery query) throws DaoExc
         }
 
         // execute query
-        try (Stream<User> users = streamUsersByFilter(filter, query.isIncludeDeactivated(), SEARCH_NO_LIMIT, true)) {
+        try (Stream<User> users = streamUsersByFilter(filter, query.isIncludeDeactivated(), SEARCH_NO_LIMIT, true, false)) {
             return users.collect(Collectors.toList());
         }
     }
@@ -293,17 +562,25 @@ public User findByGuid(final String guid, final boolean includeDeactivated) {
 
     @Override
     public User findByRelayGuid(final String guid, final boolean includeDeactivated) {
-        // relayGuid == {guid} || (guid == {guid} && relayGuid == null)
-        return this.findByFilter(new EqualsFilter(LDAP_ATTR_RELAY_GUID, guid).or(new EqualsFilter(LDAP_ATTR_GUID,
-                guid).and(new PresentFilter(LDAP_ATTR_RELAY_GUID).not())), includeDeactivated);
+        return this.findByFilter(guidFilter(LDAP_ATTR_RELAY_GUID, Collections.singleton(guid)), includeDeactivated);
+    }
+
+    @Override
+    public User findByRelayGuid(final String guid, final boolean includeDeactivated, final User.Attr... attrs) {
+        return findByFilter(guidFilter(LDAP_ATTR_RELAY_GUID, Collections.singleton(guid)), includeDeactivated, attrs);
     }
 
     @Nullable
     @Override
     public User findByTheKeyGuid(final String guid, final boolean includeDeactivated) {
-        // theKeyGuid == {guid} || (guid == {guid} && theKeyGuid == null)
-        return this.findByFilter(new EqualsFilter(LDAP_ATTR_THEKEY_GUID, guid).or(new EqualsFilter(LDAP_ATTR_GUID,
-                guid).and(new PresentFilter(LDAP_ATTR_THEKEY_GUID).not())), includeDeactivated);
+        return this.findByFilter(guidFilter(LDAP_ATTR_THEKEY_GUID, Collections.singleton(guid)), includeDeactivated);
+    }
+
+    @Nullable
+    @Override
+    public User findByTheKeyGuid(final String guid, final boolean includeDeactivated, final User.Attr... attrs) {
+        return findByFilter(guidFilter(LDAP_ATTR_THEKEY_GUID, Collections.singleton(guid)), includeDeactivated,
+                attrs);
     }
 
     @Override
@@ -313,16 +590,61 @@ public User findByFacebookId(final String id, final boolean includeDeactivated)
 
     @Override
     public User findByEmail(final String email, final boolean includeDeactivated) {
-        // filter = (!deactivated && cn = email)
-        BaseFilter filter = FILTER_NOT_DEACTIVATED.and(new EqualsFilter(LDAP_ATTR_CN, email));
+        return this.findByFilter(emailFilter(Collections.singleton(email), includeDeactivated), includeDeactivated);
+    }
 
-        // filter = (filter || (deactivated && uid = email))
-        if (includeDeactivated) {
-            filter = filter.or(FILTER_DEACTIVATED.and(new EqualsFilter(LDAP_ATTR_USERID, email)));
-        }
+    @Override
+    public User findByEmail(final String email, final boolean includeDeactivated, final User.Attr... attrs) {
+        return findByFilter(emailFilter(Collections.singleton(email), includeDeactivated), includeDeactivated,
+                attrs);
+    }
 
-        // Execute search & return results
-        return this.findByFilter(filter, includeDeactivated);
+    @Nonnull
+    @Override
+    public Set<Identifier> findConflicts(@Nonnull final User user) throws DaoException {
+        final String email = user.getEmail();
+        final String guid = user.getGuid();
+        final String relayGuid = user.getRelayGuid();
+        final String theKeyGuid = user.getTheKeyGuid();
+
+        // build a single filter matching any of the unique identifiers
+        final List<BaseFilter> filters = new ArrayList<>();
+        if (email != null) {
+            filters.add(emailFilter(Collections.singleton(email), false));
+        }
+        if (guid != null) {
+            filters.add(new EqualsFilter(LDAP_ATTR_GUID, guid));
+        }
+        if (relayGuid != null) {
+            filters.add(guidFilter(LDAP_ATTR_RELAY_GUID, Collections.singleton(relayGuid)));
+        }
+        if (theKeyGuid != null) {
+            filters.add(guidFilter(LDAP_ATTR_THEKEY_GUID, Collections.singleton(theKeyGuid)));
+        }
+        final Set<Identifier> conflicts = EnumSet.noneOf(Identifier.class);
+        if (filters.isEmpty()) {
+            return conflicts;
+        }
+        final BaseFilter filter = filters.size() == 1 ? filters.get(0) :
+                new OrFilter(filters.toArray(new BaseFilter[filters.size()]));
+
+        // only load the identity attributes, and determine which identifiers matched from the returned users
+        for (final User existing :
+                searchAllByFilter(filter, true, CONFLICTS_SEARCH_LIMIT, false, User.Attr.EMAIL)) {
+            if (email != null && !existing.isDeactivated() && email.equalsIgnoreCase(existing.getEmail())) {
+                conflicts.add(Identifier.EMAIL);
+            }
+            if (guid != null && guid.equalsIgnoreCase(existing.getGuid())) {
+                conflicts.add(Identifier.GUID);
+            }
+            if (relayGuid != null && relayGuid.equalsIgnoreCase(existing.getRelayGuid())) {
+                conflicts.add(Identifier.RELAY_GUID);
+            }
+            if (theKeyGuid != null && theKeyGuid.equalsIgnoreCase(existing.getTheKeyGuid())) {
+                conflicts.add(Identifier.THE_KEY_GUID);
+            }
+        }
+        return conflicts;
     }
 
     @Nullable
@@ -331,16 +653,72 @@ public User findByDesignation(@Nullable final String designation, final boolean
         return findByFilter(new EqualsFilter(LDAP_ATTR_CRU_DESIGNATION, designation), includeDeactivated);
     }
 
+    @Nullable
+    @Override
+    public User findByDesignation(@Nullable final String designation, final boolean includeDeactivated,
+                                  final User.Attr... attrs) {
+        return findByFilter(new EqualsFilter(LDAP_ATTR_CRU_DESIGNATION, designation), includeDeactivated, attrs);
+    }
+
     @Override
     public User findByEmployeeId(final String employeeId, final boolean includeDeactivated) {
         return this.findByFilter(new EqualsFilter(LDAP_ATTR_EMPLOYEE_NUMBER, employeeId), includeDeactivated);
     }
 
+    @Override
+    public User findByEmployeeId(final String employeeId, final boolean includeDeactivated,
+                                 final User.Attr... attrs) {
+        return findByFilter(new EqualsFilter(LDAP_ATTR_EMPLOYEE_NUMBER, employeeId), includeDeactivated, attrs);
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByEmails(@Nonnull final Collection<String> emails, final boolean includeDeactivated)
+            throws DaoException {
+        return findAllByValues(emails, batch -> emailFilter(batch, includeDeactivated), includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByRelayGuids(@Nonnull final Collection<String> guids, final boolean includeDeactivated)
+            throws DaoException {
+        return findAllByValues(guids, batch -> guidFilter(LDAP_ATTR_RELAY_GUID, batch), includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByTheKeyGuids(@Nonnull final Collection<String> guids,
+                                           final boolean includeDeactivated) throws DaoException {
+        return findAllByValues(guids, batch -> guidFilter(LDAP_ATTR_THEKEY_GUID, batch), includeDeactivated);
+    }
+
+    @Nonnull
+    @Override
+    public List<User> findAllByEmployeeIds(@Nonnull final Collection<String> employeeIds,
+                                           final boolean includeDeactivated) throws DaoException {
+        return findAllByValues(employeeIds, batch -> anyOf(LDAP_ATTR_EMPLOYEE_NUMBER, batch), includeDeactivated);
+    }
+
+    /**
+     * Find all users matching any of the specified values, combining up to maxBatchSize values into a single search.
+     */
+    @Nonnull
+    private List<User> findAllByValues(@Nonnull final Collection<String> values,
+                                       @Nonnull final Function<List<String>, BaseFilter> filter,
+                                       final boolean includeDeactivated) throws DaoException {
+        final List<String> distinct = values.stream().filter(v -> v != null).distinct().collect(Collectors.toList());
+        final List<User> users = new ArrayList<>();
+        for (final List<String> batch : Lists.partition(distinct, Math.max(maxBatchSize, 1))) {
+            users.addAll(searchAllByFilter(filter.apply(batch), includeDeactivated, SEARCH_NO_LIMIT, false));
+        }
+        return users;
+    }
+
     @Override
     @Deprecated
     public int enqueueAll(@Nonnull final BlockingQueue<User> queue, final boolean includeDeactivated)
             throws DaoException {
-        try (Stream<User> users = streamUsersByFilter(null, includeDeactivated, SEARCH_NO_LIMIT, false)) {
+        try (Stream<User> users = streamUsersByFilter(null, includeDeactivated, SEARCH_NO_LIMIT, false, false)) {
             final AtomicInteger processed = new AtomicInteger();
             users.forEach(user -> {
                 try {
@@ -359,7 +737,49 @@ public int enqueueAll(@Nonnull final BlockingQueue<User> queue, final boolean in
     @Override
     public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
                                     final boolean restrictMaxAllowed) {
-        return streamUsersByFilter(convertExpressionToFilter(expression), includeDeactivated, SEARCH_NO_LIMIT, restrictMaxAllowed);
+        return streamUsers(expression, includeDeactivated, restrictMaxAllowed, new User.Attr[0]);
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsers(@Nullable final Expression expression, final boolean includeDeactivated,
+                                    final boolean restrictMaxAllowed, final User.Attr... attrs) {
+        // simplify the expression before converting it to a filter, skipping the search if nothing can match
+        final Expression optimized = expression != null ? ExpressionOptimizer.optimize(expression) : null;
+        if (optimized == ConstantExpression.FALSE) {
+            return Stream.empty();
+        }
+        // only unrestricted searches are full scans that are worth partitioning
+        return streamUsersByFilter(optimized != ConstantExpression.TRUE ? convertExpressionToFilter(optimized) : null,
+                includeDeactivated, SEARCH_NO_LIMIT, restrictMaxAllowed, !restrictMaxAllowed, attrs);
+    }
+
+    /**
+     * Entries are converted to snapshots as part of decoding them, so the intermediate mutable users never leave the
+     * decode step and are discarded while they are still short-lived.
+     */
+    @Nonnull
+    @Override
+    public Stream<UserSnapshot> streamUserSnapshots(@Nullable final Expression expression,
+                                                    final boolean includeDeactivated,
+                                                    final boolean restrictMaxAllowed) {
+        final Expression optimized = expression != null ? ExpressionOptimizer.optimize(expression) : null;
+        if (optimized == ConstantExpression.FALSE) {
+            return Stream.empty();
+        }
+        return streamByFilter(optimized != ConstantExpression.TRUE ? convertExpressionToFilter(optimized) : null,
+                includeDeactivated, SEARCH_NO_LIMIT, restrictMaxAllowed, !restrictMaxAllowed,
+                entry -> UserSnapshot.of(mapUser(entry)));
+    }
+
+    @Nonnull
+    @Override
+    public Stream<User> streamUsersInGroup(@Nonnull final Group group, @Nullable final Expression expression,
+                                           final boolean includeDeactivated, final boolean restrictMaxAllowed,
+                                           final User.Attr... attrs) {
+        final Expression groupExpression = Attribute.GROUP.eq(group);
+        return streamUsers(expression != null ? expression.and(groupExpression) : groupExpression,
+                includeDeactivated, restrictMaxAllowed, attrs);
     }
 
     @Override
@@ -370,8 +790,7 @@ public void save(@Nonnull final User user) throws DaoException {
         // attempt saving the user
         Connection conn = null;
         try {
-            conn = this.connectionFactory.getConnection();
-            conn.open();
+            conn = openConnection();
             final AddOperation add = new AddOperation(conn);
             final LdapEntry entry = new LdapEntry();
             this.userMapper.map(user, entry);
@@ -380,10 +799,20 @@ public void save(@Nonnull final User user) throws DaoException {
         } catch (final LdapException e) {
             throw convertLdapException(e);
         } finally {
-            LdapUtils.closeConnection(conn);
+            closeConnection(conn);
         }
     }
 
+    /**
+     * The modifyTimestamp can't distinguish updates within the same second, so concurrent updates are only detectable
+     * when a change sequence attribute is configured.
+     */
+    @Override
+    public boolean canDetectConcurrentUpdates(@Nonnull final User user) {
+        return assertUnmodified && changeSequenceAttribute != null &&
+                user.getImplMeta(META_CHANGE_SEQUENCE, String.class) != null;
+    }
+
     @Override
     public void update(@Nonnull final User user, User.Attr... attrs) throws DaoException {
         assertWritable();
@@ -391,13 +820,16 @@ public void update(@Nonnull final User user, User.Attr... attrs) throws DaoExcep
 
         Connection conn = null;
         try {
-            conn = this.connectionFactory.getConnection();
-            conn.open();
-            this.updateInternal(conn, this.userMapper.mapDn(user), user, attrs);
+            conn = openConnection();
+            this.updateInternal(conn, this.userMapper.mapDn(user), null, user, assertionControls(user), attrs);
+
+            // the modifyTimestamp & change sequence changed, so they can't be used to assert any future updates
+            user.removeImplMeta(META_MODIFY_TIMESTAMP);
+            user.removeImplMeta(META_CHANGE_SEQUENCE);
         } catch (final LdapException e) {
             throw convertLdapException(e);
         } finally {
-            LdapUtils.closeConnection(conn);
+            closeConnection(conn);
         }
     }
 
@@ -410,27 +842,33 @@ public void update(@Nonnull final User original, @Nonnull final User user, final
 
         Connection conn = null;
         try {
-            conn = this.connectionFactory.getConnection();
-            conn.open();
+            conn = openConnection();
 
             final String originalDn = this.userMapper.mapDn(original);
             final String dn;
+            final RequestControl[] controls = assertionControls(user);
+            boolean renamed = false;
             if (Arrays.asList(attrs).contains(User.Attr.EMAIL)) {
                 // modify the DN if we are updating the user's email and it changed
                 dn = this.userMapper.mapDn(user);
                 if (!Objects.equal(originalDn, dn)) {
-                    new ModifyDnOperation(conn).execute(new ModifyDnRequest(originalDn, dn));
+                    final ModifyDnRequest request = new ModifyDnRequest(originalDn, dn);
+                    request.setControls(controls);
+                    new ModifyDnOperation(conn).execute(request);
+                    renamed = true;
                 }
             } else {
                 dn = originalDn;
             }
 
-            // update the actual user account
-            this.updateInternal(conn, dn, user, attrs);
+            // update the actual user account, the rename already verified the entry wasn't modified concurrently
+            this.updateInternal(conn, dn, original, user, renamed ? new RequestControl[0] : controls, attrs);
+            user.removeImplMeta(META_MODIFY_TIMESTAMP);
+            user.removeImplMeta(META_CHANGE_SEQUENCE);
         } catch (final LdapException e) {
             throw convertLdapException(e);
         } finally {
-            LdapUtils.closeConnection(conn);
+            closeConnection(conn);
         }
     }
 
@@ -507,8 +945,7 @@ private int enqueueGroupsByFilter(@Nonnull final Collection<Group> groups, @Null
         // perform search
         Connection conn = null;
         try {
-            conn = this.connectionFactory.getConnection();
-            conn.open();
+            conn = openConnection();
             SearchOperation search = new SearchOperation(conn);
             final SearchRequest request = new SearchRequest(DnUtils.toString(searchDn), filter);
 
@@ -559,13 +996,14 @@ private int enqueueGroupsByFilter(@Nonnull final Collection<Group> groups, @Null
             return processed;
         } catch (final LdapException e) {
             LOG.debug("error searching for groups, wrapping & propagating exception", e);
+            discardBrokenConnection(conn, e);
             if (e.getCause() instanceof InterruptedNamingException) {
                 throw new InterruptedDaoException(e);
             } else {
                 throw new LdaptiveDaoException(e);
             }
         } finally {
-            LdapUtils.closeConnection(conn);
+            closeConnection(conn);
         }
     }
 
@@ -573,8 +1011,7 @@ private void modifyGroupMembership(@Nonnull final AttributeModificationType type
                                        @Nonnull final LdapGroup group, final boolean updateSecurity) throws DaoException {
         Connection conn = null;
         try {
-            conn = this.connectionFactory.getConnection();
-            conn.open();
+            conn = openConnection();
 
             final String userDn = userMapper.mapDn(user);
             final String groupDn = DnUtils.toString(group);
@@ -593,7 +1030,7 @@ private void modifyGroupMembership(@Nonnull final AttributeModificationType type
         } catch (final LdapException e) {
             throw convertLdapException(e);
         } finally {
-            LdapUtils.closeConnection(conn);
+            closeConnection(conn);
         }
     }
 
@@ -629,25 +1066,84 @@ private boolean modifyGroupMembershipEntry(@Nonnull final Connection conn, @Nonn
         }
     }
 
-    private void updateInternal(final Connection conn, final String dn, final User user,
-                                User.Attr... attrs) throws LdapException {
-        // generate the list of modifications to make for this account
-        final ArrayList<AttributeModification> modifications = new ArrayList<AttributeModification>();
+    @Nonnull
+    private RequestControl[] assertionControls(@Nonnull final User user) {
+        if (!assertUnmodified) {
+            return new RequestControl[0];
+        }
+
+        // prefer the change sequence, falling back to the modifyTimestamp
+        final String changeSequence = user.getImplMeta(META_CHANGE_SEQUENCE, String.class);
+        if (changeSequenceAttribute != null && changeSequence != null) {
+            return new RequestControl[]{new AssertionControl(changeSequenceAttribute, changeSequence)};
+        }
+        final String modifyTimestamp = user.getImplMeta(META_MODIFY_TIMESTAMP, String.class);
+        if (modifyTimestamp != null) {
+            return new RequestControl[]{new AssertionControl(LDAP_ATTR_MODIFY_TIMESTAMP, modifyTimestamp)};
+        }
+        return new RequestControl[0];
+    }
+
+    @Override
+    protected String[] getReturnAttributes(final User.Attr... attrs) {
+        final String[] names = super.getReturnAttributes(attrs);
+        if (changeSequenceAttribute == null || Arrays.asList(names).contains(changeSequenceAttribute)) {
+            return names;
+        }
+
+        // the change sequence is an operational attribute, so it needs to be requested explicitly
+        final String[] withChangeSequence = Arrays.copyOf(names, names.length + 1);
+        withChangeSequence[names.length] = changeSequenceAttribute;
+        return withChangeSequence;
+    }
 
-        // update attributes set on the user model
+    /**
+     * @param original the original user to compute value deltas against, when null all attributes are replaced. The
+     *                 original may be stale, concurrent changes are caught by the assertion controls when they are
+     *                 available, and deltas that no longer apply fall back to replacing all attributes.
+     */
+    private void updateInternal(final Connection conn, final String dn, @Nullable final User original,
+                                final User user, final RequestControl[] controls, User.Attr... attrs)
+            throws LdapException {
+        // map the original & updated user to LDAP entries
         final LdapEntry entry = new LdapEntry();
         this.userMapper.map(user, entry);
-        final Set<String> mask = this.getAttributeMask(attrs);
+        final LdapEntry originalEntry;
+        if (original != null) {
+            originalEntry = new LdapEntry();
+            this.userMapper.map(original, originalEntry);
+        } else {
+            originalEntry = null;
+        }
 
-        for (final LdapAttribute attribute : entry.getAttributes()) {
-            if (mask.contains(attribute.getName())) {
-                modifications.add(new AttributeModification(AttributeModificationType.REPLACE, attribute));
-            }
+        // generate the list of modifications to make for this account, skipping the update if nothing changed
+        final Set<String> mask = this.getAttributeMask(attrs);
+        final List<AttributeModification> modifications = LdapUtils.computeModifications(originalEntry, entry, mask);
+        if (modifications.isEmpty()) {
+            return;
         }
 
         // execute the ModifyOperation
-        new ModifyOperation(conn).execute(new ModifyRequest(dn, modifications.toArray(new
-                AttributeModification[modifications.size()])));
+        try {
+            final ModifyRequest request =
+                    new ModifyRequest(dn, modifications.toArray(new AttributeModification[modifications.size()]));
+            request.setControls(controls);
+            new ModifyOperation(conn).execute(request);
+        } catch (final LdapException e) {
+            // value deltas fail if the original user is out of date, fall back to replacing all attributes
+            final ResultCode code = e.getResultCode();
+            if (originalEntry == null ||
+                    (code != ResultCode.NO_SUCH_ATTRIBUTE && code != ResultCode.ATTRIBUTE_OR_VALUE_EXISTS)) {
+                throw e;
+            }
+
+            LOG.debug("Incremental update of {} failed, replacing all attributes instead", dn, e);
+            final List<AttributeModification> replacements = LdapUtils.computeModifications(null, entry, mask);
+            final ModifyRequest request =
+                    new ModifyRequest(dn, replacements.toArray(new AttributeModification[replacements.size()]));
+            request.setControls(controls);
+            new ModifyOperation(conn).execute(request);
+        }
     }
 
     @Nullable
@@ -658,7 +1154,11 @@ BaseFilter convertExpressionToFilter(@Nullable final Expression expression) {
             return null;
         }
 
-        if (expression instanceof BooleanExpression) {
+        if (expression == ConstantExpression.TRUE) {
+            return FILTER_ANY;
+        } else if (expression == ConstantExpression.FALSE) {
+            return FILTER_ANY.not();
+        } else if (expression instanceof BooleanExpression) {
             return convertBooleanExpressionToFilter((BooleanExpression) expression);
         } else if (expression instanceof NotExpression) {
             return new NotFilter(convertExpressionToFilter(((NotExpression) expression).getComponent()));
@@ -670,13 +1170,34 @@ BaseFilter convertExpressionToFilter(@Nullable final Expression expression) {
     }
 
     private BaseFilter convertBooleanExpressionToFilter(@Nonnull final BooleanExpression expression) {
-        final BaseFilter[] filters = expression.getComponents().stream().map(this::convertExpressionToFilter)
-                .toArray(BaseFilter[]::new);
+        final List<BaseFilter> filters = new ArrayList<>();
+        final Set<String> guids = new LinkedHashSet<>();
+        for (final Expression component : expression.getComponents()) {
+            // collapse guid equality comparisons within an OR into a single guid filter
+            if (expression.getType() == BooleanExpression.Type.OR && component instanceof ComparisonExpression &&
+                    ((ComparisonExpression) component).getAttribute() == Attribute.GUID &&
+                    ((ComparisonExpression) component).getType() == ComparisonExpression.Type.EQ) {
+                if (guids.isEmpty()) {
+                    // placeholder to keep the guid filter in the position of the first guid comparison
+                    filters.add(null);
+                }
+                guids.add(((ComparisonExpression) component).getValue());
+            } else {
+                filters.add(convertExpressionToFilter(component));
+            }
+        }
+        if (!guids.isEmpty()) {
+            filters.set(filters.indexOf(null), guidFilter(Attribute.GUID.ldapAttr, guids));
+            if (filters.size() == 1) {
+                return filters.get(0);
+            }
+        }
+
         switch (expression.getType()) {
             case AND:
-                return new AndFilter(filters);
+                return new AndFilter(filters.toArray(new BaseFilter[0]));
             case OR:
-                return new OrFilter(filters);
+                return new OrFilter(filters.toArray(new BaseFilter[0]));
             default:
                 throw new UnsupportedOperationException("Unrecognized BooleanExpression type: " + expression.getType());
         }
@@ -690,9 +1211,7 @@ private BaseFilter convertComparisonExpressionToFilter(@Nonnull final Comparison
         // handle special case comparisons
         switch (expression.getAttribute()) {
             case GUID:
-                // attr == {value} || (ccciGuid == {value} && attr == null)
-                return new EqualsFilter(attrName, value)
-                        .or(new EqualsFilter(LDAP_ATTR_GUID, value).and(new PresentFilter(attrName).not()));
+                return guidFilter(attrName, Collections.singleton(value));
         }
 
         switch (expression.getType()) {
@@ -706,6 +1225,32 @@ private BaseFilter convertComparisonExpressionToFilter(@Nonnull final Comparison
         }
     }
 
+    /**
+     * attr == {value1} || attr == {value2} || ...
+     */
+    @Nonnull
+    private static BaseFilter anyOf(@Nonnull final String attr, @Nonnull final Collection<String> values) {
+        final BaseFilter[] filters = values.stream().map(v -> new EqualsFilter(attr, v)).toArray(BaseFilter[]::new);
+        return filters.length == 1 ? filters[0] : new OrFilter(filters);
+    }
+
+    /**
+     * attr in {guids} || (ccciGuid in {guids} && attr == null)
+     */
+    @Nonnull
+    private static BaseFilter guidFilter(@Nonnull final String attr, @Nonnull final Collection<String> guids) {
+        return anyOf(attr, guids).or(anyOf(LDAP_ATTR_GUID, guids).and(new PresentFilter(attr).not()));
+    }
+
+    /**
+     * (!deactivated && cn in {emails}) || (includeDeactivated && deactivated && uid in {emails})
+     */
+    @Nonnull
+    private static BaseFilter emailFilter(@Nonnull final Collection<String> emails, final boolean includeDeactivated) {
+        final BaseFilter filter = FILTER_NOT_DEACTIVATED.and(anyOf(LDAP_ATTR_CN, emails));
+        return includeDeactivated ? filter.or(FILTER_DEACTIVATED.and(anyOf(LDAP_ATTR_USERID, emails))) : filter;
+    }
+
     @VisibleForTesting
     int calculatePageSize(final int limit, final boolean restrictMaxAllowedResults) {
         // calculate the page size based on the provided limit, maxPageSize, and maxSearchResults
@@ -719,25 +1264,219 @@ int calculatePageSize(final int limit, final boolean restrictMaxAllowedResults)
         return pageSize;
     }
 
+    /**
+     * Determine how many pages to prefetch, keeping the number of buffered entries under prefetchMaxEntries.
+     */
+    @VisibleForTesting
+    int calculatePrefetchPages(final int pageSize) {
+        if (prefetchPages <= 0) {
+            return 0;
+        }
+        return Math.min(prefetchPages, Math.max(1, prefetchMaxEntries / Math.max(pageSize, 1)));
+    }
+
+    @Nonnull
+    private ExecutorService getPrefetchExecutor() {
+        ExecutorService executor = prefetchExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = prefetchExecutor;
+                if (executor == null) {
+                    executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                            .setNameFormat("LdaptiveUserDao-prefetch-%d").setDaemon(true).build());
+                    prefetchExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
     @VisibleForTesting
     Stream<LdapEntry> streamSearchRequest(@Nonnull final SearchRequest request, final int pageSize) {
+        return streamSearchRequest(request, pageSize, false);
+    }
+
+    /**
+     * @param prefetch whether pages should be prefetched in the background, if prefetching is enabled on this dao and
+     *                 the current thread doesn't have an open session
+     */
+    @VisibleForTesting
+    Stream<LdapEntry> streamSearchRequest(@Nonnull final SearchRequest request, final int pageSize,
+                                          final boolean prefetch) {
         // open connection
-        Connection conn = null;
+        final PinnedConnection pin = session.get();
+        final boolean pinned = pin != null;
+        final Connection conn;
         try {
-            conn = connectionFactory.getConnection();
-            conn.open();
+            conn = openConnection();
         } catch (LdapException e) {
-            LdapUtils.closeConnection(conn);
             throw new LdaptiveDaoException(e);
         }
 
-        // create the iterator and Stream
-        final Iterator<LdapEntry> iterator = new SearchRequestIterator(conn, request, pageSize);
-        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
-                .onClose(conn::close);
+        // create the iterator and Stream, a pinned connection is released by the session and not the stream. A pinned
+        // connection is shared with any other operation of the session, so never prefetch on it in the background.
+        final int prefetchPages = prefetch && !pinned ? calculatePrefetchPages(pageSize) : 0;
+        final SearchRequestIterator iterator = new SearchRequestIterator(conn, request, pageSize, prefetchPages,
+                prefetchPages > 0 ? getPrefetchExecutor() : null);
+        final Iterator<LdapEntry> entries = pinned ? pin.guard(conn, iterator) : iterator;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries, Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    // stop any prefetching before releasing the connection
+                    iterator.close();
+                    if (!pinned) {
+                        LdapUtils.closeConnection(conn);
+                    }
+                });
+    }
+
+    /**
+     * Stream the entries of several disjoint search partitions. Each partition is searched on its own connection, so a
+     * parallel Stream scans partitions concurrently.
+     */
+    @Nonnull
+    @VisibleForTesting
+    Stream<LdapEntry> streamPartitionedSearch(@Nonnull final List<SearchRequest> partitions, final int pageSize) {
+        final PartitionedSearchSpliterator spliterator =
+                new PartitionedSearchSpliterator(partitions, request -> streamSearchRequest(request, pageSize, true));
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * @return the connection pinned by the current thread's session, or a newly opened connection.
+     */
+    @Nonnull
+    private Connection openConnection() throws LdapException {
+        final PinnedConnection pinned = session.get();
+        if (pinned != null) {
+            if (pinned.broken) {
+                // replace a pinned connection that was discarded after a connection level failure
+                pinned.connection = openNewConnection();
+                pinned.broken = false;
+            }
+            return pinned.connection;
+        }
+        return openNewConnection();
+    }
+
+    @Nonnull
+    private Connection openNewConnection() throws LdapException {
+        final Connection conn = connectionFactory.getConnection();
+        try {
+            conn.open();
+        } catch (final LdapException e) {
+            LdapUtils.closeConnection(conn);
+            throw e;
+        }
+        return conn;
+    }
+
+    /**
+     * Close a connection returned by {@link #openConnection()} unless it is pinned by the current thread's session.
+     */
+    private void closeConnection(@Nullable final Connection conn) {
+        final PinnedConnection pinned = session.get();
+        if (pinned == null || pinned.connection != conn) {
+            LdapUtils.closeConnection(conn);
+        }
+    }
+
+    /**
+     * Discard the connection pinned by the current thread's session if it failed with a connection level error, so the
+     * next operation of the session opens a new connection instead of reusing the broken one.
+     */
+    private void discardBrokenConnection(@Nullable final Connection conn, @Nonnull final LdapException e) {
+        final PinnedConnection pinned = session.get();
+        if (pinned != null && conn != null && isConnectionFailure(e)) {
+            pinned.discard(conn);
+        }
+    }
+
+    private static boolean isConnectionFailure(@Nonnull final LdapException e) {
+        final ResultCode code = e.getResultCode();
+        if (code == null) {
+            // the operation failed without a response from the server
+            return true;
+        }
+        switch (code) {
+            case SERVER_DOWN:
+            case CONNECT_ERROR:
+            case TIMEOUT:
+                return true;
+            default:
+                return false;
+        }
     }
 
     private DaoException convertLdapException(@Nonnull final LdapException e) {
+        final PinnedConnection pinned = session.get();
+        if (pinned != null && isConnectionFailure(e)) {
+            pinned.discard(pinned.connection);
+        }
+
+        if (e.getResultCode() == ResultCode.ASSERTION_FAILED) {
+            return new ConcurrentUpdateException(e);
+        }
         return new LdaptiveDaoException(e);
     }
+
+    private final class PinnedConnection {
+        @Nonnull
+        private volatile Connection connection;
+        // the connection was closed after a connection level failure and needs to be replaced before it is used again
+        private volatile boolean broken = false;
+        private volatile boolean closed = false;
+        private int references = 0;
+
+        private PinnedConnection(@Nonnull final Connection connection) {
+            this.connection = connection;
+        }
+
+        @Nonnull
+        private Session acquire() {
+            references++;
+            final AtomicBoolean released = new AtomicBoolean(false);
+            return () -> {
+                if (released.compareAndSet(false, true) && --references == 0) {
+                    closed = true;
+                    session.remove();
+                    if (!broken) {
+                        LdapUtils.closeConnection(connection);
+                    }
+                }
+            };
+        }
+
+        private void discard(@Nonnull final Connection conn) {
+            if (connection == conn && !broken) {
+                broken = true;
+                LdapUtils.closeConnection(conn);
+            }
+        }
+
+        /**
+         * Guard the entries of a stream reading from the specified pinned connection. Reading fails fast once the
+         * session is closed or the connection has been discarded, and a connection level failure discards the
+         * connection.
+         */
+        @Nonnull
+        private Iterator<LdapEntry> guard(@Nonnull final Connection conn, @Nonnull final Iterator<LdapEntry> entries) {
+            return new AbstractIterator<LdapEntry>() {
+                @Override
+                protected LdapEntry computeNext() {
+                    if (closed || broken || connection != conn) {
+                        throw new IllegalStateException("The session this stream was opened in is no longer open");
+                    }
+
+                    try {
+                        return entries.hasNext() ? entries.next() : endOfData();
+                    } catch (final LdaptiveDaoException e) {
+                        if (e.getCause() instanceof LdapException && isConnectionFailure((LdapException) e.getCause())) {
+                            discard(conn);
+                        }
+                        throw e;
+                    }
+                }
+            };
+        }
+    }
 }
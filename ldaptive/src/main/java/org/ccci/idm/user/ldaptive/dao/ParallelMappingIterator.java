@@ -0,0 +1,121 @@
+package org.ccci.idm.user.ldaptive.dao;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import org.ccci.idm.user.dao.exception.InterruptedDaoException;
+import org.ccci.idm.user.ldaptive.dao.exception.LdaptiveDaoException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * This iterator maps the elements of a source iterator on a pool of worker threads. The thread consuming this iterator
+ * reads batches of elements from the source and submits them to the workers, keeping a bounded number of batches in
+ * flight. Mapped elements are returned either in encounter order, or in the order batches complete.
+ */
+class ParallelMappingIterator<F, T> extends AbstractIterator<T> implements AutoCloseable {
+    @Nonnull
+    private final Iterator<F> source;
+    @Nonnull
+    private final Function<F, T> mapper;
+    @Nonnull
+    private final ExecutorService executor;
+    @Nullable
+    private final CompletionService<List<T>> completionService;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    private final Deque<Future<List<T>>> inFlight = new ArrayDeque<>();
+    @Nonnull
+    private Iterator<T> current = Collections.emptyIterator();
+
+    /**
+     * @param batchSize   the number of source elements mapped by a single task
+     * @param maxInFlight the maximum number of batches being mapped at once
+     * @param ordered     whether mapped elements are returned in the same order as the source elements
+     */
+    ParallelMappingIterator(@Nonnull final Iterator<F> source, @Nonnull final Function<F, T> mapper,
+                            @Nonnull final ExecutorService executor, final int batchSize, final int maxInFlight,
+                            final boolean ordered) {
+        this.source = source;
+        this.mapper = mapper;
+        this.executor = executor;
+        this.completionService = ordered ? null : new ExecutorCompletionService<>(executor);
+        this.batchSize = Math.max(batchSize, 1);
+        this.maxInFlight = Math.max(maxInFlight, 1);
+    }
+
+    @Override
+    protected T computeNext() {
+        while (!current.hasNext()) {
+            submitBatches();
+            if (inFlight.isEmpty()) {
+                return endOfData();
+            }
+            current = takeBatch().iterator();
+        }
+        return current.next();
+    }
+
+    /**
+     * Cancel any batches that are still being mapped.
+     */
+    @Override
+    public void close() {
+        Future<List<T>> future;
+        while ((future = inFlight.poll()) != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void submitBatches() {
+        while (inFlight.size() < maxInFlight && source.hasNext()) {
+            final List<F> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && source.hasNext()) {
+                batch.add(source.next());
+            }
+
+            final Callable<List<T>> task = () -> {
+                final List<T> mapped = new ArrayList<>(batch.size());
+                for (final F element : batch) {
+                    mapped.add(mapper.apply(element));
+                }
+                return mapped;
+            };
+            inFlight.add(completionService != null ? completionService.submit(task) : executor.submit(task));
+        }
+    }
+
+    @Nonnull
+    private List<T> takeBatch() {
+        try {
+            final Future<List<T>> future;
+            if (completionService != null) {
+                future = completionService.take();
+                inFlight.remove(future);
+            } else {
+                future = inFlight.removeFirst();
+            }
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedDaoException(e);
+        } catch (final ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new LdaptiveDaoException(e.getCause());
+        }
+    }
+}
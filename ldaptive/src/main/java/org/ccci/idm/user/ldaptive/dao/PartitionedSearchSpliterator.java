@@ -0,0 +1,120 @@
+package org.ccci.idm.user.ldaptive.dao;
+
+import com.google.common.collect.ImmutableList;
+import org.ldaptive.LdapEntry;
+import org.ldaptive.SearchRequest;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * This Spliterator iterates over the LdapEntries of several disjoint partitions of a search. Each partition is a
+ * separate SearchRequest that is lazily opened as its own Stream (and connection) when it is reached. Splitting hands
+ * half of the partitions that haven't been started yet to the new Spliterator, which allows a parallel Stream to scan
+ * the partitions concurrently.
+ */
+class PartitionedSearchSpliterator implements Spliterator<LdapEntry>, AutoCloseable {
+    @Nonnull
+    private final List<SearchRequest> partitions;
+    @Nonnull
+    private final Function<SearchRequest, Stream<LdapEntry>> search;
+    // streams opened by this Spliterator or any Spliterator split from it
+    @Nonnull
+    private final Queue<Stream<LdapEntry>> open;
+
+    private int next;
+    private int end;
+    @Nullable
+    private Stream<LdapEntry> current = null;
+    @Nullable
+    private Iterator<LdapEntry> iterator = null;
+
+    PartitionedSearchSpliterator(@Nonnull final List<SearchRequest> partitions,
+                                 @Nonnull final Function<SearchRequest, Stream<LdapEntry>> search) {
+        this(ImmutableList.copyOf(partitions), 0, partitions.size(), search, new ConcurrentLinkedQueue<>());
+    }
+
+    private PartitionedSearchSpliterator(@Nonnull final List<SearchRequest> partitions, final int start, final int end,
+                                         @Nonnull final Function<SearchRequest, Stream<LdapEntry>> search,
+                                         @Nonnull final Queue<Stream<LdapEntry>> open) {
+        this.partitions = partitions;
+        this.next = start;
+        this.end = end;
+        this.search = search;
+        this.open = open;
+    }
+
+    @Override
+    public boolean tryAdvance(@Nonnull final Consumer<? super LdapEntry> action) {
+        while (true) {
+            if (iterator != null && iterator.hasNext()) {
+                action.accept(iterator.next());
+                return true;
+            }
+
+            // the current partition is exhausted, release its connection before starting the next partition
+            closeCurrent();
+            if (next >= end) {
+                return false;
+            }
+
+            current = search.apply(partitions.get(next++));
+            open.add(current);
+            iterator = current.iterator();
+        }
+    }
+
+    @Nullable
+    @Override
+    public Spliterator<LdapEntry> trySplit() {
+        // hand off half of the partitions we haven't started yet, counting the partition currently in progress
+        final int unstarted = end - next;
+        final int handOff = iterator != null ? (unstarted + 1) / 2 : unstarted / 2;
+        if (handOff == 0) {
+            return null;
+        }
+
+        final int split = end - handOff;
+        final Spliterator<LdapEntry> suffix = new PartitionedSearchSpliterator(partitions, split, end, search, open);
+        end = split;
+        return suffix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+
+    /**
+     * Close any partition Streams that are still open for this Spliterator and all Spliterators split from it.
+     */
+    @Override
+    public void close() {
+        Stream<LdapEntry> stream;
+        while ((stream = open.poll()) != null) {
+            stream.close();
+        }
+    }
+
+    private void closeCurrent() {
+        if (current != null) {
+            open.remove(current);
+            current.close();
+            current = null;
+            iterator = null;
+        }
+    }
+}
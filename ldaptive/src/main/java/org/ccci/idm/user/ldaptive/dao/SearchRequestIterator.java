@@ -1,7 +1,9 @@
 package org.ccci.idm.user.ldaptive.dao;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.ccci.idm.user.dao.exception.InterruptedDaoException;
 import org.ccci.idm.user.ldaptive.dao.exception.LdaptiveDaoException;
 import org.ldaptive.Connection;
@@ -21,14 +23,24 @@
 import javax.naming.InterruptedNamingException;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class will iterate over all LdapEntries returned for the specified SearchRequest. The iterator will load entries
- * in pages to restrict memory usage.
+ * in pages to restrict memory usage. When prefetching is enabled the following pages are loaded on a background thread
+ * while the current page is being consumed, this iterator needs to be closed to stop prefetching early.
  */
-class SearchRequestIterator extends AbstractIterator<LdapEntry> {
+class SearchRequestIterator extends AbstractIterator<LdapEntry> implements AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(SearchRequestIterator.class);
 
+    private static final long PREFETCH_TIMEOUT = 100;
+
     @Nonnull
     private final SearchOperation searchOperation;
     @Nonnull
@@ -41,23 +53,54 @@ class SearchRequestIterator extends AbstractIterator<LdapEntry> {
     private Iterator<LdapEntry> currentPage = null;
     private boolean hasAnotherPage = true;
 
+    // prefetch state
+    @Nullable
+    private final ExecutorService prefetchExecutor;
+    @Nullable
+    private final BlockingQueue<Page> prefetchedPages;
+    @Nullable
+    private Future<?> prefetchTask = null;
+    // the page ending the prefetched pages, this is set once prefetching stops for any reason
+    @Nullable
+    private volatile Page lastPage = null;
+    private volatile boolean closed = false;
+
     SearchRequestIterator(@Nonnull final Connection connection, @Nonnull final SearchRequest request, int pageSize) {
         this(buildOperation(connection), request, pageSize);
     }
 
+    /**
+     * @param prefetchPages the maximum number of pages to load ahead of the page being consumed, 0 disables prefetching
+     * @param executor      the executor to load pages on when prefetching
+     */
+    SearchRequestIterator(@Nonnull final Connection connection, @Nonnull final SearchRequest request, int pageSize,
+                          final int prefetchPages, @Nullable final ExecutorService executor) {
+        this(buildOperation(connection), request, pageSize, prefetchPages, executor);
+    }
+
     @VisibleForTesting
     SearchRequestIterator(@Nonnull final SearchOperation operation, @Nonnull final SearchRequest request,
                           final int pageSize) {
+        this(operation, request, pageSize, 0, null);
+    }
+
+    @VisibleForTesting
+    SearchRequestIterator(@Nonnull final SearchOperation operation, @Nonnull final SearchRequest request,
+                          final int pageSize, final int prefetchPages, @Nullable final ExecutorService executor) {
         searchOperation = operation;
         searchRequest = request;
         pagedResultsControl = new PagedResultsControl(pageSize);
         searchRequest.setControls(pagedResultsControl);
+
+        final boolean prefetch = prefetchPages > 0 && executor != null;
+        prefetchExecutor = prefetch ? executor : null;
+        prefetchedPages = prefetch ? new ArrayBlockingQueue<>(prefetchPages) : null;
     }
 
     @Override
     protected LdapEntry computeNext() {
         if (currentPage == null || !currentPage.hasNext()) {
-            currentPage = loadNextPage();
+            currentPage = prefetchedPages != null ? takePrefetchedPage() : loadNextPage();
         }
 
         if (!currentPage.hasNext()) {
@@ -83,6 +126,113 @@ private Iterator<LdapEntry> loadNextPage() {
         return response.getResult().getEntries().iterator();
     }
 
+    /**
+     * Stop prefetching any more pages. This waits for a page that is currently being loaded so the connection is no
+     * longer in use by the background thread once this method returns.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (prefetchedPages != null) {
+            prefetchedPages.clear();
+        }
+
+        final Future<?> task = prefetchTask;
+        if (task != null) {
+            try {
+                Uninterruptibles.getUninterruptibly(task);
+            } catch (final ExecutionException | CancellationException e) {
+                LOG.debug("error prefetching a page after the iterator was closed", e);
+            }
+        }
+    }
+
+    @Nonnull
+    private Iterator<LdapEntry> takePrefetchedPage() {
+        assert prefetchedPages != null && prefetchExecutor != null;
+        if (closed) {
+            throw new IllegalStateException("SearchRequestIterator has already been closed");
+        }
+
+        // start prefetching on first access
+        if (prefetchTask == null) {
+            prefetchTask = prefetchExecutor.submit(this::prefetch);
+        }
+
+        final Page page;
+        try {
+            page = takeNextPage();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedDaoException(e);
+        }
+
+        if (page.error != null) {
+            Throwables.throwIfUnchecked(page.error);
+            throw new LdaptiveDaoException(page.error);
+        }
+        return page.entries;
+    }
+
+    /**
+     * Wait for the next prefetched page. This doesn't rely on the last page being queued, so the consumer can't block
+     * forever when the prefetch task is unable to queue it.
+     */
+    @Nonnull
+    private Page takeNextPage() throws InterruptedException {
+        assert prefetchedPages != null;
+        while (true) {
+            final Page page = prefetchedPages.poll(PREFETCH_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (page != null) {
+                return page;
+            }
+
+            // every other page is queued before the last page is set, so drain the queue before ending
+            final Page last = lastPage;
+            if (last != null) {
+                final Page remaining = prefetchedPages.poll();
+                return remaining != null ? remaining : last;
+            }
+        }
+    }
+
+    /**
+     * Load pages in the background until there are no more pages or this iterator is closed.
+     */
+    private void prefetch() {
+        assert prefetchedPages != null;
+        Page last = Page.END;
+        try {
+            while (hasAnotherPage && !closed) {
+                if (!enqueue(new Page(loadNextPage()))) {
+                    // fail the search instead of silently truncating the results
+                    last = new Page(new InterruptedDaoException());
+                    return;
+                }
+            }
+        } catch (final Throwable t) {
+            last = new Page(t);
+        } finally {
+            lastPage = last;
+            // wake up a waiting consumer immediately when there is room for the last page
+            prefetchedPages.offer(last);
+        }
+    }
+
+    private boolean enqueue(@Nonnull final Page page) {
+        assert prefetchedPages != null;
+        try {
+            while (!closed) {
+                if (prefetchedPages.offer(page, PREFETCH_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
     private static SearchOperation buildOperation(@Nonnull final Connection connection) {
         if (!connection.isOpen()) {
             throw new IllegalStateException("provided connection needs to already be open");
@@ -117,4 +267,23 @@ private void checkForAnotherPage(final Response<SearchResult> response) {
         }
         hasAnotherPage = cookie != null && cookie.length > 0;
     }
+
+    private static final class Page {
+        private static final Page END = new Page(Collections.emptyIterator());
+
+        @Nonnull
+        private final Iterator<LdapEntry> entries;
+        @Nullable
+        private final Throwable error;
+
+        private Page(@Nonnull final Iterator<LdapEntry> entries) {
+            this.entries = entries;
+            this.error = null;
+        }
+
+        private Page(@Nonnull final Throwable error) {
+            this.entries = Collections.emptyIterator();
+            this.error = error;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package org.ccci.idm.user.ldaptive.dao.control;
+
+import com.google.common.base.MoreObjects;
+import org.ldaptive.control.RequestControl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RFC 4528 assertion request control with an equality assertion. The server only processes the operation if the
+ * target entry matches the assertion, otherwise the operation fails with the assertionFailed (122) result code.
+ */
+@Immutable
+public final class AssertionControl implements RequestControl {
+    public static final String OID = "1.3.6.1.1.12";
+
+    // BER tags
+    private static final int TAG_EQUALITY_MATCH = 0xA3;
+    private static final int TAG_OCTET_STRING = 0x04;
+
+    @Nonnull
+    private final String attribute;
+    @Nonnull
+    private final String value;
+
+    public AssertionControl(@Nonnull final String attribute, @Nonnull final String value) {
+        this.attribute = attribute;
+        this.value = value;
+    }
+
+    @Override
+    public String getOID() {
+        return OID;
+    }
+
+    @Override
+    public boolean getCriticality() {
+        return true;
+    }
+
+    /**
+     * @return the BER encoded equalityMatch filter: [3] SEQUENCE { attributeDesc OCTET STRING, assertionValue OCTET
+     * STRING }
+     */
+    @Override
+    public byte[] encode() {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        writeTlv(content, TAG_OCTET_STRING, attribute.getBytes(StandardCharsets.UTF_8));
+        writeTlv(content, TAG_OCTET_STRING, value.getBytes(StandardCharsets.UTF_8));
+
+        final ByteArrayOutputStream filter = new ByteArrayOutputStream();
+        writeTlv(filter, TAG_EQUALITY_MATCH, content.toByteArray());
+        return filter.toByteArray();
+    }
+
+    private static void writeTlv(@Nonnull final ByteArrayOutputStream out, final int tag, @Nonnull final byte[] value) {
+        out.write(tag);
+        final int length = value.length;
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            // long form length, the number of length bytes followed by the length in big-endian order
+            int bytes = 0;
+            for (int remaining = length; remaining > 0; remaining >>>= 8) {
+                bytes++;
+            }
+            out.write(0x80 | bytes);
+            for (int i = bytes - 1; i >= 0; i--) {
+                out.write(length >>> (8 * i));
+            }
+        }
+        out.write(value, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("attribute", attribute).add("value", value).toString();
+    }
+}
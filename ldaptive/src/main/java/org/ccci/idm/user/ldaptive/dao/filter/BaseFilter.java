@@ -4,7 +4,16 @@
 import com.google.common.collect.ObjectArrays;
 import org.ldaptive.SearchFilter;
 
+import javax.annotation.Nonnull;
+
+/**
+ * Base class for immutable LDAP search filters. The formatted filter and the hash code are computed once on first use,
+ * so a filter can be shared between searches and used as a cache key.
+ */
 public abstract class BaseFilter extends SearchFilter {
+    private volatile String formatted;
+    private volatile int hash;
+
     public AndFilter and(final SearchFilter... filters) {
         return new AndFilter(ObjectArrays.concat(this, filters));
     }
@@ -17,18 +26,89 @@ public NotFilter not() {
         return new NotFilter(this);
     }
 
+    @Override
+    public final String format() {
+        String formatted = this.formatted;
+        if (formatted == null) {
+            final StringBuilder sb = new StringBuilder(64);
+            appendTo(sb);
+            formatted = sb.toString();
+            this.formatted = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * Append the formatted representation of this filter to the specified buffer.
+     */
+    protected abstract void appendTo(@Nonnull StringBuilder sb);
+
+    /**
+     * Append the formatted representation of the specified filter to the buffer, reusing the buffer for nested
+     * filters that haven't been formatted yet.
+     */
+    static void appendFilter(@Nonnull final StringBuilder sb, @Nonnull final SearchFilter filter) {
+        if (filter instanceof BaseFilter && ((BaseFilter) filter).formatted == null) {
+            ((BaseFilter) filter).appendTo(sb);
+        } else {
+            sb.append(filter.format());
+        }
+    }
+
+    // region Immutable
+    @Override
+    public String getFilter() {
+        return format();
+    }
+
+    @Override
+    public final void setFilter(final String filter) {
+        throw new UnsupportedOperationException("filters are immutable");
+    }
+
+    @Override
+    public final void setParameter(final int position, final Object value) {
+        throw new UnsupportedOperationException("filters are immutable");
+    }
+
+    @Override
+    public final void setParameter(final String name, final Object value) {
+        throw new UnsupportedOperationException("filters are immutable");
+    }
+
+    @Override
+    public final void setParameters(final Object[] values) {
+        throw new UnsupportedOperationException("filters are immutable");
+    }
+    // endregion Immutable
+
     @Override
     public boolean equals(final Object o) {
         // XXX: we ignore underlying equals because we don't care about the super object
-        return this == o || (o != null && Objects.equal(this.getClass(), o.getClass()));
+        if (this == o) { return true; }
+        if (o == null || !Objects.equal(this.getClass(), o.getClass())) { return false; }
+
+        // different hash codes mean the filters can't be equal
+        final BaseFilter that = (BaseFilter) o;
+        return this.hash == 0 || that.hash == 0 || this.hash == that.hash;
     }
 
     @Override
-    public int hashCode() {
+    public final int hashCode() {
         //XXX: we ignore the underlying hashCode because we don't care about the super object
-        return 1;
+        int hash = this.hash;
+        if (hash == 0) {
+            hash = 31 * this.getClass().getName().hashCode() + computeHashCode();
+            this.hash = hash;
+        }
+        return hash;
     }
 
+    /**
+     * @return the hash code of the state of this filter
+     */
+    protected abstract int computeHashCode();
+
     @Override
     public String toString() {
         return this.getClass().getSimpleName() + ": " + this.format();
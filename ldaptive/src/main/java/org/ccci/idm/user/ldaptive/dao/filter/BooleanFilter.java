@@ -3,6 +3,7 @@
 import com.google.common.base.Objects;
 import org.ldaptive.SearchFilter;
 
+import javax.annotation.Nonnull;
 import java.util.Arrays;
 
 public abstract class BooleanFilter extends BaseFilter {
@@ -12,19 +13,17 @@ public abstract class BooleanFilter extends BaseFilter {
 
     protected BooleanFilter(final String type, final SearchFilter... filters) {
         this.type = type != null ? type : "";
-        this.filters = filters != null ? filters : new SearchFilter[0];
+        this.filters = filters != null ? filters.clone() : new SearchFilter[0];
     }
 
     @Override
-    public String format() {
-        final StringBuilder sb = new StringBuilder((filters.length * 32) + 3);
+    protected void appendTo(@Nonnull final StringBuilder sb) {
         sb.append("(");
         sb.append(this.type);
         for (final SearchFilter filter : filters) {
-            sb.append(filter.format());
+            appendFilter(sb, filter);
         }
         sb.append(")");
-        return sb.toString();
     }
 
     @Override
@@ -37,7 +36,7 @@ public boolean equals(final Object o) {
     }
 
     @Override
-    public int hashCode() {
-        return Arrays.deepHashCode(new Object[]{super.hashCode(), this.type, this.filters});
+    protected int computeHashCode() {
+        return 31 * this.type.hashCode() + Arrays.hashCode(this.filters);
     }
 }
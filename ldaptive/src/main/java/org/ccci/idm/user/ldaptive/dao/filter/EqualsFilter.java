@@ -2,6 +2,8 @@
 
 import com.google.common.base.Objects;
 
+import javax.annotation.Nonnull;
+
 public class EqualsFilter extends FieldFilter {
     private final String value;
 
@@ -11,8 +13,8 @@ public EqualsFilter(final String field, final String value) {
     }
 
     @Override
-    public String format() {
-        return "(" + encodeValue(this.field) + "=" + encodeValue(this.value) + ")";
+    protected void appendTo(@Nonnull final StringBuilder sb) {
+        sb.append("(").append(encodeValue(this.field)).append("=").append(encodeValue(this.value)).append(")");
     }
 
     @Override
@@ -25,7 +27,7 @@ public boolean equals(final Object o) {
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hashCode(super.hashCode(), this.value);
+    protected int computeHashCode() {
+        return 31 * super.computeHashCode() + this.value.hashCode();
     }
 }
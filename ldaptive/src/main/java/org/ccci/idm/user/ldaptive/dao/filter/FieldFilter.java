@@ -19,7 +19,7 @@ public boolean equals(final Object o) {
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hashCode(super.hashCode(), this.field);
+    protected int computeHashCode() {
+        return this.field.hashCode();
     }
 }
@@ -2,6 +2,8 @@
 
 import com.google.common.base.Objects;
 
+import javax.annotation.Nonnull;
+
 public class LikeFilter extends FieldFilter {
     private final String pattern;
 
@@ -11,8 +13,10 @@ public LikeFilter(final String field, final String pattern) {
     }
 
     @Override
-    public String format() {
-        return "(" + encodeValue(this.field) + "=" + encodeLikeValue(this.pattern) + ")";
+    protected void appendTo(@Nonnull final StringBuilder sb) {
+        sb.append("(").append(encodeValue(this.field)).append("=");
+        encodeLikeValue(sb, this.pattern);
+        sb.append(")");
     }
 
     @Override
@@ -25,13 +29,12 @@ public boolean equals(final Object o) {
     }
 
     @Override
-    public int hashCode() {
-        return Objects.hashCode(super.hashCode(), this.pattern);
+    protected int computeHashCode() {
+        return 31 * super.computeHashCode() + this.pattern.hashCode();
     }
 
-    private static String encodeLikeValue(final String s) {
+    private static void encodeLikeValue(final StringBuilder sb, final String s) {
         final int len = s.length();
-        final StringBuilder sb = new StringBuilder(len);
         char ch;
         for (int i = 0; i < len; i++) {
             ch = s.charAt(i);
@@ -52,6 +55,5 @@ private static String encodeLikeValue(final String s) {
                     sb.append(ch);
             }
         }
-        return sb.toString();
     }
 }
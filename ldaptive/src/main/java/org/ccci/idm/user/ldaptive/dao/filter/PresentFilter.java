@@ -1,12 +1,14 @@
 package org.ccci.idm.user.ldaptive.dao.filter;
 
+import javax.annotation.Nonnull;
+
 public class PresentFilter extends FieldFilter {
     public PresentFilter(final String field) {
         super(field);
     }
 
     @Override
-    public String format() {
-        return "(" + encodeValue(this.field) + "=*)";
+    protected void appendTo(@Nonnull final StringBuilder sb) {
+        sb.append("(").append(encodeValue(this.field)).append("=*)");
     }
 }
@@ -35,6 +35,7 @@
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MFA_INTRUDER_LOCKED;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MFA_INTRUDER_RESET_TIME;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MFA_SECRET;
+import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_MODIFY_TIMESTAMP;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_OBJECTCLASS;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PASSWORD;
 import static org.ccci.idm.user.dao.ldap.Constants.LDAP_ATTR_PASSWORDCHANGEDTIME;
@@ -61,7 +62,11 @@
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Sets;
 import org.ccci.idm.user.Group;
 import org.ccci.idm.user.User;
@@ -90,10 +95,17 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public abstract class AbstractUserLdapEntryMapper<O extends User> implements LdapEntryMapper<O> {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractUserLdapEntryMapper.class);
 
+    /**
+     * The modifyTimestamp of the entry a user was loaded from, used to detect concurrent updates.
+     */
+    public static final String META_MODIFY_TIMESTAMP = "LDAPTIVE_MODIFY_TIMESTAMP";
+
     private static final String META_DEACTIVATED_UID = "LDAPTIVE_DEACTIVATED_UID";
     private static final String META_OBJECT_CLASSES = "LDAPTIVE_OBJECT_CLASSES";
 
@@ -115,8 +127,14 @@ public void setDnResolver(final DnResolver dnResolver) {
 
     public void setBaseGroupDn(@Nullable final Dn dn) {
         baseGroupDn = dn;
+        groupCache.invalidateAll();
     }
 
+    // canonical group for each raw group DN, absent if the DN is invalid or not under the baseGroupDn
+    private final Cache<String, Optional<Group>> groupCache = CacheBuilder.newBuilder().maximumSize(10000).build();
+    // users commonly share the exact same set of groups
+    private final Interner<ImmutableSet<Group>> groupSets = Interners.newWeakInterner();
+
     public void setBaseGroupDnString(@Nullable final String dn) {
         setBaseGroupDn(dn != null ? DnUtils.toDn(dn) : null);
     }
@@ -245,6 +263,12 @@ public void map(final LdapEntry entry, final O user) {
 
         // capture meta-data that needs to be tracked
         user.setImplMeta(META_OBJECT_CLASSES, Sets.newHashSet(getStringValues(entry, LDAP_ATTR_OBJECTCLASS)));
+        final String modifyTimestamp = getStringValue(entry, LDAP_ATTR_MODIFY_TIMESTAMP);
+        if (modifyTimestamp != null) {
+            user.setImplMeta(META_MODIFY_TIMESTAMP, modifyTimestamp);
+        } else {
+            user.removeImplMeta(META_MODIFY_TIMESTAMP);
+        }
 
         // Base attributes
         user.setGuid(this.getStringValue(entry, LDAP_ATTR_GUID));
@@ -367,12 +391,10 @@ protected final LdapAttribute attr(final String name, final ReadableInstant... v
     }
 
     protected LdapAttribute attrObjectClass(final O user) {
-        // get any existing object classes
+        // get any existing object classes, copying them because the meta-data set can be shared between clones
         @SuppressWarnings("unchecked")
-        HashSet<String> objectClasses = (HashSet<String>) user.getImplMeta(META_OBJECT_CLASSES, HashSet.class);
-        if (objectClasses == null) {
-            objectClasses = Sets.newHashSet();
-        }
+        final HashSet<String> existing = (HashSet<String>) user.getImplMeta(META_OBJECT_CLASSES, HashSet.class);
+        final Set<String> objectClasses = existing != null ? Sets.newHashSet(existing) : Sets.newHashSet();
 
         // update objectClasses
         objectClasses.addAll(LDAP_OBJECTCLASSES_USER);
@@ -441,14 +463,16 @@ protected final Collection<Group> getGroupValues(@Nonnull final LdapEntry entry,
 
         final ImmutableSet.Builder<Group> groups = ImmutableSet.builder();
         for (final String rawDn : getStringValues(entry, attribute)) {
-            final Dn dn = DnUtils.toDnSafe(rawDn);
-            if (dn != null && dn.isDescendantOfOrEqualTo(baseGroupDn)) {
-                if (dn.getComponents().size() > 0) {
-                    groups.add(dn.asGroup());
-                }
+            Optional<Group> group = groupCache.getIfPresent(rawDn);
+            if (group == null) {
+                final Dn dn = DnUtils.toDnSafe(rawDn);
+                group = dn != null && dn.isDescendantOfOrEqualTo(baseGroupDn) && dn.getComponents().size() > 0 ?
+                        Optional.of(dn.asGroup()) : Optional.empty();
+                groupCache.put(rawDn, group);
             }
+            group.ifPresent(groups::add);
         }
-        return groups.build();
+        return groupSets.intern(groups.build());
     }
 
     protected final ReadableInstant getTimeValue(final LdapEntry entry, final String attribute) {
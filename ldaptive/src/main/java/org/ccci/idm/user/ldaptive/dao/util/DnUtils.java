@@ -1,5 +1,7 @@
 package org.ccci.idm.user.ldaptive.dao.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.ccci.idm.user.ldaptive.Dn;
@@ -9,11 +11,16 @@
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class DnUtils {
     private static final String DELIMITER = ",";
     private static final String VALUE_DELIMITER = "=";
 
+    // parsed DNs are immutable, so we share a single instance for frequently parsed DNs such as group DNs
+    private static final Cache<String, Dn> DN_CACHE = CacheBuilder.newBuilder().maximumSize(10000).build();
+
     /**
      * Parse a DN string into a {@link Dn object}.
      *
@@ -27,6 +34,121 @@ public static Dn toDn(@Nullable final String rawDn) {
             return Dn.ROOT;
         }
 
+        Dn dn = DN_CACHE.getIfPresent(rawDn);
+        if (dn == null) {
+            dn = parseDn(rawDn);
+            DN_CACHE.put(rawDn, dn);
+        }
+        return dn;
+    }
+
+    /**
+     * Single pass RFC 4514 DN parser. Components are written directly into an array in root first order. BER encoded
+     * (#hex) values are rare, so those DNs are delegated to ldaptive's {@link DnParser}.
+     */
+    @Nonnull
+    private static Dn parseDn(@Nonnull final String rawDn) {
+        final int length = rawDn.length();
+        Dn.Component[] components = new Dn.Component[8];
+        int size = 0;
+        final StringBuilder value = new StringBuilder(length);
+
+        int pos = 0;
+        while (pos < length) {
+            // parse the attribute type
+            final int equals = rawDn.indexOf('=', pos);
+            if (equals == -1) {
+                throw new IllegalArgumentException("Invalid RDN: no '=' found in " + rawDn.substring(pos));
+            }
+            final String type = rawDn.substring(pos, equals).trim();
+            if (type.isEmpty()) {
+                throw new IllegalArgumentException("Invalid RDN: attribute name is empty");
+            }
+
+            // skip leading whitespace of the value
+            pos = equals + 1;
+            while (pos < length && rawDn.charAt(pos) <= ' ') {
+                pos++;
+            }
+            if (pos < length && rawDn.charAt(pos) == '#') {
+                return parseDnWithLdaptive(rawDn);
+            }
+
+            // parse the attribute value, trailing unescaped whitespace is dropped
+            value.setLength(0);
+            int significant = 0;
+            while (pos < length) {
+                final char c = rawDn.charAt(pos);
+                if (c == ',' || c == '+') {
+                    break;
+                } else if (c == '\\') {
+                    pos = appendEscaped(rawDn, pos, value);
+                    significant = value.length();
+                } else {
+                    value.append(c);
+                    pos++;
+                    if (c > ' ') {
+                        significant = value.length();
+                    }
+                }
+            }
+            value.setLength(significant);
+
+            // store the component, we reverse the order when creating the Dn
+            if (size == components.length) {
+                components = Arrays.copyOf(components, size * 2);
+            }
+            components[size++] = new Dn.Component(type, value.toString());
+
+            // skip the separator
+            pos++;
+        }
+
+        final Dn.Component[] reversed = new Dn.Component[size];
+        for (int i = 0; i < size; i++) {
+            reversed[i] = components[size - 1 - i];
+        }
+        return new Dn(reversed);
+    }
+
+    /**
+     * Decode the escape sequence starting at pos, consecutive hex escapes are decoded together as UTF-8.
+     *
+     * @return the position after the escape sequence
+     */
+    private static int appendEscaped(@Nonnull final String rawDn, final int start,
+                                     @Nonnull final StringBuilder value) {
+        final int length = rawDn.length();
+        if (start + 1 >= length) {
+            throw new IllegalArgumentException("Invalid RDN: DN ends with an escape character");
+        }
+
+        final char next = rawDn.charAt(start + 1);
+        if (Character.digit(next, 16) == -1) {
+            value.append(next);
+            return start + 2;
+        }
+
+        final byte[] bytes = new byte[(length - start) / 3];
+        int count = 0;
+        int pos = start;
+        while (pos + 2 < length && rawDn.charAt(pos) == '\\' && Character.digit(rawDn.charAt(pos + 1), 16) != -1) {
+            final int low = Character.digit(rawDn.charAt(pos + 2), 16);
+            if (low == -1) {
+                throw new IllegalArgumentException("Invalid RDN: invalid hex escape in " + rawDn);
+            }
+            bytes[count++] = (byte) ((Character.digit(rawDn.charAt(pos + 1), 16) << 4) | low);
+            pos += 3;
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("Invalid RDN: invalid hex escape in " + rawDn);
+        }
+        value.append(new String(bytes, 0, count, StandardCharsets.UTF_8));
+        return pos;
+    }
+
+    @Nonnull
+    private static Dn parseDnWithLdaptive(@Nonnull final String rawDn) {
         final ImmutableList.Builder<Dn.Component> builder = ImmutableList.builder();
         for (final LdapAttribute attribute : Lists.reverse(DnParser.convertDnToAttributes(rawDn))) {
             builder.add(new Dn.Component(attribute.getName(), attribute.getStringValue()));
@@ -1,9 +1,23 @@
 package org.ccci.idm.user.ldaptive.dao.util;
 
+import org.ldaptive.AttributeModification;
+import org.ldaptive.AttributeModificationType;
 import org.ldaptive.Connection;
+import org.ldaptive.LdapAttribute;
+import org.ldaptive.LdapEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 public class LdapUtils {
     private static final Logger LOG = LoggerFactory.getLogger(LdapUtils.class);
 
@@ -22,4 +36,67 @@ public static void closeConnection(final Connection conn) {
             }
         }
     }
+
+    /**
+     * Compute the modifications required to turn the original entry into the updated entry. Only attributes in the
+     * mask are considered and attributes that didn't change are skipped. Attributes with multiple values are updated
+     * using ADD/REMOVE modifications for just the changed values, all other attributes are replaced.
+     *
+     * @param original the original entry, when this is null every attribute in the mask is replaced
+     * @param updated  the updated entry
+     * @param mask     the names of the attributes to update
+     * @return the modifications, this is empty if nothing changed
+     */
+    @Nonnull
+    public static List<AttributeModification> computeModifications(@Nullable final LdapEntry original,
+                                                                   @Nonnull final LdapEntry updated,
+                                                                   @Nonnull final Set<String> mask) {
+        final List<AttributeModification> modifications = new ArrayList<>();
+        for (final LdapAttribute attribute : updated.getAttributes()) {
+            if (!mask.contains(attribute.getName())) {
+                continue;
+            }
+
+            if (original == null || attribute.isBinary()) {
+                modifications.add(new AttributeModification(AttributeModificationType.REPLACE, attribute));
+                continue;
+            }
+
+            final LdapAttribute originalAttribute = original.getAttribute(attribute.getName());
+            final Set<String> oldValues = originalAttribute != null ?
+                    new LinkedHashSet<>(originalAttribute.getStringValues()) : Collections.emptySet();
+            final Set<String> newValues = new LinkedHashSet<>(attribute.getStringValues());
+            if (oldValues.equals(newValues)) {
+                continue;
+            }
+
+            if (!oldValues.isEmpty() && !newValues.isEmpty() && (oldValues.size() > 1 || newValues.size() > 1)) {
+                final Set<String> removed = new LinkedHashSet<>(oldValues);
+                removed.removeAll(newValues);
+                final Set<String> added = new LinkedHashSet<>(newValues);
+                added.removeAll(oldValues);
+
+                // values only differing in case may be considered equal by the directory, so we replace those
+                if (Collections.disjoint(lowerCase(removed), lowerCase(added))) {
+                    if (!removed.isEmpty()) {
+                        modifications.add(new AttributeModification(AttributeModificationType.REMOVE,
+                                new LdapAttribute(attribute.getName(), removed.toArray(new String[0]))));
+                    }
+                    if (!added.isEmpty()) {
+                        modifications.add(new AttributeModification(AttributeModificationType.ADD,
+                                new LdapAttribute(attribute.getName(), added.toArray(new String[0]))));
+                    }
+                    continue;
+                }
+            }
+
+            modifications.add(new AttributeModification(AttributeModificationType.REPLACE, attribute));
+        }
+        return modifications;
+    }
+
+    @Nonnull
+    private static Set<String> lowerCase(@Nonnull final Set<String> values) {
+        return values.stream().map(value -> value.toLowerCase(Locale.US)).collect(Collectors.toSet());
+    }
 }
@@ -9,6 +9,7 @@
 import static org.junit.Assert.assertThat;
 
 import org.junit.Test;
+import org.springframework.util.SerializationUtils;
 
 public class DnTest {
     private final static Dn ROOT = Dn.ROOT.child("dc", "org").child("dc", "ccci");
@@ -94,4 +95,21 @@ public void verifyCompareTo() throws Exception {
         assertThat(ROOT.compareTo(CHILD1), is(lessThan(0)));
         assertThat(CHILD1.compareTo(ROOT), is(greaterThan(0)));
     }
+
+    @Test
+    public void verifyIsDescendantOfCaseInsensitive() throws Exception {
+        final Dn child = Dn.ROOT.child("DC", "ORG").child("dc", "CCCI").child("ou", "child1");
+        assertThat(child.isDescendantOf(ROOT), is(true));
+        assertThat(child.isDescendantOfOrEqualTo(CHILD1), is(true));
+        assertThat(child.compareTo(CHILD1), is(0));
+    }
+
+    @Test
+    public void verifySerialization() throws Exception {
+        final Dn dn = (Dn) SerializationUtils.deserialize(SerializationUtils.serialize(CHILD1));
+        assertEquals(CHILD1, dn);
+        assertEquals(CHILD1.hashCode(), dn.hashCode());
+        assertEquals(CHILD1.getComponents().get(2).hashCode(), dn.getComponents().get(2).hashCode());
+        assertThat(dn.isDescendantOf(ROOT), is(true));
+    }
 }
@@ -64,6 +64,11 @@ private Object compoundExpressions() {
                 new Object[] {FIRST_NAME.eq("F").and(LAST_NAME.eq("L")), "(&(givenName=F)(sn=L))"},
                 new Object[] {FIRST_NAME.eq("F").or(LAST_NAME.eq("L")), "(|(givenName=F)(sn=L))"},
                 new Object[] {FIRST_NAME.eq("F").not(), "(!(givenName=F))"},
+                new Object[] {GUID.eq("A").or(GUID.eq("B")),
+                        "(|(thekeyGuid=A)(thekeyGuid=B)(&(|(ccciGuid=A)(ccciGuid=B))(!(thekeyGuid=*))))"},
+                new Object[] {FIRST_NAME.eq("F").or(GUID.eq("A"), GUID.eq("B")),
+                        "(|(givenName=F)" +
+                                "(|(thekeyGuid=A)(thekeyGuid=B)(&(|(ccciGuid=A)(ccciGuid=B))(!(thekeyGuid=*)))))"},
         };
     }
 
@@ -6,10 +6,12 @@
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.ccci.idm.user.dao.AbstractUserDaoTest;
+import org.ccci.idm.user.dao.UserDao;
 import org.ccci.idm.user.ldaptive.dao.exception.LdaptiveDaoException;
 import org.junit.Before;
 import org.junit.Test;
@@ -80,4 +82,38 @@ public void testStreamSearchRequestCantOpenConnection() throws Exception {
         verify(connection).open();
         verify(connection, never()).close();
     }
+
+    @Test
+    public void testSessionReusesConnection() throws Exception {
+        when(connection.isOpen()).thenReturn(true);
+
+        try (UserDao.Session ignored = dao.session()) {
+            try (UserDao.Session nested = dao.session()) {
+                dao.streamSearchRequest(REQUEST, 1).close();
+            }
+            dao.streamSearchRequest(REQUEST, 1).close();
+            verify(connection, never()).close();
+        }
+        verify(connectionFactory, times(1)).getConnection();
+        verify(connection, times(1)).open();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    public void testSessionStreamFailsAfterSessionClosed() throws Exception {
+        when(connection.isOpen()).thenReturn(true);
+
+        final Stream<LdapEntry> stream;
+        try (UserDao.Session ignored = dao.session()) {
+            stream = dao.streamSearchRequest(REQUEST, 1);
+        }
+        try {
+            stream.iterator().hasNext();
+            fail("The stream shouldn't read from the connection of a closed session");
+        } catch (IllegalStateException expected) {
+        } finally {
+            stream.close();
+        }
+        verify(connection, times(1)).close();
+    }
 }
@@ -0,0 +1,90 @@
+package org.ccci.idm.user.ldaptive.dao;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ParallelMappingIteratorTest {
+    private static final List<Integer> SOURCE =
+            IntStream.range(0, 1000).boxed().collect(ImmutableList.toImmutableList());
+    private static final List<String> EXPECTED =
+            SOURCE.stream().map(String::valueOf).collect(ImmutableList.toImmutableList());
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+    private static String slowToString(final Integer value) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return String.valueOf(value);
+    }
+
+    @Test
+    public void testOrdered() {
+        try (ParallelMappingIterator<Integer, String> iterator = new ParallelMappingIterator<>(SOURCE.iterator(),
+                ParallelMappingIteratorTest::slowToString, executor, 7, 4, true)) {
+            assertEquals(EXPECTED, Lists.newArrayList(iterator));
+        }
+    }
+
+    @Test
+    public void testUnordered() {
+        try (ParallelMappingIterator<Integer, String> iterator = new ParallelMappingIterator<>(SOURCE.iterator(),
+                ParallelMappingIteratorTest::slowToString, executor, 7, 4, false)) {
+            assertThat(Lists.newArrayList(iterator), containsInAnyOrder(EXPECTED.toArray()));
+        }
+    }
+
+    @Test
+    public void testEmptySource() {
+        try (ParallelMappingIterator<Integer, String> iterator = new ParallelMappingIterator<>(
+                ImmutableList.<Integer>of().iterator(), String::valueOf, executor, 10, 2, true)) {
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testMappingExceptionIsPropagated() {
+        try (ParallelMappingIterator<Integer, String> iterator = new ParallelMappingIterator<>(SOURCE.iterator(),
+                i -> {
+                    if (i == 500) {
+                        throw new IllegalArgumentException();
+                    }
+                    return String.valueOf(i);
+                }, executor, 10, 2, true)) {
+            final List<String> mapped = SOURCE.stream().limit(500).map(i -> iterator.next())
+                    .collect(Collectors.toList());
+            assertEquals(EXPECTED.subList(0, 500), mapped);
+            iterator.next();
+            fail();
+        } catch (final IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.ccci.idm.user.ldaptive.dao;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ldaptive.LdapEntry;
+import org.ldaptive.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class PartitionedSearchSpliteratorTest {
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+
+    private List<SearchRequest> partitions;
+    private List<String> expected;
+
+    @Before
+    public void setup() {
+        partitions = new ArrayList<>();
+        expected = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            partitions.add(new SearchRequest("ou=partition" + i));
+            for (int j = 0; j < 10; j++) {
+                expected.add("cn=entry" + j + ",ou=partition" + i);
+            }
+        }
+    }
+
+    private Stream<LdapEntry> search(final SearchRequest request) {
+        opened.incrementAndGet();
+        return IntStream.range(0, 10).mapToObj(j -> new LdapEntry("cn=entry" + j + "," + request.getBaseDn()))
+                .onClose(closed::incrementAndGet);
+    }
+
+    @Test
+    public void testSequentialScan() {
+        final PartitionedSearchSpliterator spliterator = new PartitionedSearchSpliterator(partitions, this::search);
+        try (Stream<LdapEntry> entries = StreamSupport.stream(spliterator, false).onClose(spliterator::close)) {
+            assertEquals(expected, entries.map(LdapEntry::getDn).collect(Collectors.toList()));
+        }
+        assertEquals(8, opened.get());
+        assertEquals(8, closed.get());
+    }
+
+    @Test
+    public void testParallelScan() {
+        final PartitionedSearchSpliterator spliterator = new PartitionedSearchSpliterator(partitions, this::search);
+        try (Stream<LdapEntry> entries = StreamSupport.stream(spliterator, true).onClose(spliterator::close)) {
+            assertThat(entries.map(LdapEntry::getDn).collect(Collectors.toList()),
+                    containsInAnyOrder(expected.toArray()));
+        }
+        assertEquals(8, opened.get());
+        assertEquals(8, closed.get());
+    }
+
+    @Test
+    public void testSplitDoesNotDuplicatePartitions() {
+        final PartitionedSearchSpliterator spliterator = new PartitionedSearchSpliterator(partitions, this::search);
+        final Spliterator<LdapEntry> split = spliterator.trySplit();
+        assertNotNull(split);
+
+        final List<String> dns = new ArrayList<>();
+        spliterator.tryAdvance(e -> dns.add(e.getDn()));
+        // the in-progress partition stays with this spliterator
+        final Spliterator<LdapEntry> split2 = spliterator.trySplit();
+        assertNotNull(split2);
+
+        spliterator.forEachRemaining(e -> dns.add(e.getDn()));
+        split.forEachRemaining(e -> dns.add(e.getDn()));
+        split2.forEachRemaining(e -> dns.add(e.getDn()));
+        assertThat(dns, containsInAnyOrder(expected.toArray()));
+        assertNull(spliterator.trySplit());
+    }
+
+    @Test
+    public void testCloseReleasesOpenPartitions() {
+        final PartitionedSearchSpliterator spliterator = new PartitionedSearchSpliterator(partitions, this::search);
+        final Spliterator<LdapEntry> split = spliterator.trySplit();
+        assertNotNull(split);
+        spliterator.tryAdvance(e -> {});
+        split.tryAdvance(e -> {});
+        assertEquals(2, opened.get());
+        assertEquals(0, closed.get());
+
+        spliterator.close();
+        assertEquals(2, closed.get());
+    }
+}
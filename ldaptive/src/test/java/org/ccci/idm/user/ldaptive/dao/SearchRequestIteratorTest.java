@@ -5,12 +5,14 @@
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.ccci.idm.user.dao.exception.InterruptedDaoException;
 import org.ccci.idm.user.ldaptive.dao.exception.LdaptiveDaoException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.ldaptive.LdapEntry;
@@ -27,6 +29,8 @@
 
 import javax.naming.InterruptedNamingException;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SearchRequestIteratorTest {
     private final byte[] COOKIE = {0x1a};
@@ -37,14 +41,21 @@ public class SearchRequestIteratorTest {
     private SearchOperation searchOperation;
     private SearchRequest searchRequest;
     private SearchRequestIterator iterator;
+    private ExecutorService executor;
 
     @Before
     public void createIterator() {
+        executor = Executors.newSingleThreadExecutor();
         searchOperation = mock(SearchOperation.class);
         searchRequest = mock(SearchRequest.class);
         iterator = new SearchRequestIterator(searchOperation, searchRequest, 5);
     }
 
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
     @Test
     public void testNoResults() throws Exception {
         whenSearching().thenReturn(response());
@@ -111,6 +122,83 @@ public void testInterruptedLdapException() throws Exception {
         verifyRawSearches(1);
     }
 
+    @Test
+    public void testPrefetchMultiplePages() throws Exception {
+        whenSearching().thenReturn(response(true, ENTRY1)).thenReturn(response(true, ENTRY2))
+                .thenReturn(response(ENTRY3));
+
+        try (SearchRequestIterator prefetching = prefetchingIterator(1)) {
+            assertEquals(ENTRY1, prefetching.next());
+            assertEquals(ENTRY2, prefetching.next());
+            assertEquals(ENTRY3, prefetching.next());
+            assertFalse(prefetching.hasNext());
+        }
+        verifyRawSearches(3);
+    }
+
+    @Test
+    public void testPrefetchLdapException() throws Exception {
+        whenSearching().thenReturn(response(true, ENTRY1)).thenThrow(LdapException.class);
+
+        try (SearchRequestIterator prefetching = prefetchingIterator(2)) {
+            assertEquals(ENTRY1, prefetching.next());
+            try {
+                prefetching.next();
+                fail();
+            } catch (LdaptiveDaoException expected) { }
+        }
+        verifyRawSearches(2);
+    }
+
+    @Test(timeout = 5000)
+    public void testPrefetchError() throws Exception {
+        whenSearching().thenReturn(response(true, ENTRY1)).thenThrow(new NoClassDefFoundError());
+
+        try (SearchRequestIterator prefetching = prefetchingIterator(2)) {
+            assertEquals(ENTRY1, prefetching.next());
+            try {
+                prefetching.next();
+                fail();
+            } catch (NoClassDefFoundError expected) { }
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testPrefetchInterrupted() throws Exception {
+        whenSearching().thenAnswer(i -> response(true, ENTRY1));
+
+        try (SearchRequestIterator prefetching = prefetchingIterator(1)) {
+            assertEquals(ENTRY1, prefetching.next());
+
+            // interrupt the prefetch task while it is waiting to queue a page, the consumer fails instead of blocking
+            executor.shutdownNow();
+            try {
+                while (true) {
+                    assertEquals(ENTRY1, prefetching.next());
+                }
+            } catch (InterruptedDaoException expected) { }
+        }
+    }
+
+    @Test
+    public void testPrefetchStopsWhenClosed() throws Exception {
+        whenSearching().thenAnswer(i -> response(true, ENTRY1));
+
+        final SearchRequestIterator prefetching = prefetchingIterator(1);
+        assertEquals(ENTRY1, prefetching.next());
+        prefetching.close();
+
+        // no more pages are loaded once the iterator has been closed
+        final int searches = mockingDetails(searchOperation).getInvocations().size();
+        Thread.sleep(200);
+        assertEquals(searches, mockingDetails(searchOperation).getInvocations().size());
+        assertTrue(searches <= 3);
+    }
+
+    private SearchRequestIterator prefetchingIterator(final int pages) {
+        return new SearchRequestIterator(searchOperation, searchRequest, 5, pages, executor);
+    }
+
     private OngoingStubbing<Response<SearchResult>> whenSearching() throws Exception {
         return when(searchOperation.execute(searchRequest));
     }
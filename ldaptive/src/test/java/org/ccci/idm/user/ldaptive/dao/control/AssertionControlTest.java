@@ -0,0 +1,35 @@
+package org.ccci.idm.user.ldaptive.dao.control;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class AssertionControlTest {
+    @Test
+    public void verifyEncode() throws Exception {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(new byte[]{(byte) 0xA3, 0x22, 0x04, 0x0F});
+        expected.write("modifyTimestamp".getBytes(StandardCharsets.UTF_8));
+        expected.write(new byte[]{0x04, 0x0F});
+        expected.write("20200101000000Z".getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(expected.toByteArray(),
+                new AssertionControl("modifyTimestamp", "20200101000000Z").encode());
+    }
+
+    @Test
+    public void verifyEncodeLongValue() throws Exception {
+        final byte[] encoded = new AssertionControl("cn", Strings.repeat("a", 200)).encode();
+        assertEquals(210, encoded.length);
+        // lengths over 127 bytes use the long form
+        assertArrayEquals(new byte[]{(byte) 0xA3, (byte) 0x81, (byte) 0xCF, 0x04, 0x02},
+                Arrays.copyOfRange(encoded, 0, 5));
+        assertArrayEquals(new byte[]{0x04, (byte) 0x81, (byte) 0xC8}, Arrays.copyOfRange(encoded, 7, 10));
+    }
+}
@@ -0,0 +1,65 @@
+package org.ccci.idm.user.ldaptive.dao.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.ldaptive.SearchFilter;
+
+import java.util.Map;
+
+public class BaseFilterTest {
+    private static BaseFilter filter(final String cn) {
+        return new EqualsFilter("objectClass", "person")
+                .and(new LikeFilter("cn", cn + "*").not(), new PresentFilter("mail").or(new EqualsFilter("sn", cn)));
+    }
+
+    @Test
+    public void testFormat() {
+        final BaseFilter filter = filter("a(b)");
+        assertEquals("(&(objectClass=person)(!(cn=a\\28b\\29*))(|(mail=*)(sn=a\\28b\\29)))", filter.format());
+        assertSame(filter.format(), filter.format());
+        assertEquals(filter.format(), filter.getFilter());
+    }
+
+    @Test
+    public void testNestedFormat() {
+        final BaseFilter nested = new EqualsFilter("sn", "Doe");
+        assertEquals("(sn=Doe)", nested.format());
+        assertEquals("(&(sn=Doe)(givenName=John))", nested.and(new EqualsFilter("givenName", "John")).format());
+    }
+
+    @Test
+    public void testStructuralEquality() {
+        assertEquals(filter("a"), filter("a"));
+        assertEquals(filter("a").hashCode(), filter("a").hashCode());
+        assertNotEquals(filter("a"), filter("b"));
+        assertNotEquals(new EqualsFilter("cn", "a"), new LikeFilter("cn", "a"));
+        assertNotEquals(new EqualsFilter("cn", "a"), new EqualsFilter("sn", "a"));
+        assertNotEquals(new AndFilter(new PresentFilter("cn")), new OrFilter(new PresentFilter("cn")));
+
+        final Map<BaseFilter, String> cache = ImmutableMap.of(filter("a"), "a", filter("b"), "b");
+        assertEquals("a", cache.get(filter("a")));
+        assertEquals("b", cache.get(filter("b")));
+    }
+
+    @Test
+    public void testChildrenAreCopied() {
+        final SearchFilter[] children = {new PresentFilter("cn"), new PresentFilter("sn")};
+        final AndFilter filter = new AndFilter(children);
+        children[1] = new PresentFilter("mail");
+        assertEquals("(&(cn=*)(sn=*))", filter.format());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetFilterIsUnsupported() {
+        new PresentFilter("cn").setFilter("(sn=*)");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetParameterIsUnsupported() {
+        new PresentFilter("cn").setParameter("name", "value");
+    }
+}
@@ -1,10 +1,16 @@
 package org.ccci.idm.user.ldaptive.dao.util;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
+import com.google.common.collect.Lists;
 import org.ccci.idm.user.ldaptive.Dn;
 import org.junit.Test;
+import org.ldaptive.DnParser;
+
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class DnUtilsTest {
     @Test
@@ -28,4 +34,46 @@ public void verifyParse() throws Exception {
         assertThat(DnUtils.toDn(rawDn.toUpperCase()), is(expected));
         assertThat(DnUtils.toDn(rawDn.toLowerCase()), is(expected));
     }
+
+    @Test
+    public void verifyParsedDnsAreShared() throws Exception {
+        final String rawDn = "cn=shared,ou=groups,dc=org";
+        assertSame(DnUtils.toDn(rawDn), DnUtils.toDn(rawDn));
+    }
+
+    @Test
+    public void verifyParseMatchesLdaptive() throws Exception {
+        final String[] rawDns = {
+                "cn=John\\, Doe,ou=people,dc=org",
+                "cn=a\\+b\\=c\\\\d,dc=org",
+                "cn=\\23hash,dc=org",
+                "cn=J\\C3\\BCrgen,dc=org",
+                " cn = spaced value , dc = org ",
+                "cn=a+sn=b,ou=groups,dc=org",
+                "CN=Upper,OU=Groups,DC=ORG",
+        };
+
+        for (final String rawDn : rawDns) {
+            final List<Dn.Component> expected = Lists.reverse(DnParser.convertDnToAttributes(rawDn)).stream()
+                    .map(a -> new Dn.Component(a.getName(), a.getStringValue()))
+                    .collect(Collectors.toList());
+            final Dn dn = DnUtils.toDn(rawDn);
+            assertThat(rawDn, dn, is(new Dn(expected)));
+            for (int i = 0; i < expected.size(); i++) {
+                assertThat(rawDn, dn.getComponents().get(i).type, is(expected.get(i).type));
+                assertThat(rawDn, dn.getComponents().get(i).value, is(expected.get(i).value));
+            }
+        }
+    }
+
+    @Test
+    public void verifyParseEscapes() throws Exception {
+        final Dn dn = DnUtils.toDn("cn=J\\C3\\BCrgen\\, Jr\\ ,dc=org");
+        assertThat(dn.getName(), is("J\u00fcrgen, Jr "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void verifyParseInvalidEscape() throws Exception {
+        DnUtils.toDn("cn=abc\\4");
+    }
 }
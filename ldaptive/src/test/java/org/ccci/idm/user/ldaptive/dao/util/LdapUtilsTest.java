@@ -0,0 +1,83 @@
+package org.ccci.idm.user.ldaptive.dao.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+import org.ldaptive.AttributeModification;
+import org.ldaptive.AttributeModificationType;
+import org.ldaptive.LdapAttribute;
+import org.ldaptive.LdapEntry;
+
+import java.util.List;
+import java.util.Set;
+
+public class LdapUtilsTest {
+    private static final Set<String> MASK = ImmutableSet.of("cn", "sn", "domainVisited", "proxyAddresses");
+
+    private static LdapEntry entry(final LdapAttribute... attributes) {
+        final LdapEntry entry = new LdapEntry();
+        entry.addAttribute(attributes);
+        return entry;
+    }
+
+    @Test
+    public void verifyReplaceWithoutOriginal() {
+        final LdapEntry updated = entry(new LdapAttribute("cn", "a"), new LdapAttribute("sn", "b"),
+                new LdapAttribute("other", "c"));
+
+        final List<AttributeModification> modifications = LdapUtils.computeModifications(null, updated, MASK);
+        assertEquals(2, modifications.size());
+        for (final AttributeModification modification : modifications) {
+            assertEquals(AttributeModificationType.REPLACE, modification.getAttributeModificationType());
+        }
+    }
+
+    @Test
+    public void verifyUnchangedAttributesAreSkipped() {
+        final LdapEntry original = entry(new LdapAttribute("cn", "a"), new LdapAttribute("domainVisited", "x", "y"));
+        final LdapEntry updated = entry(new LdapAttribute("cn", "a"), new LdapAttribute("domainVisited", "y", "x"));
+
+        assertTrue(LdapUtils.computeModifications(original, updated, MASK).isEmpty());
+    }
+
+    @Test
+    public void verifySingleValuedAttributesAreReplaced() {
+        final LdapEntry original = entry(new LdapAttribute("cn", "a"), new LdapAttribute("sn", "b"));
+        final LdapEntry updated = entry(new LdapAttribute("cn", "a"), new LdapAttribute("sn"));
+
+        final List<AttributeModification> modifications = LdapUtils.computeModifications(original, updated, MASK);
+        assertEquals(1, modifications.size());
+        assertEquals(AttributeModificationType.REPLACE, modifications.get(0).getAttributeModificationType());
+        assertEquals("sn", modifications.get(0).getAttribute().getName());
+        assertEquals(0, modifications.get(0).getAttribute().size());
+    }
+
+    @Test
+    public void verifyMultiValuedAttributesUseDeltas() {
+        final LdapEntry original = entry(new LdapAttribute("domainVisited", "x", "y", "z"));
+        final LdapEntry updated = entry(new LdapAttribute("domainVisited", "x", "z", "w"));
+
+        final List<AttributeModification> modifications = LdapUtils.computeModifications(original, updated, MASK);
+        assertEquals(2, modifications.size());
+        assertEquals(AttributeModificationType.REMOVE, modifications.get(0).getAttributeModificationType());
+        assertEquals(ImmutableList.of("y"),
+                ImmutableList.copyOf(modifications.get(0).getAttribute().getStringValues()));
+        assertEquals(AttributeModificationType.ADD, modifications.get(1).getAttributeModificationType());
+        assertEquals(ImmutableList.of("w"),
+                ImmutableList.copyOf(modifications.get(1).getAttribute().getStringValues()));
+    }
+
+    @Test
+    public void verifyCaseOnlyChangesAreReplaced() {
+        final LdapEntry original = entry(new LdapAttribute("proxyAddresses", "a@example.com", "b@example.com"));
+        final LdapEntry updated = entry(new LdapAttribute("proxyAddresses", "A@example.com", "b@example.com"));
+
+        final List<AttributeModification> modifications = LdapUtils.computeModifications(original, updated, MASK);
+        assertEquals(1, modifications.size());
+        assertEquals(AttributeModificationType.REPLACE, modifications.get(0).getAttributeModificationType());
+        assertEquals(2, modifications.get(0).getAttribute().size());
+    }
+}
@@ -0,0 +1,264 @@
+package org.ccci.idm.user.okta.dao
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.okta.sdk.client.Client
+import org.ccci.idm.user.okta.OktaGroup
+import org.joda.time.Duration
+import org.joda.time.Instant
+import org.joda.time.ReadableDuration
+import org.joda.time.format.ISODateTimeFormat
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.locks.ReentrantLock
+import com.okta.sdk.resource.group.Group as OktaSdkGroup
+
+private val LOG = LoggerFactory.getLogger(OktaGroupMembershipCache::class.java)
+private val OKTA_TIMESTAMP = ISODateTimeFormat.dateTime().withZoneUTC()
+private const val GROUP_TYPE_BUILT_IN = "BUILT_IN"
+
+/**
+ * Maintains a snapshot of the group memberships of all Okta users so group memberships can be resolved for many users
+ * without an API request per user.
+ *
+ * The snapshot is loaded in full on first use. After that all refreshes happen on the [executor] while the current
+ * snapshot keeps serving lookups. At most every [refreshInterval] only the members of groups whose membership changed
+ * since the last refresh are reloaded, and every [fullRefreshInterval] a new snapshot is loaded and swapped in once it
+ * is complete.
+ *
+ * Built-in groups (e.g. Everyone) and groups with more than [maxIncrementalGroupSize] members change whenever a user
+ * is created, so they are not reloaded by incremental refreshes. Their memberships are updated by the next full
+ * refresh.
+ */
+class OktaGroupMembershipCache(private val okta: Client) {
+    var refreshInterval: ReadableDuration = Duration.standardMinutes(1)
+    var fullRefreshInterval: ReadableDuration = Duration.standardHours(6)
+    var maxIncrementalGroupSize = 1000
+
+    /**
+     * The executor refreshes are loaded on. When not set, a single daemon thread is created on first use.
+     */
+    var executor: Executor? = null
+    private val defaultExecutor by lazy {
+        Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder().setNameFormat("okta-group-membership-cache-%d").setDaemon(true).build()
+        )
+    }
+
+    /**
+     * The clock used to determine when the snapshot needs to be refreshed.
+     */
+    var clock: () -> Instant = { Instant.now() }
+
+    private val lock = ReentrantLock()
+    @Volatile
+    private var snapshot: Snapshot? = null
+    @Volatile
+    private var lastRefresh: Instant? = null
+
+    // guarded by lock
+    private var refreshing = false
+    // local membership changes made while a refresh is loading, these are replayed once the refresh is applied
+    private val pendingChanges = mutableListOf<Snapshot.() -> Unit>()
+
+    /**
+     * Return the groups the specified Okta user is a member of.
+     */
+    fun getGroups(oktaUserId: String): Set<OktaGroup> = currentSnapshot().userGroups[oktaUserId].orEmpty()
+
+    /**
+     * Track a membership change made through this application without waiting for the next refresh.
+     */
+    fun onMembershipChanged(oktaUserId: String, group: OktaGroup, added: Boolean) {
+        if (group.id == null) return
+        lock.lock()
+        try {
+            val current = snapshot ?: return
+            current.applyChange(oktaUserId, group, added)
+            if (refreshing) pendingChanges.add { applyChange(oktaUserId, group, added) }
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    fun invalidate() {
+        lock.lock()
+        try {
+            snapshot = null
+            lastRefresh = null
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private fun currentSnapshot(): Snapshot {
+        snapshot?.let { current ->
+            if (lastRefresh.isOlderThan(refreshInterval)) scheduleRefresh(current)
+            return current
+        }
+
+        lock.lock()
+        try {
+            // another thread may have loaded the snapshot while we were waiting for the lock
+            snapshot?.let { return it }
+
+            // nothing has been loaded yet, so we have to load the initial snapshot on the calling thread
+            return loadSnapshot().also {
+                snapshot = it
+                lastRefresh = it.loaded
+            }
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private fun scheduleRefresh(base: Snapshot) {
+        // the lock is only held for long periods while loading the initial snapshot, don't wait for it
+        if (!lock.tryLock()) return
+        try {
+            if (refreshing || snapshot !== base || !lastRefresh.isOlderThan(refreshInterval)) return
+            refreshing = true
+            pendingChanges.clear()
+
+            val full = base.lastMembershipUpdated == null || base.loaded.isOlderThan(fullRefreshInterval)
+            try {
+                (executor ?: defaultExecutor).execute { if (full) fullRefresh(base) else incrementalRefresh(base) }
+            } catch (e: RejectedExecutionException) {
+                LOG.debug("Unable to schedule a refresh of the Okta group memberships", e)
+                refreshing = false
+            }
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private fun fullRefresh(base: Snapshot) {
+        val started = clock()
+        val next = try {
+            loadSnapshot()
+        } catch (e: Exception) {
+            LOG.error("Error loading the Okta group memberships", e)
+            null
+        }
+
+        completeRefresh(base, started) {
+            if (next != null) {
+                pendingChanges.forEach { change -> next.change() }
+                snapshot = next
+            }
+        }
+    }
+
+    private fun incrementalRefresh(base: Snapshot) {
+        val started = clock()
+        val memberships = try {
+            loadChangedMemberships(base)
+        } catch (e: Exception) {
+            LOG.error("Error reloading the changed Okta group memberships", e)
+            null
+        }
+
+        completeRefresh(base, started) {
+            if (memberships != null) {
+                memberships.forEach { base.applyMembership(it) }
+                pendingChanges.forEach { change -> base.change() }
+            }
+        }
+    }
+
+    private inline fun completeRefresh(base: Snapshot, started: Instant, apply: () -> Unit) {
+        lock.lock()
+        try {
+            // only apply the refresh if the cache wasn't invalidated while it was loading
+            if (snapshot === base) {
+                apply()
+                lastRefresh = started
+            }
+            pendingChanges.clear()
+            refreshing = false
+        } finally {
+            lock.unlock()
+        }
+    }
+
+    private fun loadSnapshot(): Snapshot {
+        LOG.debug("Loading all Okta group memberships")
+        val next = Snapshot(clock())
+        okta.listGroups(null, null, null).forEach { next.applyMembership(it.loadMembership()) }
+        return next
+    }
+
+    private fun loadChangedMemberships(base: Snapshot): List<GroupMembership> {
+        val since = base.lastMembershipUpdated ?: return emptyList()
+        val filter = "lastMembershipUpdated gt \"${OKTA_TIMESTAMP.print(since)}\""
+        val groups = okta.listGroups(null, filter, null).toList()
+        LOG.debug("Reloading members of {} Okta groups changed since {}", groups.size, since)
+        return groups.map { group ->
+            val skip = group.type == GROUP_TYPE_BUILT_IN ||
+                base.groupMembers[group.id].orEmpty().size > maxIncrementalGroupSize
+            group.loadMembership(loadMembers = !skip)
+        }
+    }
+
+    private fun OktaSdkGroup.loadMembership(loadMembers: Boolean = true) = GroupMembership(
+        group = OktaGroup(id = id, oktaGroupType = type, name = profile.name),
+        members = if (loadMembers) listUsers().map { it.id }.toSet() else null,
+        lastMembershipUpdated = lastMembershipUpdated?.let { Instant(it.time) }
+    )
+
+    private fun Instant?.isOlderThan(duration: ReadableDuration) = this == null || plus(duration).isBefore(clock())
+
+    /**
+     * The members of a single group, [members] is null when the members of the group were not reloaded.
+     */
+    private class GroupMembership(val group: OktaGroup, val members: Set<String>?, val lastMembershipUpdated: Instant?)
+
+    /**
+     * A snapshot of all group memberships. A snapshot is only modified while it is being loaded, or while holding the
+     * cache lock once it has been published.
+     */
+    private class Snapshot(val loaded: Instant) {
+        val groupMembers = ConcurrentHashMap<String, Set<String>>()
+        val userGroups = ConcurrentHashMap<String, Set<OktaGroup>>()
+        @Volatile
+        var lastMembershipUpdated: Instant? = null
+
+        fun applyChange(oktaUserId: String, group: OktaGroup, added: Boolean) {
+            val groupId = group.id ?: return
+            val members = groupMembers[groupId].orEmpty()
+            groupMembers[groupId] = if (added) members + oktaUserId else members - oktaUserId
+            userGroups.compute(oktaUserId) { _, groups ->
+                val current = groups.orEmpty().filterNot { it.id == groupId }.toSet()
+                (if (added) current + group else current).takeIf { it.isNotEmpty() }
+            }
+        }
+
+        fun applyMembership(membership: GroupMembership) {
+            val group = membership.group
+            val groupId = group.id ?: return
+            membership.members?.let { members ->
+                val previous = groupMembers[groupId].orEmpty()
+                groupMembers[groupId] = members
+
+                (previous - members).forEach { userId ->
+                    userGroups.computeIfPresent(userId) { _, groups ->
+                        groups.filterNot { it.id == groupId }.toSet().takeIf { it.isNotEmpty() }
+                    }
+                }
+                members.forEach { userId ->
+                    userGroups.compute(userId) { _, groups ->
+                        groups.orEmpty().filterNot { it.id == groupId }.toSet() + group
+                    }
+                }
+            }
+
+            // track the most recent membership change using Okta's clock, this includes skipped groups so they aren't
+            // listed again by every incremental refresh
+            membership.lastMembershipUpdated?.let {
+                if (lastMembershipUpdated?.isBefore(it) != false) lastMembershipUpdated = it
+            }
+        }
+    }
+}
@@ -20,12 +20,15 @@ import org.ccci.idm.user.okta.dao.util.searchUsers
 import org.ccci.idm.user.query.Attribute
 import org.ccci.idm.user.query.BooleanExpression
 import org.ccci.idm.user.query.ComparisonExpression
+import org.ccci.idm.user.query.ConstantExpression
 import org.ccci.idm.user.query.Expression
+import org.ccci.idm.user.query.ExpressionOptimizer
 import org.joda.time.Instant
 import java.util.EnumSet
 import java.util.concurrent.BlockingQueue
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.stream.Stream
+import kotlin.streams.asStream
 
 private const val PROFILE_THEKEY_GUID = "theKeyGuid"
 private const val PROFILE_RELAY_GUID = "relayGuid"
@@ -63,6 +66,14 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
     var maxSearchResults = SEARCH_NO_LIMIT
     var initialGroups: Set<String> = emptySet()
     var loadGroups = true
+    var maxBatchSize = 20
+    var listenerBatchSize = 200
+
+    /**
+     * When set, group memberships are resolved from this cache instead of an API request per user. Streamed users
+     * will also have their groups populated.
+     */
+    var groupMembershipCache: OktaGroupMembershipCache? = null
 
     private fun findOktaUser(user: User) =
         findOktaUserByOktaUserId(user.oktaUserId) ?: findOktaUserByTheKeyGuid(user.theKeyGuid)
@@ -86,17 +97,50 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
         guid?.let { okta.searchUsers("profile.$PROFILE_RELAY_GUID eq \"$guid\"").firstOrNull()?.asIdmUser() }
             ?.takeIf { !it.isDeactivated || includeDeactivated }
 
+    // region Bulk finders
+    override fun findAllByEmails(emails: Collection<String>, includeDeactivated: Boolean) =
+        findAllBySearch(emails) {
+            when {
+                includeDeactivated ->
+                    """profile.$PROFILE_EMAIL eq "$it" or profile.$PROFILE_ORIGINAL_EMAIL eq "$it""""
+                else -> """profile.$PROFILE_EMAIL eq "$it""""
+            }
+        }
+
+    override fun findAllByTheKeyGuids(guids: Collection<String>, includeDeactivated: Boolean) =
+        findAllBySearch(guids) { "profile.$PROFILE_THEKEY_GUID eq \"$it\"" }
+            .filter { !it.isDeactivated || includeDeactivated }
+
+    override fun findAllByRelayGuids(guids: Collection<String>, includeDeactivated: Boolean) =
+        findAllBySearch(guids) { "profile.$PROFILE_RELAY_GUID eq \"$it\"" }
+            .filter { !it.isDeactivated || includeDeactivated }
+
+    override fun findAllByEmployeeIds(employeeIds: Collection<String>, includeDeactivated: Boolean) =
+        findAllBySearch(employeeIds) { "profile.$PROFILE_US_EMPLOYEE_ID eq \"$it\"" }
+            .filter { !it.isDeactivated || includeDeactivated }
+
+    private fun findAllBySearch(values: Collection<String>, search: (String) -> String) = values.filterNotNull()
+        .distinct()
+        .chunked(maxBatchSize.coerceAtLeast(1))
+        .flatMap { batch -> okta.searchUsers(batch.joinToString(" or ") { "(${search(it)})" }) }
+        // a user can match values in more than one batch, only convert each user once
+        .distinctBy { it.id }
+        .chunked(listenerBatchSize.coerceAtLeast(1))
+        .flatMap { batch -> batch.asIdmUsers(loadGroups = groupMembershipCache != null && loadGroups) }
+    // endregion Bulk finders
+
     // region Stream Users
     override fun streamUsers(
         expression: Expression?,
         includeDeactivated: Boolean,
         restrictMaxAllowed: Boolean
     ): Stream<User> {
-        val search = expression?.toOktaExpression(includeDeactivated)
-        return okta.listUsers(null, null, null, search, null).stream()
-            .map { it.asIdmUser(loadGroups = false) }
+        val optimized = expression?.let { ExpressionOptimizer.optimize(it) }
+        if (optimized == ConstantExpression.FALSE) return Stream.empty()
+        val search = optimized?.takeUnless { it == ConstantExpression.TRUE }?.toOktaExpression(includeDeactivated)
+        return okta.listUsers(null, null, null, search, null)
+            .streamIdmUsers(groupMembershipCache != null && loadGroups, restrictMaxAllowed)
             .filter { !it.isDeactivated || includeDeactivated }
-            .restrictMaxAllowed(restrictMaxAllowed)
     }
 
     override fun streamUsersInGroup(
@@ -106,19 +150,39 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
         restrictMaxAllowed: Boolean
     ): Stream<User> {
         require(group is OktaGroup) { "OktaGroup is required for streamUsersInGroup" }
+        val optimized = expression?.let { ExpressionOptimizer.optimize(it) }
+        if (optimized == ConstantExpression.FALSE) return Stream.empty()
+        val predicate = optimized?.compile()
         val oktaGroup = group.id?.let { okta.getGroup(it) } ?: throw GroupNotFoundException()
 
-        return oktaGroup.listUsers().stream()
-            .map { it.asIdmUser(loadGroups = false) }
+        return oktaGroup.listUsers()
+            .streamIdmUsers(groupMembershipCache != null && loadGroups, restrictMaxAllowed)
             .filter { !it.isDeactivated || includeDeactivated }
-            .filter { expression?.matches(it) != false }
-            .restrictMaxAllowed(restrictMaxAllowed)
+            .filter { predicate?.test(it) != false }
     }
 
-    private fun <T> Stream<T>.restrictMaxAllowed(restrict: Boolean = true) =
+    /**
+     * Convert streamed Okta users in batches of [listenerBatchSize] so listeners can process an entire batch at once.
+     * The maximum number of results is enforced on the Okta users before they are converted, so an oversized search
+     * fails before any users are converted or passed to the listeners.
+     */
+    private fun Iterable<com.okta.sdk.resource.user.User>.streamIdmUsers(
+        loadGroups: Boolean,
+        restrictMaxAllowed: Boolean = false
+    ) = asSequence()
+        .restrictMaxAllowed(restrictMaxAllowed)
+        .chunked(listenerBatchSize.coerceAtLeast(1))
+        .flatMap { batch -> batch.asIdmUsers(loadGroups).asSequence() }
+        .asStream()
+
+    private fun List<com.okta.sdk.resource.user.User>.asIdmUsers(loadGroups: Boolean) =
+        map { it.asIdmUser(loadGroups = loadGroups, notifyListeners = false) }
+            .also { users -> listeners?.onEach { it.onUsersLoaded(users) } }
+
+    private fun <T> Sequence<T>.restrictMaxAllowed(restrict: Boolean = true) =
         if (restrict && maxSearchResults != SEARCH_NO_LIMIT) {
             val count = AtomicInteger(0)
-            peek {
+            onEach {
                 if (count.incrementAndGet() > maxSearchResults)
                     throw ExceededMaximumAllowedResultsException("Search exceeded $maxSearchResults results")
             }
@@ -303,6 +367,7 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
 
         val oktaUser = findOktaUser(user) ?: throw UserNotFoundException()
         oktaUser.addToGroup(group.id)
+        groupMembershipCache?.onMembershipChanged(oktaUser.id, group, added = true)
     }
 
     override fun removeFromGroup(user: User, group: Group) {
@@ -310,6 +375,7 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
 
         val oktaUserId = user.oktaUserId ?: findOktaUser(user)?.id ?: throw UserNotFoundException()
         okta.getGroup(group.id)?.removeUser(oktaUserId)
+        groupMembershipCache?.onMembershipChanged(oktaUserId, group, added = false)
     }
     // endregion Group methods
 
@@ -333,7 +399,10 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
         else -> OktaDaoException(this)
     }
 
-    private fun com.okta.sdk.resource.user.User.asIdmUser(loadGroups: Boolean = this@OktaUserDao.loadGroups): User {
+    private fun com.okta.sdk.resource.user.User.asIdmUser(
+        loadGroups: Boolean = this@OktaUserDao.loadGroups,
+        notifyListeners: Boolean = true
+    ): User {
         return User().apply {
             oktaUserId = id
             theKeyGuid = profile.getString(PROFILE_THEKEY_GUID)
@@ -376,8 +445,8 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
 
             loginTime = lastLogin?.let { Instant(it.time) }
 
-            if (loadGroups) setGroups(listGroups().map { it.asIdmGroup() })
-        }.also { user -> listeners?.onEach { it.onUserLoaded(user) } }
+            if (loadGroups) setGroups(groupMembershipCache?.getGroups(id) ?: listGroups().map { it.asIdmGroup() })
+        }.also { user -> if (notifyListeners) listeners?.onEach { it.onUserLoaded(user) } }
     }
 
     private fun com.okta.sdk.resource.group.Group.asIdmGroup() =
@@ -385,6 +454,7 @@ class OktaUserDao(private val okta: Client, private val listeners: List<Listener
 
     interface Listener {
         fun onUserLoaded(user: User) = Unit
+        fun onUsersLoaded(users: List<User>) = users.forEach { onUserLoaded(it) }
         fun onUserCreated(user: User) = Unit
         fun onUserUpdated(user: User, vararg attrs: User.Attr) = Unit
     }
@@ -3,6 +3,7 @@ package org.ccci.idm.user.okta.dao.listeners
 import org.ccci.idm.user.User
 import org.ccci.idm.user.dao.UserDao
 import org.ccci.idm.user.okta.dao.OktaUserDao
+import java.util.Locale
 
 private val UPDATABLE_ATTRS = setOf(
     User.Attr.MFA_SECRET, User.Attr.MFA_INTRUDER_DETECTION,
@@ -15,29 +16,17 @@ class FallbackDaoOktaUserDaoListener(
     private val dao: UserDao
 ) : OktaUserDao.Listener {
     override fun onUserLoaded(user: User) {
-        dao.findByTheKeyGuid(user.theKeyGuid, true)?.run {
-            // MFA attributes
-            user.isMfaBypassed = isMfaBypassed
-            user.mfaEncryptedSecret = mfaEncryptedSecret
-            user.isMfaIntruderLocked = isMfaIntruderLocked
-            user.mfaIntruderAttempts = mfaIntruderAttempts
-            user.mfaIntruderResetTime = mfaIntruderResetTime
-
-            // self-service keys
-            user.signupKey = signupKey
-            user.proposedEmail = proposedEmail
-            user.changeEmailKey = changeEmailKey
-            user.resetPasswordKey = resetPasswordKey
-
-            // SQ & SA
-            user.securityQuestion = securityQuestion
-            user.setSecurityAnswer(securityAnswer, false)
-
-            // Login Time (fallback if there isn't already a last login time)
-            user.loginTime = user.loginTime ?: loginTime
-
-            // HR attributes not stored in Okta but still needed
-            user.cruEmployeeStatus = cruEmployeeStatus
+        dao.findByTheKeyGuid(user.theKeyGuid, true)?.let { user.mergeFallbackAttributes(it) }
+    }
+
+    override fun onUsersLoaded(users: List<User>) {
+        val guids = users.mapNotNull { it.theKeyGuid }
+        if (guids.isEmpty()) return
+
+        // guids are case-insensitive, so match them case-insensitively
+        val fallbacks = dao.findAllByTheKeyGuids(guids, true).associateBy { it.theKeyGuid?.toUpperCase(Locale.US) }
+        users.forEach { user ->
+            fallbacks[user.theKeyGuid?.toUpperCase(Locale.US)]?.let { user.mergeFallbackAttributes(it) }
         }
     }
 
@@ -52,4 +41,29 @@ class FallbackDaoOktaUserDaoListener(
         val original = dao.findByTheKeyGuid(user.theKeyGuid, true) ?: return
         dao.update(original, user, *filteredAttrs.toTypedArray())
     }
+
+    private fun User.mergeFallbackAttributes(fallback: User) {
+        // MFA attributes
+        isMfaBypassed = fallback.isMfaBypassed
+        mfaEncryptedSecret = fallback.mfaEncryptedSecret
+        isMfaIntruderLocked = fallback.isMfaIntruderLocked
+        mfaIntruderAttempts = fallback.mfaIntruderAttempts
+        mfaIntruderResetTime = fallback.mfaIntruderResetTime
+
+        // self-service keys
+        signupKey = fallback.signupKey
+        proposedEmail = fallback.proposedEmail
+        changeEmailKey = fallback.changeEmailKey
+        resetPasswordKey = fallback.resetPasswordKey
+
+        // SQ & SA
+        securityQuestion = fallback.securityQuestion
+        setSecurityAnswer(fallback.securityAnswer, false)
+
+        // Login Time (fallback if there isn't already a last login time)
+        loginTime = loginTime ?: fallback.loginTime
+
+        // HR attributes not stored in Okta but still needed
+        cruEmployeeStatus = fallback.cruEmployeeStatus
+    }
 }
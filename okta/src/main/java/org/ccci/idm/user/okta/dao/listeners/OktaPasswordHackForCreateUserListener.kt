@@ -1,21 +1,145 @@
 package org.ccci.idm.user.okta.dao.listeners
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.okta.authn.sdk.AuthenticationException
 import com.okta.authn.sdk.client.AuthenticationClient
 import org.ccci.idm.user.User
 import org.ccci.idm.user.okta.dao.OktaUserDao
+import org.slf4j.LoggerFactory
 import java.lang.Thread.sleep
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+private val LOG = LoggerFactory.getLogger(OktaPasswordHackForCreateUserListener::class.java)
 
 class OktaPasswordHackForCreateUserListener(
     private val authClient: AuthenticationClient,
     private val sleep: Long = 3000
 ) : OktaUserDao.Listener {
+    /**
+     * The executor used to authenticate new users in the background. When not set, a small pool of daemon threads is
+     * created on first use.
+     */
+    var executor: ScheduledExecutorService? = null
+    private val defaultExecutor by lazy {
+        ScheduledThreadPoolExecutor(
+            2,
+            ThreadFactoryBuilder().setNameFormat("okta-password-hack-%d").setDaemon(true).build()
+        )
+    }
+
+    /**
+     * The maximum number of attempts to authenticate a new user. Only transport errors, server errors and rate limits
+     * are retried; rejected authentications aren't, so retries never count towards the account lockout threshold.
+     */
+    var maxAttempts = 3
+    var backoffMultiplier = 2.0
+
+    /**
+     * When this many authentications are already pending, new users are authenticated synchronously instead.
+     */
+    var maxPending = 1000
+
+    /**
+     * Optional check for whether the account for the specified email has been provisioned to eDirectory yet.
+     * Authentication is deferred while the check returns false and attempts remain.
+     */
+    var provisioningCheck: ((email: String) -> Boolean)? = null
+
+    // metrics
+    private val pendingCount = AtomicLong()
+    private val succeededCount = AtomicLong()
+    private val retriedCount = AtomicLong()
+    private val failedCount = AtomicLong()
+    val pending get() = pendingCount.get()
+    val succeeded get() = succeededCount.get()
+    val retried get() = retriedCount.get()
+    val failed get() = failedCount.get()
+
     override fun onUserCreated(user: User) {
         // HACK: When a new Okta user is created it will trigger provisioning of the account to eDirectory.
         //       Unfortunately it generates a new random password for the LDAP account and actually provisions the
         //       password on the next login.
         //       In addition, if we authenticate the user before the LDAP provisioning completes the password isn't
-        //       pushed to the provisioned account, this is the reason for the sleep.
+        //       pushed to the provisioned account, this is the reason for the delay.
+        val email = user.email ?: return
+        val password = user.password?.toCharArray() ?: return
+
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet()
+            authenticateSynchronously(email, password)
+            return
+        }
+
+        try {
+            schedule(email, password, 1, sleep)
+        } catch (e: RejectedExecutionException) {
+            pendingCount.decrementAndGet()
+            authenticateSynchronously(email, password)
+        }
+    }
+
+    private fun authenticateSynchronously(email: String, password: CharArray) {
+        LOG.debug("Unable to defer authentication, authenticating new user {} synchronously", email)
         sleep(sleep)
-        authClient.authenticate(user.email, user.password.toCharArray(), null, null)
+        try {
+            authClient.authenticate(email, password, null, null)
+            succeededCount.incrementAndGet()
+        } catch (e: Exception) {
+            failedCount.incrementAndGet()
+            throw e
+        } finally {
+            password.fill('\u0000')
+        }
+    }
+
+    private fun schedule(email: String, password: CharArray, attempt: Int, delay: Long) {
+        (executor ?: defaultExecutor)
+            .schedule({ attempt(email, password, attempt, delay) }, delay, TimeUnit.MILLISECONDS)
+    }
+
+    private fun attempt(email: String, password: CharArray, attempt: Int, delay: Long) {
+        var done = true
+        try {
+            if (attempt < maxAttempts && provisioningCheck?.invoke(email) == false) {
+                done = !retry(email, password, attempt, delay)
+                return
+            }
+
+            authClient.authenticate(email, password, null, null)
+            succeededCount.incrementAndGet()
+        } catch (e: Exception) {
+            if (attempt < maxAttempts && e.isRetryable()) {
+                LOG.debug("Error authenticating new user {}, attempt {} of {}", email, attempt, maxAttempts, e)
+                done = !retry(email, password, attempt, delay)
+            } else {
+                LOG.warn("Unable to authenticate new user {} after {} attempts", email, attempt, e)
+                failedCount.incrementAndGet()
+            }
+        } finally {
+            if (done) {
+                pendingCount.decrementAndGet()
+                password.fill('\u0000')
+            }
+        }
+    }
+
+    // authentications rejected by Okta count towards the account lockout, so only retry errors that aren't rejections
+    private fun Exception.isRetryable() = when (this) {
+        is AuthenticationException -> status == 429 || status !in 400..499
+        else -> true
+    }
+
+    private fun retry(email: String, password: CharArray, attempt: Int, delay: Long) = try {
+        schedule(email, password, attempt + 1, (delay * backoffMultiplier).toLong())
+        retriedCount.incrementAndGet()
+        true
+    } catch (e: RejectedExecutionException) {
+        LOG.warn("Unable to schedule authentication retry for new user {}", email, e)
+        failedCount.incrementAndGet()
+        false
     }
 }
@@ -0,0 +1,178 @@
+package org.ccci.idm.user.okta.dao
+
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.isNull
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.startsWith
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.okta.sdk.client.Client
+import com.okta.sdk.resource.group.GroupList
+import com.okta.sdk.resource.group.GroupProfile
+import com.okta.sdk.resource.user.UserList
+import org.ccci.idm.user.okta.OktaGroup
+import org.joda.time.Duration
+import org.joda.time.Instant
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.Date
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import com.okta.sdk.resource.group.Group as OktaSdkGroup
+import com.okta.sdk.resource.user.User as OktaUser
+
+class OktaGroupMembershipCacheTest {
+    private lateinit var okta: Client
+    private lateinit var cache: OktaGroupMembershipCache
+    private var now = Instant(0)
+    private val tasks = mutableListOf<Runnable>()
+
+    @Before
+    fun setup() {
+        okta = mock()
+        cache = OktaGroupMembershipCache(okta).apply {
+            clock = { now }
+            executor = Executor { tasks += it }
+        }
+    }
+
+    @Test
+    fun testFullRefresh() {
+        val group1 = oktaGroup("group1", "user1", "user2")
+        val group2 = oktaGroup("group2", "user2")
+        okta.stub { on { listGroups(isNull(), isNull(), isNull()) } doReturn groupList(group1, group2) }
+
+        assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+        assertEquals(setOf(OktaGroup("group1"), OktaGroup("group2")), cache.getGroups("user2"))
+        assertEquals(emptySet<OktaGroup>(), cache.getGroups("user3"))
+        verify(okta, times(1)).listGroups(isNull(), isNull(), isNull())
+    }
+
+    @Test
+    fun testIncrementalRefresh() {
+        val group1 = oktaGroup("group1", "user1")
+        val group2 = oktaGroup("group2", "user1")
+        okta.stub {
+            on { listGroups(isNull(), isNull(), isNull()) } doReturn groupList(group1, group2)
+            on { listGroups(isNull(), startsWith("lastMembershipUpdated gt "), isNull()) } doReturn
+                groupList(oktaGroup("group2", "user2"))
+        }
+
+        assertEquals(setOf(OktaGroup("group1"), OktaGroup("group2")), cache.getGroups("user1"))
+        now += Duration.standardMinutes(2)
+        assertEquals(setOf(OktaGroup("group1"), OktaGroup("group2")), cache.getGroups("user1"))
+        tasks.removeAt(0).run()
+        assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+        assertEquals(setOf(OktaGroup("group2")), cache.getGroups("user2"))
+        assertTrue(tasks.isEmpty())
+        verify(okta, times(1)).listGroups(isNull(), isNull(), isNull())
+        verify(okta).listGroups(isNull(), eq("lastMembershipUpdated gt \"1970-01-01T00:00:01.000Z\""), isNull())
+    }
+
+    @Test
+    fun testIncrementalRefreshSkipsBuiltInGroups() {
+        val everyone = oktaGroup("everyone", "user1", type = "BUILT_IN")
+        val changed = groupList(oktaGroup("everyone", "user1", "user2", type = "BUILT_IN"))
+        okta.stub {
+            on { listGroups(isNull(), isNull(), isNull()) } doReturn groupList(everyone)
+            on { listGroups(isNull(), startsWith("lastMembershipUpdated gt "), isNull()) } doReturn changed
+        }
+
+        assertEquals(setOf(OktaGroup("everyone")), cache.getGroups("user1"))
+        now += Duration.standardMinutes(2)
+        cache.getGroups("user1")
+        tasks.removeAt(0).run()
+        assertEquals(setOf(OktaGroup("everyone")), cache.getGroups("user1"))
+        assertEquals(emptySet<OktaGroup>(), cache.getGroups("user2"))
+        verify(changed.single(), never()).listUsers()
+    }
+
+    @Test(timeout = 10000)
+    fun testStaleReadDoesNotBlockOnRefresh() {
+        val refreshStarted = CountDownLatch(1)
+        val finishRefresh = CountDownLatch(1)
+        val initial = groupList(oktaGroup("group1", "user1"))
+        val changed = groupList(oktaGroup("group2", "user1"))
+        okta.stub {
+            on { listGroups(isNull(), isNull(), isNull()) } doReturn initial
+            on { listGroups(isNull(), startsWith("lastMembershipUpdated gt "), isNull()) } doAnswer {
+                refreshStarted.countDown()
+                finishRefresh.await()
+                changed
+            }
+        }
+        val executor = Executors.newSingleThreadExecutor()
+        cache.executor = executor
+
+        try {
+            assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+            now += Duration.standardMinutes(2)
+            assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+
+            // the refresh is in progress, stale reads are served from the current snapshot without waiting for it
+            refreshStarted.await()
+            assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+        } finally {
+            finishRefresh.countDown()
+            executor.shutdown()
+            executor.awaitTermination(5, TimeUnit.SECONDS)
+        }
+        assertEquals(setOf(OktaGroup("group1"), OktaGroup("group2")), cache.getGroups("user1"))
+    }
+
+    @Test
+    fun testFullRefreshInBackground() {
+        okta.stub {
+            on { listGroups(isNull(), isNull(), isNull()) } doReturn
+                groupList(oktaGroup("group1", "user1")) doReturn groupList(oktaGroup("group2", "user1"))
+            on { listGroups(isNull(), startsWith("lastMembershipUpdated gt "), isNull()) } doReturn groupList()
+        }
+
+        assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+        assertTrue(tasks.isEmpty())
+
+        // the previous snapshot is served until the new snapshot is loaded
+        now += Duration.standardHours(7)
+        assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+        assertEquals(1, tasks.size)
+
+        // local changes made while loading are retained
+        cache.onMembershipChanged("user1", OktaGroup("group3"), added = true)
+        tasks.removeAt(0).run()
+        assertEquals(setOf(OktaGroup("group2"), OktaGroup("group3")), cache.getGroups("user1"))
+        verify(okta, times(2)).listGroups(isNull(), isNull(), isNull())
+    }
+
+    @Test
+    fun testOnMembershipChanged() {
+        okta.stub { on { listGroups(isNull(), isNull(), isNull()) } doReturn groupList(oktaGroup("group1", "user1")) }
+
+        assertEquals(setOf(OktaGroup("group1")), cache.getGroups("user1"))
+        cache.onMembershipChanged("user1", OktaGroup("group2"), added = true)
+        cache.onMembershipChanged("user1", OktaGroup("group1"), added = false)
+        assertEquals(setOf(OktaGroup("group2")), cache.getGroups("user1"))
+    }
+
+    private fun oktaGroup(id: String, vararg members: String, type: String? = null): OktaSdkGroup {
+        val users = members.map { member -> mock<OktaUser> { on { this.id } doReturn member } }
+        val profile = mock<GroupProfile> { on { name } doReturn id }
+        return mock {
+            on { this.id } doReturn id
+            on { this.profile } doReturn profile
+            on { this.type } doReturn type
+            on { lastMembershipUpdated } doReturn Date(1000)
+            on { listUsers() } doAnswer { mock<UserList> { on { iterator() } doAnswer { users.iterator() } } }
+        }
+    }
+
+    private fun groupList(vararg groups: OktaSdkGroup) =
+        mock<GroupList> { on { iterator() } doAnswer { groups.iterator() } }
+}
@@ -0,0 +1,37 @@
+package org.ccci.idm.user.okta.dao
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doAnswer
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.isNull
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.stub
+import com.nhaarman.mockitokotlin2.verify
+import com.okta.sdk.resource.user.UserList
+import org.ccci.idm.user.dao.exception.ExceededMaximumAllowedResultsException
+import org.junit.Test
+import java.util.stream.Collectors
+import com.okta.sdk.resource.user.User as OktaUser
+
+class OktaUserDaoStreamUsersTest : BaseOktaUserDaoTest() {
+    @Test
+    fun testMaxSearchResultsEnforcedBeforeConversion() {
+        val users = List(3) { mock<OktaUser>() }
+        val userList = mock<UserList> { on { iterator() } doAnswer { users.iterator() } }
+        okta.stub { on { listUsers(isNull(), isNull(), isNull(), isNull(), isNull()) } doReturn userList }
+        val listener = mock<OktaUserDao.Listener>()
+        dao = OktaUserDao(okta, listOf(listener)).apply { maxSearchResults = 2 }
+
+        try {
+            dao.streamUsers(null, true, true).use { it.collect(Collectors.toList()) }
+            throw AssertionError("ExceededMaximumAllowedResultsException expected")
+        } catch (expected: ExceededMaximumAllowedResultsException) {
+            // expected
+        }
+
+        // the oversized search failed before any users were converted
+        verify(listener, never()).onUsersLoaded(any())
+        users.forEach { verify(it, never()).profile }
+    }
+}
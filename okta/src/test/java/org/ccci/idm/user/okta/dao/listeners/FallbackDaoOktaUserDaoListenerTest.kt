@@ -0,0 +1,55 @@
+package org.ccci.idm.user.okta.dao.listeners
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.never
+import com.nhaarman.mockitokotlin2.verify
+import org.ccci.idm.user.User
+import org.ccci.idm.user.dao.UserDao
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class FallbackDaoOktaUserDaoListenerTest {
+    @Test
+    fun testOnUsersLoadedMergesBatch() {
+        val fallback1 = User().apply {
+            theKeyGuid = "guid1"
+            signupKey = "signup1"
+            cruEmployeeStatus = "A"
+        }
+        val fallback2 = User().apply {
+            theKeyGuid = "guid2"
+            signupKey = "signup2"
+        }
+        val dao = mock<UserDao> {
+            on { findAllByTheKeyGuids(eq(listOf("guid1", "guid2", "guid3")), eq(true)) } doReturn
+                listOf(fallback2, fallback1)
+        }
+        val users = listOf("guid1", "guid2", "guid3").map { User().apply { theKeyGuid = it } }
+
+        FallbackDaoOktaUserDaoListener(dao).onUsersLoaded(users)
+        assertEquals("signup1", users[0].signupKey)
+        assertEquals("A", users[0].cruEmployeeStatus)
+        assertEquals("signup2", users[1].signupKey)
+        assertNull(users[2].signupKey)
+        verify(dao, never()).findByTheKeyGuid(any(), any())
+    }
+
+    @Test
+    fun testOnUsersLoadedMatchesGuidsCaseInsensitively() {
+        val fallback = User().apply {
+            theKeyGuid = "ABCDEF"
+            signupKey = "signup"
+        }
+        val dao = mock<UserDao> {
+            on { findAllByTheKeyGuids(eq(listOf("abcdef")), eq(true)) } doReturn listOf(fallback)
+        }
+        val user = User().apply { theKeyGuid = "abcdef" }
+
+        FallbackDaoOktaUserDaoListener(dao).onUsersLoaded(listOf(user))
+        assertEquals("signup", user.signupKey)
+    }
+}
@@ -0,0 +1,130 @@
+package org.ccci.idm.user.okta.dao.listeners
+
+import com.nhaarman.mockitokotlin2.any
+import com.nhaarman.mockitokotlin2.anyOrNull
+import com.nhaarman.mockitokotlin2.doReturn
+import com.nhaarman.mockitokotlin2.doThrow
+import com.nhaarman.mockitokotlin2.eq
+import com.nhaarman.mockitokotlin2.mock
+import com.nhaarman.mockitokotlin2.timeout
+import com.nhaarman.mockitokotlin2.times
+import com.nhaarman.mockitokotlin2.verify
+import com.nhaarman.mockitokotlin2.verifyZeroInteractions
+import com.okta.authn.sdk.AuthenticationException
+import com.okta.authn.sdk.client.AuthenticationClient
+import com.okta.authn.sdk.resource.AuthenticationResponse
+import org.ccci.idm.user.User
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+
+class OktaPasswordHackForCreateUserListenerTest {
+    private lateinit var authClient: AuthenticationClient
+    private lateinit var executor: ScheduledExecutorService
+    private lateinit var listener: OktaPasswordHackForCreateUserListener
+
+    private val user = User().apply {
+        email = "test@example.com"
+        password = "password"
+    }
+
+    @Before
+    fun setup() {
+        authClient = mock()
+        executor = Executors.newSingleThreadScheduledExecutor()
+        listener = OktaPasswordHackForCreateUserListener(authClient, 10).also { it.executor = executor }
+    }
+
+    @After
+    fun cleanup() {
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun testAuthenticationIsDeferred() {
+        listener.onUserCreated(user)
+        verifyZeroInteractions(authClient)
+
+        verify(authClient, timeout(1000)).authenticate(eq("test@example.com"), any(), anyOrNull(), anyOrNull())
+        waitForPending()
+        assertEquals(1, listener.succeeded)
+    }
+
+    @Test
+    fun testAuthenticationIsRetried() {
+        val response = mock<AuthenticationResponse>()
+        authClient = mock {
+            on { authenticate(any<String>(), any(), anyOrNull(), anyOrNull()) }
+                .doThrow(IllegalStateException())
+                .doReturn(response)
+        }
+        listener = OktaPasswordHackForCreateUserListener(authClient, 10).also { it.executor = executor }
+
+        listener.onUserCreated(user)
+        verify(authClient, timeout(1000).times(2)).authenticate(any<String>(), any(), anyOrNull(), anyOrNull())
+        waitForPending()
+        assertEquals(1, listener.retried)
+        assertEquals(1, listener.succeeded)
+        assertEquals(0, listener.failed)
+    }
+
+    @Test
+    fun testRejectedAuthenticationIsNotRetried() {
+        val rejected = mock<AuthenticationException> { on { status } doReturn 401 }
+        authClient = mock { on { authenticate(any<String>(), any(), anyOrNull(), anyOrNull()) } doThrow rejected }
+        listener = OktaPasswordHackForCreateUserListener(authClient, 10).also { it.executor = executor }
+
+        listener.onUserCreated(user)
+        verify(authClient, timeout(1000)).authenticate(any<String>(), any(), anyOrNull(), anyOrNull())
+        waitForPending()
+        assertEquals(0, listener.retried)
+        assertEquals(1, listener.failed)
+    }
+
+    @Test
+    fun testAuthenticationWaitsForProvisioning() {
+        var checks = 0
+        listener.provisioningCheck = { ++checks >= 2 }
+
+        listener.onUserCreated(user)
+        verify(authClient, timeout(1000)).authenticate(any<String>(), any(), anyOrNull(), anyOrNull())
+        waitForPending()
+        assertEquals(2, checks)
+        assertEquals(1, listener.retried)
+    }
+
+    @Test
+    fun testSynchronousWhenTooManyPending() {
+        listener.maxPending = 0
+
+        listener.onUserCreated(user)
+        verify(authClient, times(1)).authenticate(any<String>(), any(), anyOrNull(), anyOrNull())
+        assertEquals(0, listener.pending)
+    }
+
+    @Test
+    fun testSynchronousFailureIsCounted() {
+        authClient = mock {
+            on { authenticate(any<String>(), any(), anyOrNull(), anyOrNull()) } doThrow IllegalStateException()
+        }
+        listener = OktaPasswordHackForCreateUserListener(authClient, 10).also { it.maxPending = 0 }
+
+        try {
+            listener.onUserCreated(user)
+            fail("IllegalStateException expected")
+        } catch (expected: IllegalStateException) {
+            // expected
+        }
+        assertEquals(1, listener.failed)
+    }
+
+    private fun waitForPending() {
+        val end = System.currentTimeMillis() + 1000
+        while (listener.pending > 0 && System.currentTimeMillis() < end) Thread.sleep(5)
+        assertEquals(0, listener.pending)
+    }
+}